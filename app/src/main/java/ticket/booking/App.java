@@ -1,31 +1,133 @@
 package ticket.booking;
 
+import ticket.booking.entities.Ticket;
 import ticket.booking.entities.Train;
-import ticket.booking.entities.User;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.metrics.MetricsEndpoint;
+import ticket.booking.replication.ReplicationFollower;
+import ticket.booking.replication.ReplicationPrimary;
+import ticket.booking.server.BookingClient;
+import ticket.booking.server.BookingServer;
+import ticket.booking.service.BookingAdmission;
+import ticket.booking.service.TrainService;
 import ticket.booking.service.UserBookingService;
-import ticket.booking.util.UserServiceUtil;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.PasswordHasher;
 
 import java.io.IOException;
-import java.sql.Time;
-import java.util.ArrayList;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Clock;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Scanner;
-import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * {@code App --server} runs the booking server on {@code booking.server.port} (default 8080) of the loopback
+ * interface, or of {@code booking.server.host} if that is set, with at most
+ * {@code booking.server.maxInFlight} requests in flight. Bookings are admitted at
+ * {@code booking.admission.userPerSecond} (default 2) per user and {@code booking.admission.globalPerSecond}
+ * (default 500) in all, with up to {@code booking.admission.queuePerTrain} (default 256) waiting per train.
+ * The server streams the train journal to followers on {@code booking.replication.port} if that is set, again
+ * on loopback unless {@code booking.replication.host} says otherwise, since followers are not authenticated.
+ * {@code App --follow host:port} runs a read-only server for searches and availability over a replica of
+ * the trains of the primary at that replication address.
+ * Without arguments it runs the interactive menu as a client of the server at {@code booking.server.url},
+ * or of an in-process server if that is not set.
+ */
 public class App {
 
-    public static void main(String[] args) throws IOException {
+    public String getGreeting() {
+        return "Running Train Booking System";
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
         System.out.println("Running Train Booking System");
-        Scanner scanner = new Scanner(System.in);
-        int option = 0;
-        UserBookingService userBookingService;
-        try{
-            userBookingService = new UserBookingService();
-        }catch(IOException ex){
-            System.out.println("There is something wrong");
+        if (args.length > 0 && "--server".equals(args[0])) {
+            startServer(bindAddress("booking.server.host", Integer.getInteger("booking.server.port", 8080)));
+            Thread.currentThread().join(); // serve until the process is stopped
             return;
         }
+        if (args.length > 1 && "--follow".equals(args[0])) {
+            startFollower(args[1], bindAddress("booking.server.host", Integer.getInteger("booking.server.port", 8080)));
+            Thread.currentThread().join();
+            return;
+        }
+        String serverUrl = System.getProperty("booking.server.url");
+        if (serverUrl == null) {
+            BookingServer server = startServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            serverUrl = "http://127.0.0.1:" + server.getPort();
+        }
+        runMenu(new BookingClient(URI.create(serverUrl), JsonUtil.newObjectMapper()));
+    }
+
+    private static BookingServer startServer(InetSocketAddress address) throws IOException {
+        UserBookingService userBookingService = new UserBookingService();
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        userBookingService.scheduleCompaction(compactor, 1, TimeUnit.MINUTES, 1000);
+        TrainService.shared().scheduleCompaction(compactor, 1, TimeUnit.MINUTES, 1000);
+        TrainService.shared().watchForChanges(compactor, 5, TimeUnit.SECONDS);
+        TrainService.shared().scheduleEviction(compactor, 1, TimeUnit.HOURS);
+        publishMetrics();
+        Integer replicationPort = Integer.getInteger("booking.replication.port");
+        if (replicationPort != null) {
+            ReplicationPrimary.start(bindAddress("booking.replication.host", replicationPort), TrainService.shared(),
+                    Integer.getInteger("booking.replication.retainedFrames", ReplicationPrimary.DEFAULT_RETAINED_FRAMES));
+        }
+        double userRate = Double.parseDouble(System.getProperty("booking.admission.userPerSecond", "2"));
+        double globalRate = Double.parseDouble(System.getProperty("booking.admission.globalPerSecond", "500"));
+        BookingAdmission admission = new BookingAdmission(userRate, 5, globalRate, (int) Math.ceil(globalRate * 2), 8,
+                Integer.getInteger("booking.admission.queuePerTrain", 256), 2, TimeUnit.SECONDS);
+        return BookingServer.start(address, Integer.getInteger("booking.server.maxInFlight", BookingServer.DEFAULT_MAX_IN_FLIGHT),
+                userBookingService, TrainService.shared(), admission, PasswordHasher.shared(), JsonUtil.newObjectMapper());
+    }
+
+    private static BookingServer startFollower(String primary, InetSocketAddress address) throws IOException {
+        int colon = primary.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Follow a primary as host:port, not " + primary + ".");
+        }
+        TrainService replica = TrainService.replica(JsonUtil.newObjectMapper(), Clock.systemDefaultZone());
+        ReplicationFollower.start(new InetSocketAddress(primary.substring(0, colon), Integer.parseInt(primary.substring(colon + 1))), replica);
+        publishMetrics();
+        return BookingServer.startReadOnly(address, Integer.getInteger("booking.server.maxInFlight", BookingServer.DEFAULT_MAX_IN_FLIGHT),
+                replica, JsonUtil.newObjectMapper());
+    }
+
+    /**
+     * The loopback interface unless {@code hostProperty} names another one, e.g. {@code 0.0.0.0} for all of
+     * them: the server speaks plain HTTP, passwords included, and replication has no authentication, so
+     * reaching either from other machines is opt-in.
+     */
+    private static InetSocketAddress bindAddress(String hostProperty, int port) {
+        String host = System.getProperty(hostProperty);
+        return host == null ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port) : new InetSocketAddress(host, port);
+    }
+
+    private static void publishMetrics() throws IOException {
+        Metrics.shared().registerMBean();
+        Integer metricsPort = Integer.getInteger("booking.metrics.port");
+        if (metricsPort != null) {
+            MetricsEndpoint endpoint = MetricsEndpoint.start(Metrics.shared(), metricsPort);
+            System.out.println("Metrics at http://127.0.0.1:" + endpoint.getPort() + "/metrics");
+        }
+    }
+
+    private static void runMenu(BookingClient client) throws IOException {
+        Scanner scanner = new Scanner(System.in);
+        int option = 0;
+        Train trainSelectedForBooking = null;
+        String source = null;
+        String dest = null;
         while(option!=7){
             System.out.println("Choose option");
             System.out.println("1. Sign up");
@@ -36,51 +138,63 @@ public class App {
             System.out.println("6. Cancel my Booking");
             System.out.println("7. Exit the App");
             option = scanner.nextInt();
-            Train trainSelectedForBooking = new Train();
             switch (option){
                 case 1:
                     System.out.println("Enter the username to signup");
                     String nameToSignUp = scanner.next();
                     System.out.println("Enter the password to signup");
                     String passwordToSignUp = scanner.next();
-                    User userToSignup = new User(nameToSignUp, passwordToSignUp, UserServiceUtil.hashPassword(passwordToSignUp), new ArrayList<>(), UUID.randomUUID().toString());
-                    userBookingService.signUp(userToSignup);
+                    System.out.println(client.signUp(nameToSignUp, passwordToSignUp) ? "Signed up" : "Sign up failed");
                     break;
                 case 2:
                     System.out.println("Enter the username to Login");
                     String nameToLogin = scanner.next();
-                    System.out.println("Enter the password to signup");
+                    System.out.println("Enter the password to Login");
                     String passwordToLogin = scanner.next();
-                    User userToLogin = new User(nameToLogin, passwordToLogin, UserServiceUtil.hashPassword(passwordToLogin), new ArrayList<>(), UUID.randomUUID().toString());
-                    try{
-                        userBookingService = new UserBookingService(userToLogin);
-                    }catch (IOException ex){
-                        return;
-                    }
+                    System.out.println(client.login(nameToLogin, passwordToLogin) ? "Logged in" : "Wrong username or password");
                     break;
                 case 3:
                     System.out.println("Fetching your bookings");
-                    userBookingService.fetchBookings();
+                    if (!client.isLoggedIn()) {
+                        System.out.println("Please log in first");
+                        break;
+                    }
+                    List<Ticket> tickets = client.fetchBookings();
+                    if (tickets.isEmpty()) {
+                        System.out.println("No tickets booked by this user.");
+                    }
+                    tickets.forEach(System.out::println);
                     break;
                 case 4:
                     System.out.println("Type your source station");
-                    String source = scanner.next();
+                    source = scanner.next();
                     System.out.println("Type your destination station");
-                    String dest = scanner.next();
-                    List<Train> trains = userBookingService.getTrains(source, dest);
+                    dest = scanner.next();
+                    List<Train> trains = client.searchTrains(source, dest);
+                    if (trains.isEmpty()) {
+                        System.out.println("No trains found");
+                        break;
+                    }
                     int index = 1;
                     for (Train t: trains){
-                        System.out.println(index+" Train id : "+t.getTrainId());
+                        System.out.println(index++ +" Train id : "+t.getTrainId());
                         for (Map.Entry<String, String> entry: t.getStationTimes().entrySet()){
                             System.out.println("station "+entry.getKey()+" time: "+entry.getValue());
                         }
                     }
                     System.out.println("Select a train by typing 1,2,3...");
-                    trainSelectedForBooking = trains.get(scanner.nextInt());
+                    int choice = scanner.nextInt();
+                    if (choice >= 1 && choice <= trains.size()) {
+                        trainSelectedForBooking = trains.get(choice - 1);
+                    }
                     break;
                 case 5:
+                    if (trainSelectedForBooking == null) {
+                        System.out.println("Search for a train first");
+                        break;
+                    }
                     System.out.println("Select a seat out of these seats");
-                    List<List<Integer>> seats = userBookingService.fetchSeats(trainSelectedForBooking);
+                    List<List<Integer>> seats = client.fetchSeats(trainSelectedForBooking.getTrainId());
                     for (List<Integer> row: seats){
                         for (Integer val: row){
                             System.out.print(val+" ");
@@ -93,16 +207,21 @@ public class App {
                     System.out.println("Enter the column");
                     int col = scanner.nextInt();
                     System.out.println("Booking your seat....");
-                    Boolean booked = userBookingService.bookTrainSeat(trainSelectedForBooking, row, col);
-                    if(booked.equals(Boolean.TRUE)){
-                        System.out.println("Booked! Enjoy your journey");
+                    Optional<Ticket> booked = client.book(trainSelectedForBooking.getTrainId(), source, dest, row, col);
+                    if(booked.isPresent()){
+                        System.out.println("Booked! Enjoy your journey. Ticket: " + booked.get().getTicketId());
                     }else{
                         System.out.println("Can't book this seat");
                     }
                     break;
+                case 6:
+                    System.out.println("Enter the ticket id to cancel");
+                    String ticketId = scanner.next();
+                    System.out.println(client.cancelBooking(ticketId) ? "Booking cancelled" : "No such booking");
+                    break;
                 default:
                     break;
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package ticket.booking.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One entry of a train's {@code coach_details}: how many coaches of a type the train runs, e.g. 2 x "AC1".
+ */
+@Getter // Lombok: Generates getters for all fields
+@Setter // Lombok: Generates setters for all fields
+@NoArgsConstructor // Lombok: Generates a no-argument constructor
+@AllArgsConstructor // Lombok: Generates a constructor with all arguments
+@Builder // Lombok: Implements the Builder pattern
+@JsonIgnoreProperties(ignoreUnknown = true) // Jackson: Ignores unknown properties in JSON
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class) // Jackson: Handles snake_case JSON
+public class CoachDetail {
+
+    private String coachType;
+    private int coaches;
+
+    @Override
+    public String toString() {
+        return coaches + " x " + coachType;
+    }
+}
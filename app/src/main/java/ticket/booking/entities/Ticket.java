@@ -1,6 +1,7 @@
 package ticket.booking.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
 import lombok.AllArgsConstructor;
@@ -26,10 +27,30 @@ public class Ticket {
     private String source;
     private String destination;
     private LocalDate dateOfTravel; // Changed to LocalDate
-    private Train train;
+    private String trainId; // Resolved against the train store; tickets no longer carry a copy of the train.
+    private Integer row; // Null for tickets migrated from the embedded-train format.
+    private Integer seat;
 
     //  No need for manual constructors, getters, and setters with Lombok.
 
+    /**
+     * Reads tickets written before trains were referenced by id. Only the id of the embedded
+     * train is bound; its seat map and stations are skipped by the parser, and the next
+     * snapshot writes the ticket in the new format.
+     */
+    @JsonProperty(value = "train", access = JsonProperty.Access.WRITE_ONLY)
+    private void setLegacyTrain(LegacyTrain legacyTrain) {
+        if (legacyTrain != null && trainId == null) {
+            trainId = legacyTrain.trainId;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static final class LegacyTrain {
+        @JsonProperty("train_id")
+        private String trainId;
+    }
+
     /**
      * Provides a formatted string representation of the Ticket.
      * Overriding toString() is generally preferred over creating a custom getTicketInfo()
@@ -43,7 +64,9 @@ public class Ticket {
                 ", source='" + source + '\'' +
                 ", destination='" + destination + '\'' +
                 ", dateOfTravel=" + dateOfTravel + // LocalDate handles formatting well.
-                ", train=" + train + //  Assuming Train also has a good toString()
+                ", trainId='" + trainId + '\'' +
+                ", row=" + row +
+                ", seat=" + seat +
                 '}';
     }
 
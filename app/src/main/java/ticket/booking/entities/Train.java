@@ -8,10 +8,17 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import ticket.booking.inventory.SegmentSeatInventory;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 @Getter // Lombok: Generates getters for all fields
 @Setter // Lombok: Generates setters for all fields
@@ -24,11 +31,26 @@ public class Train {
 
     private String trainId;
     private String trainNo;
-    private List<List<Integer>> seats;
+    private SegmentSeatInventory seats;
     private Map<String, String> stationTimes;
     private List<String> stations;
+    private List<String> daysOfOperation; // e.g. ["MON", "WED"]; null or empty means the train runs every day
+    private List<CoachDetail> coachDetails; // in running order; each coach is one row of the seat map
 
-    // No need for manual constructors, getters, and setters with Lombok.
+    /**
+     * A train that runs every day.
+     */
+    public Train(String trainId, String trainNo, SegmentSeatInventory seats, Map<String, String> stationTimes, List<String> stations) {
+        this(trainId, trainNo, seats, stationTimes, stations, null);
+    }
+
+    /**
+     * A train without coach details.
+     */
+    public Train(String trainId, String trainNo, SegmentSeatInventory seats, Map<String, String> stationTimes, List<String> stations,
+                 List<String> daysOfOperation) {
+        this(trainId, trainNo, seats, stationTimes, stations, daysOfOperation, null);
+    }
 
     /**
      * Provides a formatted string representation of the Train.
@@ -41,20 +63,23 @@ public class Train {
         return "Train{" +
                 "trainId='" + trainId + '\'' +
                 ", trainNo='" + trainNo + '\'' +
-                ", seats=" + seats +
+                ", seats=" + getSeats() +
                 ", stationTimes=" + stationTimes +
                 ", stations=" + stations +
+                ", daysOfOperation=" + daysOfOperation +
+                ", coachDetails=" + coachDetails +
                 '}';
     }
 
     /**
      * Overrides equals() to provide a meaningful comparison of Train objects.
-     * It's crucial for comparing objects in collections or other logic.  Compares by trainId
+     * It's crucial for comparing objects in collections or other logic.  Compares by trainId, so a train
+     * read from a binary snapshot equals the same train read from JSON.
      */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Train)) return false;
         Train train = (Train) o;
         return Objects.equals(trainId, train.trainId);
     }
@@ -68,6 +93,118 @@ public class Train {
         return Objects.hash(trainId);
     }
 
+    /**
+     * Returns the position of a station on this train's route, ignoring case, or -1 if the train does not stop there.
+     * Station positions are what {@link SegmentSeatInventory} uses to describe legs.
+     */
+    public int indexOfStation(String station) {
+        if (stations == null || station == null) {
+            return -1;
+        }
+        return stations.indexOf(station.toLowerCase());
+    }
+
+    /**
+     * True if the train leaves its first station on the given date.
+     */
+    public boolean runsOn(LocalDate date) {
+        int days = operatingDayMask();
+        return days == 0 || (days & (1 << date.getDayOfWeek().ordinal())) != 0;
+    }
+
+    /**
+     * The days of operation as a bit per {@link DayOfWeek} (Monday is bit 0), or 0 if the train runs every day.
+     */
+    public int operatingDayMask() {
+        int mask = 0;
+        if (daysOfOperation != null) {
+            for (String day : daysOfOperation) {
+                mask |= 1 << dayOfWeek(day).ordinal();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Inverse of {@link #operatingDayMask()}: the day names for a mask, or null for 0.
+     */
+    public static List<String> daysOfOperation(int mask) {
+        if (mask == 0) {
+            return null;
+        }
+        List<String> days = new ArrayList<>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if ((mask & (1 << day.ordinal())) != 0) {
+                days.add(day.name().substring(0, 3));
+            }
+        }
+        return days;
+    }
+
+    /**
+     * The coach types the train runs, in the order of its coach details.
+     */
+    public List<String> coachTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        if (coachDetails != null) {
+            for (CoachDetail detail : coachDetails) {
+                types.add(detail.getCoachType());
+            }
+        }
+        return new ArrayList<>(types);
+    }
+
+    /**
+     * The coach type of a row of the seat map. Coaches take the rows in the order of the coach details,
+     * so with 2 x AC1 then 3 x AC2, rows 0-1 are AC1 and rows 2-4 AC2.
+     *
+     * @return null for a row past the coaches listed, which includes every row of a train that lists none.
+     */
+    public String coachTypeOfRow(int row) {
+        if (coachDetails != null && row >= 0) {
+            int firstRow = 0;
+            for (CoachDetail detail : coachDetails) {
+                firstRow += detail.getCoaches();
+                if (row < firstRow) {
+                    return detail.getCoachType();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The rows of the seat map that are coaches of a type, ignoring case; empty for a type the train does
+     * not run or whose coaches lie past the last row.
+     */
+    public int[] rowsOfCoachType(String coachType) {
+        SegmentSeatInventory seats = getSeats(); // may be decoded on first access
+        int rows = seats == null ? 0 : seats.getRows();
+        List<Integer> found = new ArrayList<>();
+        if (coachDetails != null && coachType != null) {
+            int firstRow = 0;
+            for (CoachDetail detail : coachDetails) {
+                if (coachType.equalsIgnoreCase(detail.getCoachType())) {
+                    for (int row = firstRow; row < Math.min(firstRow + detail.getCoaches(), rows); row++) {
+                        found.add(row);
+                    }
+                }
+                firstRow += detail.getCoaches();
+            }
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static DayOfWeek dayOfWeek(String day) {
+        String prefix = day == null ? "" : day.trim().toUpperCase(Locale.ROOT);
+        for (DayOfWeek candidate : DayOfWeek.values()) {
+            if (prefix.length() >= 3 && candidate.name().startsWith(prefix)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Unknown day of operation: " + day);
+    }
+
     public int getTrainName() {
         return 0;
     }
@@ -27,8 +27,7 @@ public class User {
     @JsonIgnore //  Password should not be included in JSON responses.
     private String password;
 
-    @JsonIgnore //  Hashed password should NEVER be sent in responses.
-    private String hashedPassword;
+    private String hashedPassword; // Persisted in users.json; logins are verified against it.
 
     private List<Ticket> ticketsBooked;
 
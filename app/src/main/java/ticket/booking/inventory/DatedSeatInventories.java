@@ -0,0 +1,74 @@
+package ticket.booking.inventory;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Seat maps per train and date of travel. A train's map for a date is created empty the first time
+ * it is booked, so dates nobody has booked cost nothing, and the maps of past dates can be removed
+ * once they are archived.
+ * <p>
+ * Which dates are valid is the caller's business: this class creates whatever it is asked for, which
+ * is what journal replay needs.
+ */
+public final class DatedSeatInventories {
+
+    private final ConcurrentMap<String, ConcurrentSkipListMap<LocalDate, SegmentSeatInventory>> byTrain = new ConcurrentHashMap<>();
+
+    /**
+     * The seat map of a train on a date, if anything was ever booked on it. Never creates one.
+     */
+    public Optional<SegmentSeatInventory> find(String trainKey, LocalDate date) {
+        NavigableMap<LocalDate, SegmentSeatInventory> dates = byTrain.get(trainKey);
+        return dates == null ? Optional.empty() : Optional.ofNullable(dates.get(date));
+    }
+
+    /**
+     * The seat map of a train on a date, created with every seat free and the layout of {@code layout}
+     * if there is none yet.
+     */
+    public SegmentSeatInventory getOrCreate(String trainKey, LocalDate date, SegmentSeatInventory layout) {
+        return byTrain.computeIfAbsent(trainKey, key -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(date, key -> layout == null
+                        ? new SegmentSeatInventory(0, 0)
+                        : new SegmentSeatInventory(layout.getRows(), layout.getSeatsPerRow()));
+    }
+
+    public void put(String trainKey, LocalDate date, SegmentSeatInventory seats) {
+        byTrain.computeIfAbsent(trainKey, key -> new ConcurrentSkipListMap<>()).put(date, seats);
+    }
+
+    public Optional<SegmentSeatInventory> remove(String trainKey, LocalDate date) {
+        NavigableMap<LocalDate, SegmentSeatInventory> dates = byTrain.get(trainKey);
+        return dates == null ? Optional.empty() : Optional.ofNullable(dates.remove(date));
+    }
+
+    public Set<String> trainKeys() {
+        return Collections.unmodifiableSet(byTrain.keySet());
+    }
+
+    /**
+     * The seat maps of one train in date order; a live view.
+     */
+    public NavigableMap<LocalDate, SegmentSeatInventory> datesOf(String trainKey) {
+        NavigableMap<LocalDate, SegmentSeatInventory> dates = byTrain.get(trainKey);
+        return dates == null ? Collections.emptyNavigableMap() : Collections.unmodifiableNavigableMap(dates);
+    }
+
+    /**
+     * Number of (train, date) seat maps held.
+     */
+    public int size() {
+        int size = 0;
+        for (NavigableMap<LocalDate, SegmentSeatInventory> dates : byTrain.values()) {
+            size += dates.size();
+        }
+        return size;
+    }
+}
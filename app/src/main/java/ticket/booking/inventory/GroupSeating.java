@@ -0,0 +1,14 @@
+package ticket.booking.inventory;
+
+/**
+ * How closely a group booking must sit together, from tightest to loosest. A search always tries the
+ * tighter arrangements first and stops at the one given.
+ */
+public enum GroupSeating {
+    /** One run of adjacent seats in a single coach. */
+    ADJACENT,
+    /** Adjacent if possible, otherwise any seats within a single coach. */
+    SAME_COACH,
+    /** Adjacent, then same coach, then whatever seats are free across coaches. */
+    ANY
+}
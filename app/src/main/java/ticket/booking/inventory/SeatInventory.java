@@ -0,0 +1,215 @@
+package ticket.booking.inventory;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Compact seat map for a train: one bit per seat, packed into longs.
+ * <p>
+ * Every row (coach) starts on a word boundary, so row scans never have to
+ * straddle two coaches. Booking and releasing a seat is a compare-and-set on
+ * the word holding its bit, so two callers can never both book the same seat.
+ * <p>
+ * In JSON the inventory is still written as the familiar 0/1 matrix, see
+ * {@link SeatInventoryJson}.
+ */
+@JsonSerialize(using = SeatInventoryJson.Serializer.class)
+@JsonDeserialize(using = SeatInventoryJson.Deserializer.class)
+public class SeatInventory {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+
+    private final int rows;
+    private final int seatsPerRow;
+    private final int wordsPerRow;
+    private final AtomicLongArray words;
+
+    public SeatInventory(int rows, int seatsPerRow) {
+        if (rows < 0 || seatsPerRow < 0) {
+            throw new IllegalArgumentException("Rows and seats per row cannot be negative.");
+        }
+        this.rows = rows;
+        this.seatsPerRow = seatsPerRow;
+        this.wordsPerRow = (seatsPerRow + BITS_PER_WORD - 1) >>> ADDRESS_BITS_PER_WORD;
+        this.words = new AtomicLongArray(rows * wordsPerRow);
+    }
+
+    /**
+     * Builds an inventory from the legacy 0/1 seat matrix. Any non-zero cell counts as booked.
+     */
+    public static SeatInventory fromMatrix(List<List<Integer>> matrix) {
+        if (matrix == null || matrix.isEmpty()) {
+            return new SeatInventory(0, 0);
+        }
+        int seatsPerRow = matrix.get(0).size();
+        SeatInventory inventory = new SeatInventory(matrix.size(), seatsPerRow);
+        for (int row = 0; row < matrix.size(); row++) {
+            List<Integer> cells = matrix.get(row);
+            if (cells.size() != seatsPerRow) {
+                throw new IllegalArgumentException("Seat rows must all have the same length.");
+            }
+            for (int seat = 0; seat < seatsPerRow; seat++) {
+                Integer cell = cells.get(seat);
+                if (cell != null && cell != 0) {
+                    inventory.tryBook(row, seat);
+                }
+            }
+        }
+        return inventory;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    public int getCapacity() {
+        return rows * seatsPerRow;
+    }
+
+    public boolean isValidSeat(int row, int seat) {
+        return row >= 0 && row < rows && seat >= 0 && seat < seatsPerRow;
+    }
+
+    public boolean isBooked(int row, int seat) {
+        checkSeat(row, seat);
+        return (words.get(wordIndex(row, seat)) & bit(seat)) != 0;
+    }
+
+    /**
+     * Atomically books a seat.
+     *
+     * @return true if the seat was free and is now booked by this call, false if it was already taken.
+     */
+    public boolean tryBook(int row, int seat) {
+        checkSeat(row, seat);
+        int index = wordIndex(row, seat);
+        long mask = bit(seat);
+        while (true) {
+            long current = words.get(index);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(index, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Atomically frees a seat.
+     *
+     * @return true if the seat was booked and is now free, false if it was already free.
+     */
+    public boolean release(int row, int seat) {
+        checkSeat(row, seat);
+        int index = wordIndex(row, seat);
+        long mask = bit(seat);
+        while (true) {
+            long current = words.get(index);
+            if ((current & mask) == 0) {
+                return false;
+            }
+            if (words.compareAndSet(index, current, current & ~mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the first free seat in the given row, or -1 if the row is full.
+     */
+    public int firstFreeInRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IllegalArgumentException("Invalid row index.");
+        }
+        int base = row * wordsPerRow;
+        for (int w = 0; w < wordsPerRow; w++) {
+            long free = ~words.get(base + w);
+            if (free != 0) {
+                int seat = (w << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(free);
+                return seat < seatsPerRow ? seat : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first free seat as a flat index ({@code row * seatsPerRow + seat}), or -1 if the train is full.
+     */
+    public int firstFree() {
+        for (int row = 0; row < rows; row++) {
+            int seat = firstFreeInRow(row);
+            if (seat != -1) {
+                return row * seatsPerRow + seat;
+            }
+        }
+        return -1;
+    }
+
+    public int freeCountInRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IllegalArgumentException("Invalid row index.");
+        }
+        int booked = 0;
+        int base = row * wordsPerRow;
+        for (int w = 0; w < wordsPerRow; w++) {
+            booked += Long.bitCount(words.get(base + w));
+        }
+        return seatsPerRow - booked;
+    }
+
+    public int freeCount() {
+        int booked = 0;
+        for (int i = 0; i < words.length(); i++) {
+            booked += Long.bitCount(words.get(i));
+        }
+        return getCapacity() - booked;
+    }
+
+    /**
+     * Returns a point-in-time copy of the seats as the legacy 0/1 matrix.
+     */
+    public List<List<Integer>> toMatrix() {
+        List<List<Integer>> matrix = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            List<Integer> cells = new ArrayList<>(seatsPerRow);
+            for (int seat = 0; seat < seatsPerRow; seat++) {
+                cells.add((words.get(wordIndex(row, seat)) & bit(seat)) != 0 ? 1 : 0);
+            }
+            matrix.add(cells);
+        }
+        return matrix;
+    }
+
+    private int wordIndex(int row, int seat) {
+        return row * wordsPerRow + (seat >>> ADDRESS_BITS_PER_WORD);
+    }
+
+    private static long bit(int seat) {
+        return 1L << (seat & (BITS_PER_WORD - 1));
+    }
+
+    private void checkSeat(int row, int seat) {
+        if (!isValidSeat(row, seat)) {
+            throw new IllegalArgumentException("Invalid row or seat index.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SeatInventory{" +
+                "rows=" + rows +
+                ", seatsPerRow=" + seatsPerRow +
+                ", free=" + freeCount() +
+                '}';
+    }
+}
@@ -0,0 +1,64 @@
+package ticket.booking.inventory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Jackson adapters that keep {@link SeatInventory} readable in trains.json as a 0/1 matrix.
+ */
+public final class SeatInventoryJson {
+
+    private SeatInventoryJson() {
+        // Holder for the serializer and deserializer.
+    }
+
+    public static class Serializer extends StdSerializer<SeatInventory> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(SeatInventory.class);
+        }
+
+        @Override
+        public void serialize(SeatInventory inventory, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray();
+            for (int row = 0; row < inventory.getRows(); row++) {
+                gen.writeStartArray();
+                for (int seat = 0; seat < inventory.getSeatsPerRow(); seat++) {
+                    gen.writeNumber(inventory.isBooked(row, seat) ? 1 : 0);
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    public static class Deserializer extends StdDeserializer<SeatInventory> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Deserializer() {
+            super(SeatInventory.class);
+        }
+
+        @Override
+        public SeatInventory deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            List<List<Integer>> matrix = p.readValueAs(new TypeReference<List<List<Integer>>>() {});
+            try {
+                return SeatInventory.fromMatrix(matrix);
+            } catch (IllegalArgumentException e) {
+                throw JsonMappingException.from(p, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package ticket.booking.inventory;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Seat map that tracks bookings per leg of the journey, so one berth can be sold
+ * to several passengers whose station ranges do not overlap.
+ * <p>
+ * Leg {@code k} is the stretch between station {@code k} and station {@code k + 1}.
+ * Each seat owns a 64-bit leg mask; booking stations {@code from..to} is a single
+ * compare-and-set that succeeds only if none of the legs {@code from..to-1} are taken,
+ * which makes booking and releasing an interval atomic without locks. A booking made
+ * without stations (the whole run) sets every bit, so it blocks the seat on any train
+ * length. Trains can therefore have at most 65 stations.
+ * <p>
+ * A {@link SeatInventory} bitset of seats that carry any booking is kept alongside the
+ * masks. It only steers searches (untouched seats are found a word at a time); the
+ * masks remain the source of truth for every booking decision.
+ * <p>
+ * Counts of booked seats per leg, per row and leg, and of seats booked on any leg, are adjusted by
+ * every change to a mask, so free seats per leg, for the whole map or a block of rows such as the
+ * coaches of one type, are read without a scan. They trail an in-flight booking by
+ * a moment and are meant for showing availability, not for deciding bookings.
+ */
+@JsonSerialize(using = SegmentSeatInventoryJson.Serializer.class)
+@JsonDeserialize(using = SegmentSeatInventoryJson.Deserializer.class)
+public class SegmentSeatInventory {
+
+    public static final int MAX_LEGS = 64;
+    public static final long ALL_LEGS = -1L;
+
+    private final int rows;
+    private final int seatsPerRow;
+    private final AtomicLongArray legMasks;
+    private final SeatInventory occupied;
+    private final AtomicIntegerArray bookedByLeg = new AtomicIntegerArray(MAX_LEGS);
+    private final AtomicIntegerArray bookedByRowLeg; // row * MAX_LEGS + leg
+    private final AtomicInteger bookedSeats = new AtomicInteger();
+
+    public SegmentSeatInventory(int rows, int seatsPerRow) {
+        this.occupied = new SeatInventory(rows, seatsPerRow);
+        this.rows = rows;
+        this.seatsPerRow = seatsPerRow;
+        this.legMasks = new AtomicLongArray(rows * seatsPerRow);
+        this.bookedByRowLeg = new AtomicIntegerArray(rows * MAX_LEGS);
+    }
+
+    /**
+     * Returns the mask of legs travelled between two station indexes.
+     */
+    public static long legMask(int fromStation, int toStation) {
+        if (fromStation < 0 || toStation > MAX_LEGS || fromStation >= toStation) {
+            throw new IllegalArgumentException("Invalid station interval: " + fromStation + ".." + toStation);
+        }
+        int legs = toStation - fromStation;
+        long mask = legs == MAX_LEGS ? ALL_LEGS : (1L << legs) - 1;
+        return mask << fromStation;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    public int getCapacity() {
+        return rows * seatsPerRow;
+    }
+
+    public boolean isValidSeat(int row, int seat) {
+        return occupied.isValidSeat(row, seat);
+    }
+
+    public long getLegMask(int row, int seat) {
+        return legMasks.get(flatIndex(row, seat));
+    }
+
+    /**
+     * True if the seat carries a booking on any leg.
+     */
+    public boolean isBooked(int row, int seat) {
+        return getLegMask(row, seat) != 0;
+    }
+
+    public boolean isFree(int row, int seat, int fromStation, int toStation) {
+        return (getLegMask(row, seat) & legMask(fromStation, toStation)) == 0;
+    }
+
+    /**
+     * Books the seat for the whole run.
+     */
+    public boolean tryBook(int row, int seat) {
+        return tryBookAt(flatIndex(row, seat), ALL_LEGS);
+    }
+
+    /**
+     * Atomically books the seat from {@code fromStation} to {@code toStation}.
+     *
+     * @return true if every leg in the interval was free and is now booked by this call.
+     */
+    public boolean tryBook(int row, int seat, int fromStation, int toStation) {
+        return tryBookAt(flatIndex(row, seat), legMask(fromStation, toStation));
+    }
+
+    /**
+     * Releases a whole-run booking made with {@link #tryBook(int, int)}.
+     */
+    public boolean release(int row, int seat) {
+        return releaseAt(flatIndex(row, seat), ALL_LEGS);
+    }
+
+    /**
+     * Atomically releases the seat from {@code fromStation} to {@code toStation}.
+     *
+     * @return true if the whole interval was booked and is now free.
+     */
+    public boolean release(int row, int seat, int fromStation, int toStation) {
+        return releaseAt(flatIndex(row, seat), legMask(fromStation, toStation));
+    }
+
+    /**
+     * Atomically books an explicit leg mask, as built by {@link #legMask(int, int)} or {@link #ALL_LEGS}.
+     */
+    public boolean tryBookLegs(int row, int seat, long legs) {
+        checkLegs(legs);
+        return tryBookAt(flatIndex(row, seat), legs);
+    }
+
+    /**
+     * Atomically releases an explicit leg mask.
+     */
+    public boolean releaseLegs(int row, int seat, long legs) {
+        checkLegs(legs);
+        return releaseAt(flatIndex(row, seat), legs);
+    }
+
+    /**
+     * Unconditionally marks legs as booked. Used when replaying journals, where the record states
+     * the outcome of a booking that already succeeded.
+     */
+    public void markBooked(int row, int seat, long legs) {
+        int index = flatIndex(row, seat);
+        long previous = legMasks.getAndAccumulate(index, legs, (current, add) -> current | add);
+        countChange(index, previous, previous | legs);
+        if (previous == 0) {
+            syncOccupied(index);
+        }
+    }
+
+    /**
+     * Unconditionally marks legs as free. The counterpart of {@link #markBooked}.
+     */
+    public void markReleased(int row, int seat, long legs) {
+        int index = flatIndex(row, seat);
+        long previous = legMasks.getAndAccumulate(index, legs, (current, remove) -> current & ~remove);
+        long updated = previous & ~legs;
+        countChange(index, previous, updated);
+        if (updated == 0) {
+            syncOccupied(index);
+        }
+    }
+
+    /**
+     * Finds a seat that is free from {@code fromStation} to {@code toStation}, as a flat index
+     * ({@code row * seatsPerRow + seat}), or -1 if none is left.
+     * <p>
+     * Seats that are already partly sold are preferred when the interval fits in their gaps,
+     * which keeps untouched seats available for longer journeys.
+     */
+    public int findFreeSeat(int fromStation, int toStation) {
+        long legs = legMask(fromStation, toStation);
+        int untouched = -1;
+        for (int row = 0; row < rows; row++) {
+            int seat = findPartlyBookedFit(row, legs);
+            if (seat != -1) {
+                return row * seatsPerRow + seat;
+            }
+            if (untouched == -1) {
+                int free = occupied.firstFreeInRow(row);
+                if (free != -1) {
+                    untouched = row * seatsPerRow + free;
+                }
+            }
+        }
+        return untouched;
+    }
+
+    /**
+     * Same as {@link #findFreeSeat(int, int)} restricted to one row (coach). Returns the seat index or -1.
+     */
+    public int findFreeSeatInRow(int row, int fromStation, int toStation) {
+        checkRow(row);
+        long legs = legMask(fromStation, toStation);
+        int seat = findPartlyBookedFit(row, legs);
+        return seat != -1 ? seat : occupied.firstFreeInRow(row);
+    }
+
+    /**
+     * Finds {@code count} seats that are free from {@code fromStation} to {@code toStation}, as flat indexes,
+     * or an empty array if even the loosest arrangement allowed by {@code seating} is not available.
+     * <p>
+     * A run of adjacent seats is preferred, taking the shortest run that fits so longer runs stay whole
+     * for larger groups. Next comes the fullest coach with enough free seats, then seats across coaches.
+     * Everything is decided in one pass over the masks, so a nearly full train costs the same as an empty one.
+     */
+    public int[] findGroup(int fromStation, int toStation, int count, GroupSeating seating) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid group size: " + count);
+        }
+        if (count > getCapacity()) {
+            return new int[0];
+        }
+        long legs = legMask(fromStation, toStation);
+        int bestRunStart = -1;
+        int bestRunLength = Integer.MAX_VALUE;
+        int bestCoach = -1;
+        int bestCoachFree = Integer.MAX_VALUE;
+        int totalFree = 0;
+        for (int row = 0; row < rows && bestRunLength != count; row++) {
+            int base = row * seatsPerRow;
+            int run = 0;
+            int free = 0;
+            for (int seat = 0; seat <= seatsPerRow; seat++) {
+                if (seat < seatsPerRow && (legMasks.get(base + seat) & legs) == 0) {
+                    run++;
+                    free++;
+                    continue;
+                }
+                if (run >= count && run < bestRunLength) {
+                    bestRunLength = run;
+                    bestRunStart = base + seat - run;
+                }
+                run = 0;
+            }
+            if (free >= count && free < bestCoachFree) {
+                bestCoach = row;
+                bestCoachFree = free;
+            }
+            totalFree += free;
+        }
+        if (bestRunStart != -1) {
+            int[] seats = new int[count];
+            for (int i = 0; i < count; i++) {
+                seats[i] = bestRunStart + i;
+            }
+            return seats;
+        }
+        if (seating == GroupSeating.ADJACENT) {
+            return new int[0];
+        }
+        if (bestCoach != -1) {
+            return collectFree(bestCoach * seatsPerRow, (bestCoach + 1) * seatsPerRow, legs, count);
+        }
+        if (seating == GroupSeating.SAME_COACH || totalFree < count) {
+            return new int[0];
+        }
+        return collectFree(0, legMasks.length(), legs, count);
+    }
+
+    private int[] collectFree(int from, int to, long legs, int count) {
+        int[] seats = new int[count];
+        int found = 0;
+        for (int i = from; i < to && found < count; i++) {
+            if ((legMasks.get(i) & legs) == 0) {
+                seats[found++] = i;
+            }
+        }
+        return found == count ? seats : new int[0];
+    }
+
+    public int freeCount(int fromStation, int toStation) {
+        long legs = legMask(fromStation, toStation);
+        if (toStation - fromStation == 1) {
+            return freeSeatsOnLeg(fromStation);
+        }
+        int free = 0;
+        for (int i = 0; i < legMasks.length(); i++) {
+            if ((legMasks.get(i) & legs) == 0) {
+                free++;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Number of seats with no booking on any leg.
+     */
+    public int freeCount() {
+        return getCapacity() - bookedSeats.get();
+    }
+
+    /**
+     * Number of seats free on the leg from station {@code leg} to station {@code leg + 1}, from the counters.
+     */
+    public int freeSeatsOnLeg(int leg) {
+        if (leg < 0 || leg >= MAX_LEGS) {
+            throw new IllegalArgumentException("Invalid leg: " + leg);
+        }
+        return getCapacity() - bookedByLeg.get(leg);
+    }
+
+    /**
+     * Number of seats in rows {@code fromRow} (inclusive) to {@code toRow} (exclusive) free on a leg,
+     * from the counters: one read per row.
+     */
+    public int freeSeatsOnLeg(int leg, int fromRow, int toRow) {
+        if (leg < 0 || leg >= MAX_LEGS) {
+            throw new IllegalArgumentException("Invalid leg: " + leg);
+        }
+        if (fromRow < 0 || toRow > rows || fromRow > toRow) {
+            throw new IllegalArgumentException("Invalid rows: " + fromRow + ".." + toRow);
+        }
+        int free = (toRow - fromRow) * seatsPerRow;
+        for (int row = fromRow; row < toRow; row++) {
+            free -= bookedByRowLeg.get(row * MAX_LEGS + leg);
+        }
+        return free;
+    }
+
+    /**
+     * Returns a point-in-time 0/1 matrix where 1 means the seat is booked on at least one leg.
+     */
+    public List<List<Integer>> toMatrix() {
+        List<List<Integer>> matrix = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            List<Integer> cells = new ArrayList<>(seatsPerRow);
+            for (int seat = 0; seat < seatsPerRow; seat++) {
+                cells.add(isBooked(row, seat) ? 1 : 0);
+            }
+            matrix.add(cells);
+        }
+        return matrix;
+    }
+
+    /**
+     * Restores a seat's leg mask while loading. Not meant for use once the inventory is shared.
+     */
+    void restoreLegMask(int row, int seat, long mask) {
+        int index = flatIndex(row, seat);
+        countChange(index, legMasks.getAndSet(index, mask), mask);
+        syncOccupied(index);
+    }
+
+    private int findPartlyBookedFit(int row, long legs) {
+        int base = row * seatsPerRow;
+        int fallback = -1;
+        for (int seat = 0; seat < seatsPerRow; seat++) {
+            long mask = legMasks.get(base + seat);
+            if (mask == 0 || (mask & legs) != 0) {
+                continue;
+            }
+            // Best fit: an existing booking ends where this one starts or starts where it ends.
+            if ((mask & ((legs << 1) | (legs >>> 1))) != 0) {
+                return seat;
+            }
+            if (fallback == -1) {
+                fallback = seat;
+            }
+        }
+        return fallback;
+    }
+
+    private boolean tryBookAt(int index, long legs) {
+        while (true) {
+            long current = legMasks.get(index);
+            if ((current & legs) != 0) {
+                return false;
+            }
+            if (legMasks.compareAndSet(index, current, current | legs)) {
+                countChange(index, current, current | legs);
+                if (current == 0) {
+                    syncOccupied(index);
+                }
+                return true;
+            }
+        }
+    }
+
+    private boolean releaseAt(int index, long legs) {
+        while (true) {
+            long current = legMasks.get(index);
+            if ((current & legs) != legs) {
+                return false;
+            }
+            long updated = current & ~legs;
+            if (legMasks.compareAndSet(index, current, updated)) {
+                countChange(index, current, updated);
+                if (updated == 0) {
+                    syncOccupied(index);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Applies one seat's mask change to the counters: one step per leg that changed.
+     */
+    private void countChange(int index, long before, long after) {
+        int rowBase = index / seatsPerRow * MAX_LEGS;
+        for (long booked = after & ~before; booked != 0; booked &= booked - 1) {
+            int leg = Long.numberOfTrailingZeros(booked);
+            bookedByLeg.incrementAndGet(leg);
+            bookedByRowLeg.incrementAndGet(rowBase + leg);
+        }
+        for (long released = before & ~after; released != 0; released &= released - 1) {
+            int leg = Long.numberOfTrailingZeros(released);
+            bookedByLeg.decrementAndGet(leg);
+            bookedByRowLeg.decrementAndGet(rowBase + leg);
+        }
+        if (before == 0 && after != 0) {
+            bookedSeats.incrementAndGet();
+        } else if (before != 0 && after == 0) {
+            bookedSeats.decrementAndGet();
+        }
+    }
+
+    /**
+     * Brings the occupied bit in line with the mask. Re-checks after writing so that racing
+     * book/release calls converge on the latest mask.
+     */
+    private void syncOccupied(int index) {
+        int row = index / seatsPerRow;
+        int seat = index % seatsPerRow;
+        while (true) {
+            long mask = legMasks.get(index);
+            if (mask != 0) {
+                occupied.tryBook(row, seat);
+            } else {
+                occupied.release(row, seat);
+            }
+            if (legMasks.get(index) == mask) {
+                return;
+            }
+        }
+    }
+
+    private int flatIndex(int row, int seat) {
+        if (!occupied.isValidSeat(row, seat)) {
+            throw new IllegalArgumentException("Invalid row or seat index.");
+        }
+        return row * seatsPerRow + seat;
+    }
+
+    private static void checkLegs(long legs) {
+        if (legs == 0) {
+            throw new IllegalArgumentException("Leg mask cannot be empty.");
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IllegalArgumentException("Invalid row index.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentSeatInventory{" +
+                "rows=" + rows +
+                ", seatsPerRow=" + seatsPerRow +
+                ", untouched=" + freeCount() +
+                '}';
+    }
+}
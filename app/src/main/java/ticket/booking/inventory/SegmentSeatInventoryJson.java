@@ -0,0 +1,125 @@
+package ticket.booking.inventory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Jackson adapters for {@link SegmentSeatInventory}.
+ * <p>
+ * The seat matrix keeps its legacy shape: {@code 0} is a free seat and {@code 1} a seat
+ * booked for the whole run. A seat sold only on some legs is written as a string of
+ * station-index ranges, e.g. {@code "0-1,2-3"} for bookings from station 0 to 1 and 2 to 3.
+ */
+public final class SegmentSeatInventoryJson {
+
+    private SegmentSeatInventoryJson() {
+        // Holder for the serializer and deserializer.
+    }
+
+    static String toRanges(long mask) {
+        StringBuilder ranges = new StringBuilder();
+        long remaining = mask;
+        while (remaining != 0) {
+            int from = Long.numberOfTrailingZeros(remaining);
+            int to = from + Long.numberOfTrailingZeros(~(remaining >>> from));
+            if (ranges.length() > 0) {
+                ranges.append(',');
+            }
+            ranges.append(from).append('-').append(to);
+            remaining &= to == SegmentSeatInventory.MAX_LEGS ? 0 : -1L << to;
+        }
+        return ranges.toString();
+    }
+
+    static long fromRanges(String ranges) {
+        long mask = 0;
+        for (String range : ranges.split(",")) {
+            String[] bounds = range.trim().split("-");
+            if (bounds.length != 2) {
+                throw new IllegalArgumentException("Invalid seat range: " + range);
+            }
+            mask |= SegmentSeatInventory.legMask(Integer.parseInt(bounds[0].trim()), Integer.parseInt(bounds[1].trim()));
+        }
+        return mask;
+    }
+
+    public static class Serializer extends StdSerializer<SegmentSeatInventory> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(SegmentSeatInventory.class);
+        }
+
+        @Override
+        public void serialize(SegmentSeatInventory inventory, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray();
+            for (int row = 0; row < inventory.getRows(); row++) {
+                gen.writeStartArray();
+                for (int seat = 0; seat < inventory.getSeatsPerRow(); seat++) {
+                    long mask = inventory.getLegMask(row, seat);
+                    if (mask == 0) {
+                        gen.writeNumber(0);
+                    } else if (mask == SegmentSeatInventory.ALL_LEGS) {
+                        gen.writeNumber(1);
+                    } else {
+                        gen.writeString(toRanges(mask));
+                    }
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    public static class Deserializer extends StdDeserializer<SegmentSeatInventory> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Deserializer() {
+            super(SegmentSeatInventory.class);
+        }
+
+        @Override
+        public SegmentSeatInventory deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            List<List<Object>> matrix = p.readValueAs(new TypeReference<List<List<Object>>>() {});
+            try {
+                return fromMatrix(matrix);
+            } catch (IllegalArgumentException e) {
+                throw JsonMappingException.from(p, e.getMessage(), e);
+            }
+        }
+
+        private static SegmentSeatInventory fromMatrix(List<List<Object>> matrix) {
+            if (matrix == null || matrix.isEmpty()) {
+                return new SegmentSeatInventory(0, 0);
+            }
+            int seatsPerRow = matrix.get(0).size();
+            SegmentSeatInventory inventory = new SegmentSeatInventory(matrix.size(), seatsPerRow);
+            for (int row = 0; row < matrix.size(); row++) {
+                List<Object> cells = matrix.get(row);
+                if (cells.size() != seatsPerRow) {
+                    throw new IllegalArgumentException("Seat rows must all have the same length.");
+                }
+                for (int seat = 0; seat < seatsPerRow; seat++) {
+                    Object cell = cells.get(seat);
+                    if (cell instanceof String) {
+                        inventory.restoreLegMask(row, seat, fromRanges((String) cell));
+                    } else if (cell instanceof Number && ((Number) cell).intValue() != 0) {
+                        inventory.restoreLegMask(row, seat, SegmentSeatInventory.ALL_LEGS);
+                    }
+                }
+            }
+            return inventory;
+        }
+    }
+}
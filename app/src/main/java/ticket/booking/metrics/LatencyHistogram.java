@@ -0,0 +1,104 @@
+package ticket.booking.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ * <p>
+ * Each power of two is split into {@value #SUB_BUCKETS} equal buckets, so any recorded value is
+ * reported within about 3% of its true value, from nanoseconds up to {@link Long#MAX_VALUE}, in a
+ * fixed array of counters. Recording is one array increment and never allocates. Percentiles are
+ * read from a point-in-time walk of the counters; a value recorded concurrently may or may not be
+ * included.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, a value of {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    public long getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / n);
+    }
+
+    /**
+     * The value at or below which {@code quantile} (0 to 1) of the recordings fall, in microseconds.
+     * Returns the upper end of the bucket the quantile falls in, capped at the largest recorded value.
+     */
+    public long percentileMicros(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1.");
+        }
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return TimeUnit.NANOSECONDS.toMicros(Math.min(upperBoundOf(i), maxNanos.get()));
+            }
+        }
+        return getMaxMicros();
+    }
+
+    static int indexOf(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude <= SUB_BUCKET_BITS) {
+            return (int) value; // small values get a bucket each
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        long upper = ((subBucket + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
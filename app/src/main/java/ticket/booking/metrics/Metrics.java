@@ -0,0 +1,111 @@
+package ticket.booking.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the process's counters, operation timers and gauges.
+ * <p>
+ * Counters and timers are cheap enough for hot paths: they are looked up once, kept in a field,
+ * and updated without locks. Gauges are only evaluated when someone reads the metrics, through
+ * {@link #snapshot()}, JMX ({@link #registerMBean()}) or a {@link MetricsEndpoint}.
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "ticket.booking:type=Metrics";
+
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+    private static final Metrics SHARED = new Metrics();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OperationTimer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<Map<String, Long>>> gaugeFamilies = new ConcurrentHashMap<>();
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public OperationTimer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new OperationTimer());
+    }
+
+    /**
+     * Publishes a value that is read on demand. Registering the same name again replaces the gauge.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Publishes one value per key, e.g. per train, computed together on demand and reported as
+     * {@code name[key]}. Registering the same name again replaces the family.
+     */
+    public void gaugeFamily(String name, Supplier<Map<String, Long>> values) {
+        gaugeFamilies.put(name, values);
+    }
+
+    /**
+     * Point-in-time values of every metric, by name. Timers contribute {@code .calls}, {@code .failures}
+     * and latency percentiles in microseconds.
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        timers.forEach((name, timer) -> {
+            LatencyHistogram latency = timer.getLatency();
+            values.put(name + ".calls", timer.getCalls());
+            values.put(name + ".failures", timer.getFailures());
+            values.put(name + ".mean_us", latency.getMeanMicros());
+            values.put(name + ".p50_us", latency.percentileMicros(0.5));
+            values.put(name + ".p99_us", latency.percentileMicros(0.99));
+            values.put(name + ".p999_us", latency.percentileMicros(0.999));
+            values.put(name + ".max_us", latency.getMaxMicros());
+        });
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        gaugeFamilies.forEach((name, family) ->
+                family.get().forEach((key, value) -> values.put(name + '[' + key + ']', value)));
+        return values;
+    }
+
+    /**
+     * Writes the snapshot as plain text, one {@code name value} pair per line.
+     */
+    public void writeText(Appendable out) throws IOException {
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            out.append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue())).append('\n');
+        }
+    }
+
+    /**
+     * Exposes the snapshot as read-only attributes of the {@value #OBJECT_NAME} MBean. Safe to call twice.
+     */
+    public void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new MetricsMBean(this), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Error registering metrics MBean: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ticket.booking.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.Map;
+
+/**
+ * Read-only MBean whose attributes are the current {@link Metrics#snapshot()}. The attribute set
+ * follows the registry, so metrics registered after startup show up without re-registering.
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    private final Metrics metrics;
+
+    MetricsMBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = metrics.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException("No metric named " + attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> snapshot = metrics.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Long value = snapshot.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only.");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations.");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Long> snapshot = metrics.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (String name : snapshot.keySet()) {
+            attributes[i++] = new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Booking service metrics", attributes,
+                null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,46 @@
+package ticket.booking.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram plus a failure counter for one service operation.
+ * <pre>
+ * long started = timer.start();
+ * boolean ok = false;
+ * try {
+ *     ok = doWork();
+ *     return ok;
+ * } finally {
+ *     timer.stop(started, ok);
+ * }
+ * </pre>
+ * A call that returns false or throws counts as a failure; its latency is recorded either way.
+ */
+public final class OperationTimer {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(long startNanos, boolean succeeded) {
+        latency.recordSince(startNanos);
+        if (!succeeded) {
+            failures.increment();
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+}
@@ -0,0 +1,55 @@
+package ticket.booking.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs at most one message per interval for a chatty event, e.g. "seat booked", and counts the rest.
+ * <p>
+ * Messages are built lazily, so a suppressed message costs a clock read and a counter increment
+ * instead of string formatting. The next message that gets through reports how many were skipped.
+ * The interval comes from the {@code booking.log.sampleMillis} system property (default 1000);
+ * 0 logs every message.
+ */
+public final class SampledLogger {
+
+    private static final long DEFAULT_INTERVAL_MILLIS = Long.getLong("booking.log.sampleMillis", 1000L);
+
+    private final Logger logger;
+    private final Level level;
+    private final long intervalNanos;
+    private final AtomicLong nextLogAt = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder suppressed = new LongAdder();
+
+    public SampledLogger(Logger logger, Level level) {
+        this(logger, level, DEFAULT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public SampledLogger(Logger logger, Level level, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.level = level;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    public void log(Supplier<String> message) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = nextLogAt.get();
+        if (intervalNanos > 0 && next != Long.MIN_VALUE && now - next < 0) {
+            suppressed.increment();
+            return;
+        }
+        if (!nextLogAt.compareAndSet(next, now + intervalNanos) && intervalNanos > 0) {
+            suppressed.increment(); // another thread took this slot
+            return;
+        }
+        long skipped = suppressed.sumThenReset();
+        logger.log(level, skipped == 0 ? message.get() : message.get() + " (" + skipped + " similar messages suppressed)");
+    }
+}
@@ -0,0 +1,193 @@
+package ticket.booking.persistence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.CoachDetail;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the binary snapshot format read by {@link MappedTrainSnapshot} and {@link MappedUserSnapshot}.
+ * <pre>
+ * header  : magic "IRCB" | version u16 | kind u8 | flags u8 | count i32 | reserved i32 | index offset i64
+ * records : one per train or user, never crossing a 1 GiB mapping chunk
+ * index   : count x i64 absolute record offsets, 8-byte aligned
+ *
+ * train   : length i32 | rows u16 | seatsPerRow u16 | stations u16 | days of operation u16 | seats offset i32
+ *           | trainId str | trainNo str | stations x (name str, time str) | rows*seatsPerRow x leg mask i64
+ *           | coach details x (coach type str, coaches i32), up to the record length
+ * user    : length i32 | tickets offset i32 | userId str | name str | hashedPassword str | tickets JSON blob
+ * str     : byte length i32 (-1 for null) | UTF-8 bytes
+ * </pre>
+ * Files are written to a temporary name and moved into place, like the JSON snapshots.
+ */
+public final class BinarySnapshotWriter {
+
+    static final int MAGIC = 0x49524342; // "IRCB"
+    public static final short VERSION = 1;
+    static final byte KIND_TRAINS = 1;
+    static final byte KIND_USERS = 2;
+    static final int HEADER_BYTES = 24;
+    static final long CHUNK_BYTES = 1L << 30;
+    static final int TRAIN_FIXED_BYTES = 16;
+    static final int USER_FIXED_BYTES = 8;
+
+    private BinarySnapshotWriter() {
+        // Utility class.
+    }
+
+    /**
+     * Returns the binary snapshot path that shadows a JSON snapshot, e.g. {@code trains.json -> trains.bin}.
+     */
+    public static Path binaryPathFor(String jsonPath) {
+        return Paths.get(jsonPath.replaceFirst("\\.json$", "") + ".bin");
+    }
+
+    public static void writeTrains(List<Train> trains, Path path) throws IOException {
+        write(path, KIND_TRAINS, trains, BinarySnapshotWriter::encodeTrain);
+    }
+
+    public static void writeUsers(ObjectMapper objectMapper, List<User> users, Path path) throws IOException {
+        write(path, KIND_USERS, users, user -> encodeUser(objectMapper, user));
+    }
+
+    /**
+     * Streams records to disk one at a time; only the offset table is held in memory.
+     */
+    private static <T> void write(Path path, byte kind, List<T> items, Encoder<T> encoder) throws IOException {
+        Path temp = path.toAbsolutePath().resolveSibling(path.getFileName() + ".tmp");
+        long[] offsets = new long[items.size()];
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(kind);
+            out.writeByte(0);
+            out.writeInt(items.size());
+            out.writeInt(0);
+            out.writeLong(0); // index offset, patched below
+            long position = HEADER_BYTES;
+            for (int i = 0; i < items.size(); i++) {
+                byte[] record = encoder.encode(items.get(i));
+                if (record.length > CHUNK_BYTES) {
+                    throw new IOException("Snapshot record " + i + " is larger than a mapping chunk.");
+                }
+                long chunkEnd = (position / CHUNK_BYTES + 1) * CHUNK_BYTES;
+                if (position + record.length > chunkEnd) {
+                    position += pad(out, chunkEnd - position);
+                }
+                offsets[i] = position;
+                out.write(record);
+                position += record.length;
+            }
+            position += pad(out, (8 - position % 8) % 8);
+            long indexOffset = position;
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.flush();
+            file.getChannel().write(ByteBuffer.allocate(8).putLong(0, indexOffset), 16);
+            file.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long pad(DataOutputStream out, long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            out.writeByte(0);
+        }
+        return bytes;
+    }
+
+    private static byte[] encodeTrain(Train train) throws IOException {
+        List<String> stations = train.getStations() == null ? Collections.<String>emptyList() : train.getStations();
+        Map<String, String> times = train.getStationTimes() == null ? Collections.<String, String>emptyMap() : train.getStationTimes();
+        SegmentSeatInventory seats = train.getSeats() == null ? new SegmentSeatInventory(0, 0) : train.getSeats();
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream variable = new DataOutputStream(strings);
+        writeString(variable, train.getTrainId());
+        writeString(variable, train.getTrainNo());
+        for (String station : stations) {
+            writeString(variable, station);
+            writeString(variable, times.get(station));
+        }
+        int seatsOffset = TRAIN_FIXED_BYTES + strings.size();
+
+        ByteArrayOutputStream coaches = new ByteArrayOutputStream(); // after the seats, so older files read as none
+        DataOutputStream coachOut = new DataOutputStream(coaches);
+        if (train.getCoachDetails() != null) {
+            for (CoachDetail detail : train.getCoachDetails()) {
+                writeString(coachOut, detail.getCoachType());
+                coachOut.writeInt(detail.getCoaches());
+            }
+        }
+        int length = seatsOffset + seats.getCapacity() * 8 + coaches.size();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(length);
+        out.writeShort(seats.getRows());
+        out.writeShort(seats.getSeatsPerRow());
+        out.writeShort(stations.size());
+        out.writeShort(train.operatingDayMask()); // was reserved and always 0, which still reads as "every day"
+        out.writeInt(seatsOffset);
+        strings.writeTo(out);
+        for (int row = 0; row < seats.getRows(); row++) {
+            for (int seat = 0; seat < seats.getSeatsPerRow(); seat++) {
+                out.writeLong(seats.getLegMask(row, seat));
+            }
+        }
+        coaches.writeTo(out);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeUser(ObjectMapper objectMapper, User user) throws IOException {
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream variable = new DataOutputStream(strings);
+        writeString(variable, user.getUserId());
+        writeString(variable, user.getName());
+        writeString(variable, user.getHashedPassword());
+        byte[] tickets = objectMapper.writeValueAsBytes(user.getTicketsBooked() == null ? Collections.emptyList() : user.getTicketsBooked());
+        int ticketsOffset = USER_FIXED_BYTES + strings.size();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(ticketsOffset + 4 + tickets.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ticketsOffset + 4 + tickets.length);
+        out.writeInt(ticketsOffset);
+        strings.writeTo(out);
+        out.writeInt(tickets.length);
+        out.write(tickets);
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface Encoder<T> {
+        byte[] encode(T item) throws IOException;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+}
@@ -0,0 +1,435 @@
+package ticket.booking.persistence;
+
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal sitting next to a JSON snapshot.
+ * <p>
+ * Every mutation is appended as a framed {@link JournalRecord} ({@code [length][crc32][payload]})
+ * and forced to disk before the caller returns, so the cost of a write is independent of the
+ * size of the database. On startup the owner loads its snapshot and replays the journal on top.
+ * A torn record at the tail (a crash mid-append) is detected by its length or checksum and cut off.
+ * <p>
+ * Compaction folds the journal into the snapshot: the live journal is rotated to
+ * {@code <name>.old}, the owner merges the old snapshot with the rotated records into a new
+ * snapshot, and only then is the rotated file deleted. Appends continue into a fresh journal
+ * throughout, and a crash at any point leaves snapshot + rotated + live journal replayable.
+ * <p>
+ * Appends are group-committed: callers hand their frames to a writer thread and wait, and the writer
+ * writes everything queued (up to {@code maxBatchRecords}, lingering up to {@code maxDelay} for more)
+ * with one gathering write and one force. A caller returns only once its batch is durable, so the
+ * guarantee is unchanged while a burst of bookings shares one fsync instead of paying one each.
+ * Batch limits default to the {@code booking.journal.maxBatchRecords} and
+ * {@code booking.journal.maxDelayMicros} system properties and can be changed with {@link #setGroupCommit}.
+ * <p>
+ * There is one instance per file in the process, see {@link #forSnapshot(String)}.
+ */
+public class Journal {
+
+    private static final Logger logger = Logger.getLogger(Journal.class.getName());
+    private static final LatencyHistogram COMMIT_LATENCY = Metrics.shared().timer("journal.commit").getLatency();
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final ConcurrentMap<Path, Journal> OPEN_JOURNALS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final Path rotatedPath;
+    private final Object compactionLock = new Object();
+    private final AtomicLong pendingRecords = new AtomicLong();
+    private final BlockingQueue<PendingFrame> commitQueue = new LinkedBlockingQueue<>();
+    private volatile int maxBatchRecords = Integer.getInteger("booking.journal.maxBatchRecords", 512);
+    private volatile long maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong("booking.journal.maxDelayMicros", 0L));
+    private final LongAdder committedBatches = new LongAdder();
+    private final LongAdder committedRecords = new LongAdder();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final LongAdder totalCommitNanos = new LongAdder();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final List<CommitListener> commitListeners = new CopyOnWriteArrayList<>();
+    private FileChannel channel;
+    private IOException unusable; // guarded by this; set when a failed write could not be undone
+
+    Journal(Path path) throws IOException {
+        this.path = path;
+        this.rotatedPath = Paths.get(path + ".old");
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = openForAppend(path);
+        Metrics.shared().gauge("journal." + path.getFileName() + ".queuedFrames", this::getQueuedFrames);
+        Thread writer = new Thread(this::commitLoop, "journal-writer-" + path.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns the process-wide journal that belongs to a snapshot file, e.g. {@code trains.json -> trains.journal}.
+     */
+    public static Journal forSnapshot(String snapshotPath) throws IOException {
+        Path journalPath = Paths.get(snapshotPath.replaceFirst("\\.json$", "") + ".journal").toAbsolutePath().normalize();
+        try {
+            return OPEN_JOURNALS.computeIfAbsent(journalPath, p -> {
+                try {
+                    return new Journal(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Number of records appended since the last compaction (or replayed at startup).
+     */
+    public long getPendingRecords() {
+        return pendingRecords.get();
+    }
+
+    /**
+     * Appends a record and forces it to disk.
+     */
+    public void append(JournalRecord record) throws IOException {
+        appendAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends several records as one frame. After a crash either all of them are replayed or none are.
+     * Returns once the frame has been forced to disk, usually together with other callers' frames.
+     */
+    public void appendAll(List<JournalRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        byte[] payload = JournalRecord.encodeBatch(records);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+        PendingFrame pending = new PendingFrame(frame, records.size());
+        commitQueue.add(pending);
+        try {
+            pending.durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for journal commit; the record may still be written.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to append to journal " + path, e.getCause());
+        }
+    }
+
+    /**
+     * Sets how many records one fsync may cover and how long the writer may wait for a batch to fill.
+     * A delay of zero commits whatever is queued as soon as the previous batch is durable, which batches
+     * only the callers that arrived during that fsync; a longer delay trades latency for larger batches.
+     */
+    public void setGroupCommit(int maxBatchRecords, long maxDelay, TimeUnit unit) {
+        if (maxBatchRecords < 1 || maxDelay < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and delay non-negative.");
+        }
+        this.maxBatchRecords = maxBatchRecords;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    public long getCommittedBatches() {
+        return committedBatches.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = committedBatches.sum();
+        return batches == 0 ? 0 : (double) committedRecords.sum() / batches;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * Mean time from an append call to its batch being durable.
+     */
+    public long getAverageCommitLatencyMicros() {
+        long records = committedRecords.sum();
+        return records == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalCommitNanos.sum() / records);
+    }
+
+    public long getMaxCommitLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxCommitNanos.get());
+    }
+
+    public int getQueuedFrames() {
+        return commitQueue.size();
+    }
+
+    /**
+     * Registers a listener that sees every frame committed from now on, in commit order. It runs on the
+     * writer thread before the appending callers are released, so it must be quick and must not append.
+     */
+    public void addCommitListener(CommitListener listener) {
+        commitListeners.add(listener);
+    }
+
+    public void removeCommitListener(CommitListener listener) {
+        commitListeners.remove(listener);
+    }
+
+    private void commitLoop() {
+        List<PendingFrame> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(commitQueue.take());
+                int records = batch.get(0).records;
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (records < maxBatchRecords) {
+                    long wait = deadline - System.nanoTime();
+                    PendingFrame next = wait > 0 ? commitQueue.poll(wait, TimeUnit.NANOSECONDS) : commitQueue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    records += next.records;
+                }
+                commit(batch, records);
+            } catch (InterruptedException e) {
+                logger.warning("Journal writer for " + path + " interrupted; appends will block.");
+                return;
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Error writing journal " + path + ": " + e.getMessage(), e);
+                batch.forEach(frame -> frame.durable.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private synchronized void commit(List<PendingFrame> batch, int records) throws IOException {
+        ByteBuffer[] frames = new ByteBuffer[batch.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = batch.get(i).frame;
+        }
+        if (unusable != null) {
+            throw new IOException("Journal " + path + " could not be cut back after a failed write.", unusable);
+        }
+        long committedSize = channel.size();
+        try {
+            while (frames[frames.length - 1].hasRemaining()) {
+                channel.write(frames);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            discardFrom(committedSize, e);
+            throw e;
+        }
+        pendingRecords.addAndGet(records);
+        committedBatches.increment();
+        committedRecords.add(records);
+        maxBatchSize.accumulateAndGet(records, Math::max);
+        for (CommitListener listener : commitListeners) {
+            try {
+                for (PendingFrame frame : batch) {
+                    byte[] bytes = frame.frame.array();
+                    listener.committed(Arrays.copyOfRange(bytes, HEADER_BYTES, bytes.length));
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Journal commit listener failed: " + e.getMessage(), e); // the batch is durable regardless
+            }
+        }
+        long now = System.nanoTime();
+        for (PendingFrame frame : batch) {
+            long latency = now - frame.enqueuedAt;
+            totalCommitNanos.add(latency * frame.records);
+            maxCommitNanos.accumulateAndGet(latency, Math::max);
+            COMMIT_LATENCY.record(latency);
+        }
+        batch.forEach(frame -> frame.durable.complete(null)); // after the metrics, so callers see their batch counted
+    }
+
+    /**
+     * Cuts a failed batch off the end of the journal. Replay stops at the first bad frame, so a torn batch
+     * left in place would hide every batch acknowledged after it. If the file cannot be cut back, later
+     * commits fail rather than append behind the torn frames.
+     */
+    private void discardFrom(long committedSize, IOException failure) {
+        try {
+            channel.truncate(committedSize);
+            channel.force(false);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+            unusable = failure;
+            logger.log(Level.SEVERE, "Failed to cut journal " + path + " back to " + committedSize + " bytes; it takes no more writes.", e);
+        }
+    }
+
+    /**
+     * Replays a rotated journal left over from an interrupted compaction, then the live journal.
+     *
+     * @return the number of records replayed.
+     */
+    public synchronized long replay(Consumer<JournalRecord> consumer) throws IOException {
+        long replayed = replayFile(rotatedPath, consumer) + replayFile(path, consumer);
+        pendingRecords.set(replayed);
+        return replayed;
+    }
+
+    /**
+     * Replays only the rotated journal. Meant to be called by the snapshot writer during {@link #compact}.
+     */
+    public long replayRotated(Consumer<JournalRecord> consumer) throws IOException {
+        return replayFile(rotatedPath, consumer);
+    }
+
+    /**
+     * Rotates the journal and lets {@code snapshotWriter} fold the rotated records into a new snapshot.
+     * The writer must read the current snapshot from disk, apply {@link #replayRotated}, and replace
+     * the snapshot atomically. The rotated records are deleted only if the writer succeeds.
+     */
+    public void compact(SnapshotWriter snapshotWriter) throws IOException {
+        synchronized (compactionLock) {
+            long rotated = rotate();
+            snapshotWriter.writeSnapshot();
+            Files.deleteIfExists(rotatedPath);
+            pendingRecords.addAndGet(-rotated);
+            logger.info("Compacted " + rotated + " journal records from " + path);
+        }
+    }
+
+    private synchronized long rotate() throws IOException {
+        long rotated = pendingRecords.get();
+        channel.close();
+        if (Files.exists(rotatedPath)) {
+            // A previous compaction did not finish: keep its records and add ours behind them.
+            try (FileChannel target = openForAppend(rotatedPath); FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+                source.transferTo(0, source.size(), target);
+                target.force(true);
+            }
+            Files.delete(path);
+        } else {
+            Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = openForAppend(path);
+        return rotated;
+    }
+
+    private long replayFile(Path file, Consumer<JournalRecord> consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long replayed = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long size = in.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (position < size) {
+                header.clear();
+                if (readFully(in, header, position) < HEADER_BYTES) {
+                    break;
+                }
+                header.flip();
+                int length = header.getInt();
+                int crc = header.getInt();
+                if (length < 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(in, payload, position + HEADER_BYTES);
+                if (checksum(payload.array()) != crc) {
+                    break;
+                }
+                List<JournalRecord> records = JournalRecord.decodeAll(payload.array());
+                records.forEach(consumer);
+                replayed += records.size();
+                position += HEADER_BYTES + length;
+            }
+            if (position < size) {
+                logger.log(Level.WARNING, "Discarding torn journal tail in " + file + " at byte " + position);
+                in.truncate(position);
+                in.force(true);
+            }
+        }
+        return replayed;
+    }
+
+    private static int readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static FileChannel openForAppend(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static final class PendingFrame {
+        private final ByteBuffer frame;
+        private final int records;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingFrame(ByteBuffer frame, int records) {
+            this.frame = frame;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Sees committed frames, e.g. to ship them to replicas.
+     */
+    @FunctionalInterface
+    public interface CommitListener {
+        /**
+         * @param payload the frame's records, as {@link JournalRecord#decodeAll} reads them.
+         */
+        void committed(byte[] payload);
+    }
+
+    /**
+     * Writes a fresh snapshot during compaction.
+     */
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        void writeSnapshot() throws IOException;
+    }
+}
@@ -0,0 +1,149 @@
+package ticket.booking.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One entry of a {@link Journal}: a record type plus a few string fields.
+ * <p>
+ * Records describe the change, not the resulting state, so a booking costs a few dozen
+ * bytes on disk no matter how large the database is. Replaying a record must be idempotent:
+ * compaction can fold a record into the snapshot before it is removed from the journal.
+ */
+public final class JournalRecord {
+
+    public enum Type {
+        TRAIN_UPSERT,
+        SEAT_BOOKED,
+        SEAT_RELEASED,
+        USER_SIGNUP,
+        TICKET_CANCELLED,
+        PASSWORD_REHASHED,
+        TICKET_BOOKED,
+        INVENTORY_ARCHIVED,
+        WAITLIST_JOINED,
+        WAITLIST_LEFT
+    }
+
+    private static final int BATCH_MARKER = 0xFF; // never a type ordinal
+
+    private final Type type;
+    private final List<String> fields;
+
+    public JournalRecord(Type type, String... fields) {
+        if (type == null) {
+            throw new IllegalArgumentException("Record type cannot be null.");
+        }
+        this.type = type;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(fields)));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public String getField(int index) {
+        return fields.get(index);
+    }
+
+    public int getInt(int index) {
+        return Integer.parseInt(fields.get(index));
+    }
+
+    public long getHexLong(int index) {
+        return Long.parseUnsignedLong(fields.get(index), 16);
+    }
+
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type.ordinal());
+            out.writeShort(fields.size());
+            for (String field : fields) {
+                byte[] utf8 = field.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory write failed.", e); // ByteArrayOutputStream never throws
+        }
+    }
+
+    /**
+     * Encodes several records as one payload, so they share a checksum and are replayed all or none.
+     */
+    static byte[] encodeBatch(List<JournalRecord> records) {
+        if (records.size() == 1) {
+            return records.get(0).encode();
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * records.size());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(BATCH_MARKER);
+            out.writeInt(records.size());
+            for (JournalRecord record : records) {
+                byte[] payload = record.encode();
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory write failed.", e);
+        }
+    }
+
+    /**
+     * Decodes a payload written by {@link #encode()} or {@link #encodeBatch}.
+     */
+    public static List<JournalRecord> decodeAll(byte[] payload) throws IOException {
+        if (payload.length == 0 || (payload[0] & 0xFF) != BATCH_MARKER) {
+            return Collections.singletonList(decode(payload));
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+        int count = in.readInt();
+        List<JournalRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            records.add(decode(record));
+        }
+        return records;
+    }
+
+    static JournalRecord decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= Type.values().length) {
+            throw new IOException("Unknown journal record type: " + ordinal);
+        }
+        String[] fields = new String[in.readUnsignedShort()];
+        for (int i = 0; i < fields.length; i++) {
+            byte[] utf8 = new byte[in.readInt()];
+            in.readFully(utf8);
+            fields[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return new JournalRecord(Type.values()[ordinal], fields);
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "type=" + type +
+                ", fields=" + fields +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package ticket.booking.persistence;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Mutable list whose contents are loaded on first access. Used to defer decoding of large,
+ * rarely read parts of a record, such as a user's booked tickets.
+ */
+public class LazyList<T> extends AbstractList<T> {
+
+    private Supplier<List<T>> loader;
+    private List<T> delegate;
+
+    public LazyList(Supplier<List<T>> loader) {
+        this.loader = loader;
+    }
+
+    public synchronized boolean isLoaded() {
+        return delegate != null;
+    }
+
+    private synchronized List<T> delegate() {
+        if (delegate == null) {
+            delegate = new ArrayList<>(loader.get());
+            loader = null;
+        }
+        return delegate;
+    }
+
+    @Override
+    public T get(int index) {
+        return delegate().get(index);
+    }
+
+    @Override
+    public int size() {
+        return delegate().size();
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return delegate().set(index, element);
+    }
+
+    @Override
+    public void add(int index, T element) {
+        delegate().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        modCount++;
+        return delegate().remove(index);
+    }
+}
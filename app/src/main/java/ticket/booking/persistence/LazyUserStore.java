@@ -0,0 +1,280 @@
+package ticket.booking.persistence;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ticket.booking.entities.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read-only view of users.json that never holds the whole file in memory.
+ * <p>
+ * Opening the store streams the file once with a {@link JsonParser}, recording for each user only
+ * its id, name and the byte range of its JSON object; {@code tickets_booked} arrays are skipped
+ * token by token without being built, except for the ticket ids. A {@link User} is materialized
+ * from its byte range when it is looked up, and the most recently used users are kept in a bounded
+ * cache.
+ * <p>
+ * Users created or changed after the file was written are {@linkplain #put pinned} in memory
+ * on top of the file, so the store can serve a snapshot plus its journal. Once a compacted file
+ * has replaced the old one, {@link #reopen} indexes it and unpins the users it already holds.
+ */
+public class LazyUserStore implements Closeable {
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, User> hotUsers;
+    private final Map<String, User> pinnedUsers = new ConcurrentHashMap<>();
+    private final Map<String, Long> pinSequences = new HashMap<>(); // guarded by this
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock(); // reads of the file against reopen
+    private long pins; // guarded by this; counts calls to put
+    private volatile FileIndex index;
+
+    public LazyUserStore(Path path, ObjectMapper objectMapper, long maxCachedUsers) throws IOException {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        this.hotUsers = CacheBuilder.newBuilder().maximumSize(maxCachedUsers).build();
+        this.index = openIndex();
+    }
+
+    /**
+     * What the store knows of the file without reading users: one instance per file, replaced whole
+     * by {@link #reopen}.
+     */
+    private static final class FileIndex {
+        private final FileChannel channel;
+        private final Map<String, long[]> rangesById = new HashMap<>();
+        private final Map<String, List<String>> idsByName = new ConcurrentHashMap<>();
+        private final Map<String, String> ownersByTicketId = new HashMap<>();
+
+        private FileIndex(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private FileIndex openIndex() throws IOException {
+        FileIndex opened = new FileIndex(FileChannel.open(path, StandardOpenOption.READ));
+        if (Files.size(path) > 0) {
+            try {
+                buildIndex(opened);
+            } catch (IOException e) {
+                opened.channel.close();
+                throw e;
+            }
+        }
+        return opened;
+    }
+
+    private void buildIndex(FileIndex index) throws IOException {
+        Map<String, long[]> rangesById = index.rangesById;
+        Map<String, List<String>> idsByName = index.idsByName;
+        Map<String, String> ownersByTicketId = index.ownersByTicketId;
+        try (JsonParser parser = objectMapper.getFactory().createParser(path.toFile())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of users in " + path);
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                long start = parser.getTokenLocation().getByteOffset();
+                String userId = null;
+                String name = null;
+                List<String> ticketIds = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("user_id".equals(field) && value == JsonToken.VALUE_STRING) {
+                        userId = parser.getText();
+                    } else if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                        name = parser.getText();
+                    } else if ("tickets_booked".equals(field) && value == JsonToken.START_ARRAY) {
+                        readTicketIds(parser, ticketIds);
+                    } else {
+                        parser.skipChildren(); // tickets, with their embedded trains, are never built here
+                    }
+                }
+                long end = parser.getTokenLocation().getByteOffset() + 1;
+                if (userId == null) {
+                    continue;
+                }
+                rangesById.put(userId, new long[]{start, end - start});
+                for (String ticketId : ticketIds) {
+                    ownersByTicketId.put(ticketId, userId);
+                }
+                if (name != null) {
+                    idsByName.computeIfAbsent(name, n -> new CopyOnWriteArrayList<>()).add(userId);
+                }
+            }
+        }
+    }
+
+    private static void readTicketIds(JsonParser parser, List<String> ticketIds) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.VALUE_STRING && "ticket_id".equals(field)) {
+                    ticketIds.add(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of users in the file, not counting users pinned since.
+     */
+    public int size() {
+        return index.rangesById.size();
+    }
+
+    public Set<String> getUserIds() {
+        return Collections.unmodifiableSet(index.rangesById.keySet());
+    }
+
+    /**
+     * The user holding a ticket according to the file. The ticket may have been cancelled since.
+     */
+    public Optional<String> findTicketOwner(String ticketId) {
+        return Optional.ofNullable(index.ownersByTicketId.get(ticketId));
+    }
+
+    public boolean contains(String userId) {
+        return pinnedUsers.containsKey(userId) || index.rangesById.containsKey(userId);
+    }
+
+    /**
+     * Adds a new user, or keeps a changed user, in memory. Pinned users are not evicted until a
+     * {@link #reopen} finds them in the file.
+     */
+    public synchronized void put(User user) {
+        FileIndex current = index;
+        if (pinnedUsers.put(user.getUserId(), user) == null && !current.rangesById.containsKey(user.getUserId()) && user.getName() != null) {
+            current.idsByName.computeIfAbsent(user.getName(), n -> new CopyOnWriteArrayList<>()).add(user.getUserId());
+        }
+        pinSequences.put(user.getUserId(), ++pins);
+        hotUsers.invalidate(user.getUserId());
+    }
+
+    public int getPinnedUserCount() {
+        return pinnedUsers.size();
+    }
+
+    /**
+     * Marks the pins made so far. Take it before the journal is rotated for compaction, and pass it to
+     * {@link #reopen} once the compacted file is in place.
+     */
+    public synchronized long pinMark() {
+        return pins;
+    }
+
+    /**
+     * Indexes the file again after it was replaced, and unpins every user pinned up to {@code pinMark}:
+     * their changes were journaled before the journal was rotated, so the new file holds them. Users
+     * pinned later stay pinned.
+     */
+    public synchronized void reopen(long pinMark) throws IOException {
+        FileIndex reopened = openIndex();
+        FileIndex previous;
+        fileLock.writeLock().lock();
+        try {
+            previous = index;
+            index = reopened;
+            hotUsers.invalidateAll(); // byte ranges changed
+            pinSequences.entrySet().removeIf(pin -> {
+                if (pin.getValue() > pinMark) {
+                    return false;
+                }
+                pinnedUsers.remove(pin.getKey());
+                return true;
+            });
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        for (User pinned : pinnedUsers.values()) {
+            if (!reopened.rangesById.containsKey(pinned.getUserId()) && pinned.getName() != null) {
+                reopened.idsByName.computeIfAbsent(pinned.getName(), n -> new CopyOnWriteArrayList<>()).add(pinned.getUserId());
+            }
+        }
+        previous.channel.close();
+    }
+
+    public Optional<User> findById(String userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        User pinned = pinnedUsers.get(userId);
+        if (pinned != null) {
+            return Optional.of(pinned);
+        }
+        if (!index.rangesById.containsKey(userId)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(hotUsers.get(userId, () -> materialize(userId)));
+        } catch (ExecutionException e) {
+            throw new UncheckedIOException("Failed to read user " + userId, (IOException) e.getCause());
+        }
+    }
+
+    public List<User> findByName(String name) {
+        List<String> ids = index.idsByName.get(name);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<User> users = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            findById(id).ifPresent(users::add);
+        }
+        return users;
+    }
+
+    public long getCachedUserCount() {
+        return hotUsers.size();
+    }
+
+    private User materialize(String userId) throws IOException {
+        fileLock.readLock().lock();
+        try {
+            FileIndex current = index;
+            long[] range = current.rangesById.get(userId);
+            if (range == null) {
+                throw new IOException("User " + userId + " is no longer in " + path); // pinned again while reopening
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) range[1]);
+            while (buffer.hasRemaining()) {
+                if (current.channel.read(buffer, range[0] + buffer.position()) < 0) {
+                    throw new IOException("users file shrank while reading user " + userId);
+                }
+            }
+            return objectMapper.readValue(buffer.array(), User.class);
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.channel.close();
+    }
+}
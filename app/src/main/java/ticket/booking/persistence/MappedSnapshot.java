@@ -0,0 +1,111 @@
+package ticket.booking.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read side of the binary snapshot format described in {@link BinarySnapshotWriter}.
+ * <p>
+ * The file is memory-mapped in 1 GiB chunks, so opening it costs a header check and a few
+ * {@code mmap} calls regardless of its size; pages are faulted in only when a record is read.
+ * Subclasses expose records as views that decode their fields on access.
+ */
+abstract class MappedSnapshot implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int count;
+    private final long indexOffset;
+
+    MappedSnapshot(Path path, byte expectedKind) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        int chunkCount = (int) ((size + BinarySnapshotWriter.CHUNK_BYTES - 1) / BinarySnapshotWriter.CHUNK_BYTES);
+        this.chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long start = i * BinarySnapshotWriter.CHUNK_BYTES;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(BinarySnapshotWriter.CHUNK_BYTES, size - start));
+        }
+        if (size < BinarySnapshotWriter.HEADER_BYTES || getInt(0) != BinarySnapshotWriter.MAGIC) {
+            channel.close();
+            throw new IOException("Not a binary snapshot: " + path);
+        }
+        int version = getShort(4);
+        if (version != BinarySnapshotWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported binary snapshot version " + version + " in " + path);
+        }
+        if (chunks[0].get(6) != expectedKind) {
+            channel.close();
+            throw new IOException("Binary snapshot " + path + " holds a different kind of record.");
+        }
+        this.count = getInt(8);
+        this.indexOffset = getLong(16);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    long recordOffset(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+        }
+        return getLong(indexOffset + 8L * index);
+    }
+
+    final int getInt(long offset) {
+        return chunk(offset).getInt(position(offset));
+    }
+
+    final int getShort(long offset) {
+        return chunk(offset).getShort(position(offset)) & 0xFFFF;
+    }
+
+    final long getLong(long offset) {
+        return chunk(offset).getLong(position(offset));
+    }
+
+    /**
+     * Reads a length-prefixed string; returns null for the null marker.
+     */
+    final String getString(long offset) {
+        int length = getInt(offset);
+        return length < 0 ? null : new String(getBytes(offset + 4, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Offset just past the string at {@code offset}.
+     */
+    final long skipString(long offset) {
+        return offset + 4 + Math.max(0, getInt(offset));
+    }
+
+    final byte[] getBytes(long offset, int length) {
+        byte[] bytes = new byte[length];
+        MappedByteBuffer chunk = chunk(offset);
+        int position = position(offset);
+        for (int i = 0; i < length; i++) {
+            bytes[i] = chunk.get(position + i);
+        }
+        return bytes;
+    }
+
+    private MappedByteBuffer chunk(long offset) {
+        return chunks[(int) (offset / BinarySnapshotWriter.CHUNK_BYTES)];
+    }
+
+    private static int position(long offset) {
+        return (int) (offset % BinarySnapshotWriter.CHUNK_BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
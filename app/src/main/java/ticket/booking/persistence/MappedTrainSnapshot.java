@@ -0,0 +1,213 @@
+package ticket.booking.persistence;
+
+import ticket.booking.entities.CoachDetail;
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Memory-mapped binary train snapshot. Records are read through {@link TrainRecord} views that
+ * decode only the fields asked for; {@link #readAll()} materializes {@link Train} objects without
+ * going through Jackson, leaving each seat map in the mapped file until it is first asked for.
+ */
+public class MappedTrainSnapshot extends MappedSnapshot {
+
+    private Map<String, Integer> idIndex;
+
+    public MappedTrainSnapshot(Path path) throws IOException {
+        super(path, BinarySnapshotWriter.KIND_TRAINS);
+    }
+
+    public TrainRecord get(int index) {
+        return new TrainRecord(recordOffset(index));
+    }
+
+    /**
+     * Looks a train up by id. The first call builds an id index by decoding only the id of each record.
+     */
+    public synchronized Optional<TrainRecord> find(String trainId) {
+        if (idIndex == null) {
+            idIndex = new HashMap<>(size() * 2);
+            for (int i = 0; i < size(); i++) {
+                String id = get(i).getTrainId();
+                if (id != null) {
+                    idIndex.put(id.toLowerCase(), i);
+                }
+            }
+        }
+        Integer index = trainId == null ? null : idIndex.get(trainId.toLowerCase());
+        return index == null ? Optional.empty() : Optional.of(get(index));
+    }
+
+    /**
+     * Every train, with ids, stations and coach details decoded. The seat maps, the bulk of the file,
+     * are decoded per train on first access, which still works once this snapshot is closed: the
+     * mapping outlives the channel, and a newer snapshot is moved into place rather than written over it.
+     */
+    public List<Train> readAll() {
+        List<Train> trains = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            trains.add(new MappedTrain(get(i)));
+        }
+        return trains;
+    }
+
+    /**
+     * A train whose seat map is decoded from its record the first time it is read.
+     */
+    private static final class MappedTrain extends Train {
+
+        private volatile TrainRecord undecodedSeats; // null once the seat map is decoded or replaced
+
+        private MappedTrain(TrainRecord record) {
+            super(record.getTrainId(), record.getTrainNo(), null, record.getStationTimes(), record.getStations(),
+                    Train.daysOfOperation(record.getOperatingDayMask()), record.getCoachDetails());
+            this.undecodedSeats = record;
+        }
+
+        @Override
+        public SegmentSeatInventory getSeats() {
+            if (undecodedSeats != null) {
+                synchronized (this) {
+                    TrainRecord record = undecodedSeats;
+                    if (record != null) {
+                        super.setSeats(record.getSeats());
+                        undecodedSeats = null;
+                    }
+                }
+            }
+            return super.getSeats();
+        }
+
+        @Override
+        public synchronized void setSeats(SegmentSeatInventory seats) {
+            super.setSeats(seats);
+            undecodedSeats = null;
+        }
+    }
+
+    /**
+     * View of one train record; each accessor decodes straight from the mapped file.
+     */
+    public class TrainRecord {
+
+        private final long offset;
+
+        TrainRecord(long offset) {
+            this.offset = offset;
+        }
+
+        public int getRows() {
+            return getShort(offset + 4);
+        }
+
+        public int getSeatsPerRow() {
+            return getShort(offset + 6);
+        }
+
+        public int getStationCount() {
+            return getShort(offset + 8);
+        }
+
+        /**
+         * @see Train#operatingDayMask()
+         */
+        public int getOperatingDayMask() {
+            return getShort(offset + 10);
+        }
+
+        public String getTrainId() {
+            return getString(offset + BinarySnapshotWriter.TRAIN_FIXED_BYTES);
+        }
+
+        public String getTrainNo() {
+            return getString(skipString(offset + BinarySnapshotWriter.TRAIN_FIXED_BYTES));
+        }
+
+        public List<String> getStations() {
+            List<String> stations = new ArrayList<>(getStationCount());
+            long position = firstStation();
+            for (int i = 0; i < getStationCount(); i++) {
+                stations.add(getString(position));
+                position = skipString(skipString(position));
+            }
+            return stations;
+        }
+
+        public Map<String, String> getStationTimes() {
+            Map<String, String> times = new LinkedHashMap<>();
+            long position = firstStation();
+            for (int i = 0; i < getStationCount(); i++) {
+                long time = skipString(position);
+                String value = getString(time);
+                if (value != null) {
+                    times.put(getString(position), value);
+                }
+                position = skipString(time);
+            }
+            return times;
+        }
+
+        public long getLegMask(int row, int seat) {
+            if (row < 0 || row >= getRows() || seat < 0 || seat >= getSeatsPerRow()) {
+                throw new IllegalArgumentException("Invalid row or seat index.");
+            }
+            return getLong(seatsStart() + 8L * (row * getSeatsPerRow() + seat));
+        }
+
+        public SegmentSeatInventory getSeats() {
+            int rows = getRows();
+            int seatsPerRow = getSeatsPerRow();
+            SegmentSeatInventory seats = new SegmentSeatInventory(rows, seatsPerRow);
+            long position = seatsStart();
+            for (int row = 0; row < rows; row++) {
+                for (int seat = 0; seat < seatsPerRow; seat++, position += 8) {
+                    long mask = getLong(position);
+                    if (mask != 0) {
+                        seats.markBooked(row, seat, mask);
+                    }
+                }
+            }
+            return seats;
+        }
+
+        /**
+         * Null if the train lists none, as do records written before coach details were stored.
+         */
+        public List<CoachDetail> getCoachDetails() {
+            long end = offset + getInt(offset);
+            long position = seatsStart() + 8L * getRows() * getSeatsPerRow();
+            if (position >= end) {
+                return null;
+            }
+            List<CoachDetail> details = new ArrayList<>();
+            while (position < end) {
+                long coaches = skipString(position);
+                details.add(new CoachDetail(getString(position), getInt(coaches)));
+                position = coaches + 4;
+            }
+            return details;
+        }
+
+        public Train toTrain() {
+            return new Train(getTrainId(), getTrainNo(), getSeats(), getStationTimes(), getStations(),
+                    Train.daysOfOperation(getOperatingDayMask()), getCoachDetails());
+        }
+
+        private long firstStation() {
+            return skipString(skipString(offset + BinarySnapshotWriter.TRAIN_FIXED_BYTES));
+        }
+
+        private long seatsStart() {
+            return offset + getInt(offset + 12);
+        }
+    }
+}
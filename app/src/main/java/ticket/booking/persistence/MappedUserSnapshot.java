@@ -0,0 +1,80 @@
+package ticket.booking.persistence;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory-mapped binary user snapshot. Ids, names and hashes are small and decoded when a user
+ * is read; the ticket list, which dominates the record size, is decoded only when first touched.
+ */
+public class MappedUserSnapshot extends MappedSnapshot {
+
+    private static final TypeReference<List<Ticket>> TICKET_LIST = new TypeReference<List<Ticket>>() {};
+
+    private final ObjectMapper objectMapper;
+
+    public MappedUserSnapshot(Path path, ObjectMapper objectMapper) throws IOException {
+        super(path, BinarySnapshotWriter.KIND_USERS);
+        this.objectMapper = objectMapper;
+    }
+
+    public UserRecord get(int index) {
+        return new UserRecord(recordOffset(index));
+    }
+
+    /**
+     * Materializes every user. Ticket lists are left as {@link LazyList}s over the mapped file.
+     */
+    public List<User> readAll() {
+        List<User> users = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            users.add(get(i).toUser());
+        }
+        return users;
+    }
+
+    /**
+     * View of one user record; each accessor decodes straight from the mapped file.
+     */
+    public class UserRecord {
+
+        private final long offset;
+
+        UserRecord(long offset) {
+            this.offset = offset;
+        }
+
+        public String getUserId() {
+            return getString(offset + BinarySnapshotWriter.USER_FIXED_BYTES);
+        }
+
+        public String getName() {
+            return getString(skipString(offset + BinarySnapshotWriter.USER_FIXED_BYTES));
+        }
+
+        public String getHashedPassword() {
+            return getString(skipString(skipString(offset + BinarySnapshotWriter.USER_FIXED_BYTES)));
+        }
+
+        public List<Ticket> getTickets() {
+            long blob = offset + getInt(offset + 4);
+            try {
+                return objectMapper.readValue(getBytes(blob + 4, getInt(blob)), TICKET_LIST);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unreadable tickets for user " + getUserId(), e);
+            }
+        }
+
+        public User toUser() {
+            return new User(getName(), null, getHashedPassword(), new LazyList<>(this::getTickets), getUserId());
+        }
+    }
+}
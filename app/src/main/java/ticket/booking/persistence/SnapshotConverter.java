@@ -0,0 +1,52 @@
+package ticket.booking.persistence;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.util.JsonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Converts the JSON data files into binary snapshots.
+ * <pre>
+ * SnapshotConverter trains localDB/trains.json [localDB/trains.bin]
+ * SnapshotConverter users  localDb/users.json  [localDb/users.bin]
+ * </pre>
+ * Once a {@code .bin} file exists next to a JSON snapshot, the services load it instead and keep
+ * it up to date on every compaction.
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() {
+        // Command-line entry point only.
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("trains") || args[0].equals("users"))) {
+            System.err.println("Usage: SnapshotConverter trains|users <input.json> [output.bin]");
+            System.exit(2);
+            return;
+        }
+        ObjectMapper objectMapper = JsonUtil.newObjectMapper();
+        File input = new File(args[1]);
+        Path output = args.length > 2 ? Paths.get(args[2]) : BinarySnapshotWriter.binaryPathFor(args[1]);
+        long start = System.nanoTime();
+        int records;
+        if (args[0].equals("trains")) {
+            List<Train> trains = objectMapper.readValue(input, new TypeReference<List<Train>>() {});
+            BinarySnapshotWriter.writeTrains(trains, output);
+            records = trains.size();
+        } else {
+            List<User> users = objectMapper.readValue(input, new TypeReference<List<User>>() {});
+            BinarySnapshotWriter.writeUsers(objectMapper, users, output);
+            records = users.size();
+        }
+        System.out.printf("Wrote %d %s to %s in %d ms%n", records, args[0], output, (System.nanoTime() - start) / 1_000_000);
+    }
+}
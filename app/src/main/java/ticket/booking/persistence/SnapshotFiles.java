@@ -0,0 +1,42 @@
+package ticket.booking.persistence;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+public final class SnapshotFiles {
+
+    private SnapshotFiles() {
+        // Utility class.
+    }
+
+    /**
+     * True if a binary snapshot shadows the JSON snapshot and is at least as new, so it can be loaded instead.
+     */
+    public static boolean hasFreshBinarySnapshot(String snapshotPath) throws IOException {
+        Path binary = BinarySnapshotWriter.binaryPathFor(snapshotPath);
+        Path json = Paths.get(snapshotPath);
+        return Files.exists(binary)
+                && (!Files.exists(json) || Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(json)) >= 0);
+    }
+
+    /**
+     * Writes {@code value} as JSON to a temporary file and moves it over {@code snapshotPath}, so a crash
+     * mid-write leaves the previous snapshot intact instead of a half-written file.
+     */
+    public static void writeJsonAtomically(ObjectMapper objectMapper, String snapshotPath, Object value) throws IOException {
+        Path target = Paths.get(snapshotPath).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, value);
+            out.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,91 @@
+package ticket.booking.persistence;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Layout of a user store split into shards by a hash of the user id.
+ * <pre>
+ * users.json                      unsharded: one snapshot and users.journal
+ * users.shards/shard-0.json ...   sharded: one snapshot and journal per shard, shard-0 .. shard-(N-1)
+ * </pre>
+ * A store is sharded if its shard directory exists; the number of shard files is N. Each shard
+ * holds exactly the users whose id hashes to it, so a user's records and snapshot live in one shard.
+ */
+public final class UserShards {
+
+    private static final HashFunction HASH = Hashing.murmur3_32_fixed();
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)\\.json");
+
+    private UserShards() {
+        // Utility class.
+    }
+
+    /**
+     * Returns the shard directory of a user store, e.g. {@code users.json -> users.shards}.
+     */
+    public static Path directoryFor(String userFilePath) {
+        return Paths.get(userFilePath.replaceFirst("\\.json$", "") + ".shards");
+    }
+
+    public static Path shardPath(Path directory, int shard) {
+        return directory.resolve("shard-" + shard + ".json");
+    }
+
+    /**
+     * The snapshot files of a user store in shard order: the shards if it is sharded, else {@code userFilePath} alone.
+     *
+     * @throws IOException if shard files are missing from the directory.
+     */
+    public static List<String> snapshotPaths(String userFilePath) throws IOException {
+        Path directory = directoryFor(userFilePath);
+        if (!Files.isDirectory(directory)) {
+            return Collections.singletonList(userFilePath);
+        }
+        int shards = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "shard-*.json")) {
+            for (Path file : files) {
+                Matcher name = SHARD_FILE.matcher(file.getFileName().toString());
+                if (name.matches()) {
+                    shards = Math.max(shards, Integer.parseInt(name.group(1)) + 1);
+                    continue;
+                }
+                throw new IOException("Unexpected file in user shard directory: " + file);
+            }
+        }
+        List<String> paths = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            Path path = shardPath(directory, shard);
+            if (!Files.exists(path)) {
+                throw new IOException("User shard " + shard + " of " + shards + " is missing: " + path);
+            }
+            paths.add(path.toString());
+        }
+        if (paths.isEmpty()) {
+            throw new IOException("User shard directory has no shards: " + directory);
+        }
+        return paths;
+    }
+
+    /**
+     * The shard a user belongs to. Stable across processes and JVM versions.
+     */
+    public static int shardOf(String userId, int shards) {
+        if (shards == 1 || userId == null) {
+            return 0;
+        }
+        return Math.floorMod(HASH.hashString(userId, StandardCharsets.UTF_8).asInt(), shards);
+    }
+}
@@ -0,0 +1,48 @@
+package ticket.booking.planner;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A journey of one or more legs, changing trains between them.
+ */
+public final class Itinerary {
+
+    private final List<Leg> legs;
+
+    public Itinerary(List<Leg> legs) {
+        if (legs == null || legs.isEmpty()) {
+            throw new IllegalArgumentException("An itinerary needs at least one leg.");
+        }
+        this.legs = Collections.unmodifiableList(legs);
+    }
+
+    public List<Leg> getLegs() {
+        return legs;
+    }
+
+    public int getTransfers() {
+        return legs.size() - 1;
+    }
+
+    public int getDepartureMinute() {
+        return legs.get(0).getDepartureMinute();
+    }
+
+    public int getArrivalMinute() {
+        return legs.get(legs.size() - 1).getArrivalMinute();
+    }
+
+    public int getDurationMinutes() {
+        return getArrivalMinute() - getDepartureMinute();
+    }
+
+    @Override
+    public String toString() {
+        return "Itinerary{" +
+                "transfers=" + getTransfers() +
+                ", durationMinutes=" + getDurationMinutes() +
+                ", legs=" + legs +
+                '}';
+    }
+}
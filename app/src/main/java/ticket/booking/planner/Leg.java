@@ -0,0 +1,69 @@
+package ticket.booking.planner;
+
+import java.time.LocalTime;
+
+/**
+ * One ride on one train within an {@link Itinerary}.
+ * <p>
+ * Times are minutes after midnight of the day the journey was planned for, so a leg that runs past
+ * midnight has times of 1440 or more; {@link #getDepartureDay()} and {@link #getDepartureTime()}
+ * split them back into a day offset and a time of day.
+ */
+public final class Leg {
+
+    private final String trainId;
+    private final String fromStation;
+    private final String toStation;
+    private final int departureMinute;
+    private final int arrivalMinute;
+
+    public Leg(String trainId, String fromStation, String toStation, int departureMinute, int arrivalMinute) {
+        this.trainId = trainId;
+        this.fromStation = fromStation;
+        this.toStation = toStation;
+        this.departureMinute = departureMinute;
+        this.arrivalMinute = arrivalMinute;
+    }
+
+    public String getTrainId() {
+        return trainId;
+    }
+
+    public String getFromStation() {
+        return fromStation;
+    }
+
+    public String getToStation() {
+        return toStation;
+    }
+
+    public int getDepartureMinute() {
+        return departureMinute;
+    }
+
+    public int getArrivalMinute() {
+        return arrivalMinute;
+    }
+
+    public int getDepartureDay() {
+        return Math.floorDiv(departureMinute, Timetable.MINUTES_PER_DAY);
+    }
+
+    public LocalTime getDepartureTime() {
+        return LocalTime.ofSecondOfDay(Math.floorMod(departureMinute, Timetable.MINUTES_PER_DAY) * 60L);
+    }
+
+    public int getArrivalDay() {
+        return Math.floorDiv(arrivalMinute, Timetable.MINUTES_PER_DAY);
+    }
+
+    public LocalTime getArrivalTime() {
+        return LocalTime.ofSecondOfDay(Math.floorMod(arrivalMinute, Timetable.MINUTES_PER_DAY) * 60L);
+    }
+
+    @Override
+    public String toString() {
+        return trainId + " " + fromStation + " " + getDepartureTime() + " (+" + getDepartureDay() + "d) -> "
+                + toStation + " " + getArrivalTime() + " (+" + getArrivalDay() + "d)";
+    }
+}
@@ -0,0 +1,383 @@
+package ticket.booking.planner;
+
+import ticket.booking.entities.Train;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Connection-scan timetable built from every train's {@code stations} and {@code station_times}, for
+ * journeys that need one or more changes of train.
+ * <p>
+ * Each pair of consecutive timed stops of a train is a connection. All connections live in flat arrays
+ * sorted by time of day, so a query is one pass over them per day of its search window, starting at the
+ * requested departure time and stopping as soon as nothing later can improve the answer. Station times
+ * are times of day; a stop whose time is earlier than the previous one is taken to be on the next day.
+ * Every train is assumed to run daily.
+ * <p>
+ * Immutable. {@link #withTrain} returns a new timetable in which one train's connections have been
+ * replaced by merging into the sorted arrays, instead of re-parsing and re-sorting every train.
+ */
+public final class Timetable {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final Logger logger = Logger.getLogger(Timetable.class.getName());
+    private static final int SEARCH_DAYS = 2; // how far past the requested departure a journey may end
+    private static final int TRAIN = 0;
+    private static final int FROM = 1;
+    private static final int TO = 2;
+    private static final int DEPARTURE = 3; // minutes after midnight of the day the train starts its run
+    private static final int ARRIVAL = 4;
+
+    private static final int FIELDS = 5;
+    private static final Comparator<int[]> BY_TIME_OF_DAY = (a, b) -> compare(a, 0, b, 0);
+
+    private final List<String> trainIds;
+    private final Map<String, Integer> trainIndexes;
+    private final List<String> stationNames;
+    private final Map<String, Integer> stationIds;
+    private final int[] connections; // {train, from, to, departure, arrival} packed back to back, sorted by time of day
+    private final int maxDepartureDay; // latest day of its run on which any train leaves a stop
+
+    private Timetable(List<String> trainIds, Map<String, Integer> trainIndexes, List<String> stationNames,
+                      Map<String, Integer> stationIds, int[] connections) {
+        this.trainIds = trainIds;
+        this.trainIndexes = trainIndexes;
+        this.stationNames = stationNames;
+        this.stationIds = stationIds;
+        this.connections = connections;
+        int latest = 0;
+        for (int i = DEPARTURE; i < connections.length; i += FIELDS) {
+            latest = Math.max(latest, Math.floorDiv(connections[i], MINUTES_PER_DAY));
+        }
+        this.maxDepartureDay = latest;
+    }
+
+    public static Timetable of(List<Train> trains) {
+        List<String> trainIds = new ArrayList<>();
+        Map<String, Integer> trainIndexes = new HashMap<>();
+        List<String> stationNames = new ArrayList<>();
+        Map<String, Integer> stationIds = new HashMap<>();
+        List<int[]> connections = new ArrayList<>();
+        for (Train train : trains) {
+            if (train.getTrainId() == null || trainIndexes.containsKey(key(train.getTrainId()))) {
+                continue;
+            }
+            trainIndexes.put(key(train.getTrainId()), trainIds.size());
+            connections.addAll(connectionsOf(train, trainIds.size(), stationNames, stationIds));
+            trainIds.add(train.getTrainId());
+        }
+        connections.sort(BY_TIME_OF_DAY);
+        int[] packed = new int[connections.size() * FIELDS];
+        for (int i = 0; i < connections.size(); i++) {
+            System.arraycopy(connections.get(i), 0, packed, i * FIELDS, FIELDS);
+        }
+        return new Timetable(trainIds, trainIndexes, stationNames, stationIds, packed);
+    }
+
+    /**
+     * Returns a timetable in which {@code train} replaces the train with the same id, or is added.
+     */
+    public Timetable withTrain(Train train) {
+        if (train == null || train.getTrainId() == null) {
+            throw new IllegalArgumentException("Train and train ID cannot be null.");
+        }
+        List<String> newTrainIds = new ArrayList<>(trainIds);
+        Map<String, Integer> newTrainIndexes = new HashMap<>(trainIndexes);
+        Integer existing = trainIndexes.get(key(train.getTrainId()));
+        int index = existing == null ? newTrainIds.size() : existing;
+        if (existing == null) {
+            newTrainIds.add(train.getTrainId());
+            newTrainIndexes.put(key(train.getTrainId()), index);
+        }
+        List<String> newStationNames = new ArrayList<>(stationNames);
+        Map<String, Integer> newStationIds = new HashMap<>(stationIds);
+        List<int[]> added = connectionsOf(train, index, newStationNames, newStationIds);
+        added.sort(BY_TIME_OF_DAY);
+
+        int[] merged = new int[connections.length + added.size() * FIELDS];
+        int size = 0;
+        int next = 0;
+        for (int offset = 0; offset < connections.length; offset += FIELDS) {
+            if (existing != null && connections[offset + TRAIN] == index) {
+                continue; // the old run of this train
+            }
+            while (next < added.size() && compare(added.get(next), 0, connections, offset) < 0) {
+                System.arraycopy(added.get(next++), 0, merged, size, FIELDS);
+                size += FIELDS;
+            }
+            System.arraycopy(connections, offset, merged, size, FIELDS);
+            size += FIELDS;
+        }
+        while (next < added.size()) {
+            System.arraycopy(added.get(next++), 0, merged, size, FIELDS);
+            size += FIELDS;
+        }
+        int[] sorted = size == merged.length ? merged : Arrays.copyOf(merged, size);
+        return new Timetable(newTrainIds, newTrainIndexes, newStationNames, newStationIds, sorted);
+    }
+
+    public int getConnectionCount() {
+        return connections.length / FIELDS;
+    }
+
+    /**
+     * Finds up to {@code limit} journeys from {@code source} to {@code destination} leaving within 24 hours
+     * of {@code departAfter}, ordered by arrival time and then by number of changes.
+     * <p>
+     * Every station keeps the {@code limit} best arrivals for each number of trains taken, so the
+     * fastest journey is always found and the others are the best the scan came across. A journey that
+     * is no better than one already listed on departure, arrival or changes is left out.
+     *
+     * @param maxTransfers         most changes of train allowed; 0 means direct trains only.
+     * @param minConnectionMinutes least time between arriving on one train and leaving on the next.
+     */
+    public List<Itinerary> plan(String source, String destination, LocalTime departAfter, int maxTransfers,
+                                int minConnectionMinutes, int limit) {
+        if (source == null || destination == null || departAfter == null) {
+            throw new IllegalArgumentException("Source, destination and departure time cannot be null.");
+        }
+        if (maxTransfers < 0 || minConnectionMinutes < 0 || limit < 1) {
+            throw new IllegalArgumentException("Transfers and connection time cannot be negative, and the limit must be positive.");
+        }
+        Integer origin = stationIds.get(source.toLowerCase());
+        Integer target = stationIds.get(destination.toLowerCase());
+        if (origin == null || target == null || origin.equals(target) || connections.length == 0) {
+            return Collections.emptyList();
+        }
+        int start = departAfter.toSecondOfDay() / 60;
+        List<List<Label>> labels = new ArrayList<>(Collections.nCopies(stationNames.size(), null)); // by station
+        labels.set(origin, new ArrayList<>(Collections.singletonList(new Label(null, origin, start, 0))));
+        int tripDays = maxDepartureDay + SEARCH_DAYS + 1; // a train's runs that can be met in the search window
+        List<List<Boarding>> trips = new ArrayList<>(Collections.nCopies(trainIds.size() * tripDays, null));
+        int maxBoardings = limit * (maxTransfers + 1);
+        int lastDeparture = start + MINUTES_PER_DAY; // tomorrow's runs of the same trains are not alternatives
+        int cutoff = start + SEARCH_DAYS * MINUTES_PER_DAY;
+
+        scan:
+        for (int day = 0; ; day++) {
+            for (int offset = day == 0 ? firstAtOrAfter(start) * FIELDS : 0; offset < connections.length; offset += FIELDS) {
+                int train = connections[offset + TRAIN];
+                int from = connections[offset + FROM];
+                int to = connections[offset + TO];
+                int tripDay = day - Math.floorDiv(connections[offset + DEPARTURE], MINUTES_PER_DAY);
+                int dayStart = tripDay * MINUTES_PER_DAY;
+                int departure = dayStart + connections[offset + DEPARTURE];
+                if (departure > cutoff) {
+                    break scan;
+                }
+                int trip = train * tripDays + tripDay + maxDepartureDay;
+                List<Boarding> onBoard = trips.get(trip);
+                List<Label> waiting = labels.get(from);
+                if (waiting != null) {
+                    for (Label label : waiting) {
+                        int ready = label.boarding == null ? label.arrival : label.arrival + minConnectionMinutes;
+                        if (label.trains > maxTransfers || ready > departure || label.rides(train, tripDay)
+                                || (label.boarding == null && departure >= lastDeparture)) {
+                            continue;
+                        }
+                        if (onBoard == null) {
+                            onBoard = new ArrayList<>();
+                            trips.set(trip, onBoard);
+                        }
+                        if (onBoard.size() < maxBoardings && !boarded(onBoard, label)) {
+                            onBoard.add(new Boarding(label, train, tripDay, from, departure));
+                        }
+                    }
+                }
+                if (onBoard == null || to == origin) {
+                    continue;
+                }
+                int arrival = dayStart + connections[offset + ARRIVAL];
+                for (Boarding boarding : onBoard) {
+                    insert(labels, new Label(boarding, to, arrival, boarding.from.trains + 1), limit);
+                }
+                List<Label> arrived = labels.get(target);
+                if (to == target && arrived.size() >= limit) {
+                    cutoff = Math.min(cutoff, arrived.get(limit - 1).arrival); // nothing departing later can make the top k
+                }
+            }
+        }
+
+        List<Label> arrived = labels.get(target);
+        if (arrived == null) {
+            return Collections.emptyList();
+        }
+        List<Itinerary> itineraries = new ArrayList<>(Math.min(limit, arrived.size()));
+        for (Label label : arrived) {
+            Itinerary candidate = itineraryOf(label);
+            if (itineraries.stream().noneMatch(better -> dominates(better, candidate))) {
+                itineraries.add(candidate);
+                if (itineraries.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return itineraries;
+    }
+
+    /**
+     * True if {@code better} leaves no earlier, arrives no later and changes no more often, e.g. the same
+     * trains as {@code other} without waiting overnight for tomorrow's connection.
+     */
+    private static boolean dominates(Itinerary better, Itinerary other) {
+        return better.getDepartureMinute() >= other.getDepartureMinute() && better.getArrivalMinute() <= other.getArrivalMinute()
+                && better.getTransfers() <= other.getTransfers();
+    }
+
+    private Itinerary itineraryOf(Label label) {
+        List<Leg> legs = new ArrayList<>();
+        for (Label at = label; at.boarding != null; at = at.boarding.from) {
+            Boarding boarding = at.boarding;
+            legs.add(0, new Leg(trainIds.get(boarding.train), stationNames.get(boarding.station), stationNames.get(at.station),
+                    boarding.departure, at.arrival));
+        }
+        return new Itinerary(legs);
+    }
+
+    /**
+     * Adds a label unless the station already has {@code limit} labels that arrive no later with no more trains.
+     */
+    private static void insert(List<List<Label>> labels, Label label, int limit) {
+        List<Label> at = labels.get(label.station);
+        if (at == null) {
+            at = new ArrayList<>();
+            labels.set(label.station, at);
+        }
+        int dominating = 0;
+        for (Label other : at) {
+            if (other.arrival <= label.arrival && other.trains <= label.trains && ++dominating >= limit) {
+                return;
+            }
+        }
+        int position = at.size();
+        while (position > 0 && (at.get(position - 1).arrival > label.arrival
+                || (at.get(position - 1).arrival == label.arrival && at.get(position - 1).trains > label.trains))) {
+            position--;
+        }
+        at.add(position, label);
+    }
+
+    private static boolean boarded(List<Boarding> onBoard, Label label) {
+        for (Boarding boarding : onBoard) {
+            if (boarding.from == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int firstAtOrAfter(int minuteOfDay) {
+        int low = 0;
+        int high = connections.length / FIELDS;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Math.floorMod(connections[middle * FIELDS + DEPARTURE], MINUTES_PER_DAY) < minuteOfDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int compare(int[] a, int aOffset, int[] b, int bOffset) {
+        int byTimeOfDay = Integer.compare(Math.floorMod(a[aOffset + DEPARTURE], MINUTES_PER_DAY),
+                Math.floorMod(b[bOffset + DEPARTURE], MINUTES_PER_DAY));
+        return byTimeOfDay != 0 ? byTimeOfDay : Integer.compare(a[aOffset + DEPARTURE], b[bOffset + DEPARTURE]);
+    }
+
+    private static List<int[]> connectionsOf(Train train, int trainIndex, List<String> stationNames, Map<String, Integer> stationIds) {
+        List<int[]> connections = new ArrayList<>();
+        List<String> stations = train.getStations();
+        Map<String, String> times = train.getStationTimes();
+        if (stations == null || times == null) {
+            return connections;
+        }
+        int previousStation = -1;
+        int previousMinute = -1;
+        int previousClock = -1;
+        int dayOffset = 0;
+        for (String station : stations) {
+            String time = times.get(station);
+            if (time == null) {
+                continue; // no time for this stop; ride through it
+            }
+            int clock;
+            try {
+                clock = LocalTime.parse(time).toSecondOfDay() / 60;
+            } catch (DateTimeParseException e) {
+                logger.warning("Skipping train " + train.getTrainId() + " in journey planning: bad time " + time + " at " + station);
+                return Collections.emptyList();
+            }
+            if (clock < previousClock) {
+                dayOffset += MINUTES_PER_DAY; // past midnight
+            }
+            int minute = dayOffset + clock;
+            int stationId = stationIds.computeIfAbsent(station, s -> {
+                stationNames.add(s);
+                return stationNames.size() - 1;
+            });
+            if (previousStation >= 0 && stationId != previousStation) {
+                connections.add(new int[]{trainIndex, previousStation, stationId, previousMinute, minute});
+            }
+            previousStation = stationId;
+            previousMinute = minute;
+            previousClock = clock;
+        }
+        return connections;
+    }
+
+    private static String key(String trainId) {
+        return trainId.toLowerCase();
+    }
+
+    /**
+     * Being at a station at some time, having taken some number of trains to get there.
+     */
+    private static final class Label {
+        private final Boarding boarding; // null at the origin
+        private final int station;
+        private final int arrival;
+        private final int trains;
+
+        private Label(Boarding boarding, int station, int arrival, int trains) {
+            this.boarding = boarding;
+            this.station = station;
+            this.arrival = arrival;
+            this.trains = trains;
+        }
+
+        private boolean rides(int train, int tripDay) {
+            return boarding != null && boarding.train == train && boarding.tripDay == tripDay;
+        }
+    }
+
+    /**
+     * Getting on one day's run of a train, coming from a label.
+     */
+    private static final class Boarding {
+        private final Label from;
+        private final int train;
+        private final int tripDay;
+        private final int station;
+        private final int departure;
+
+        private Boarding(Label from, int train, int tripDay, int station, int departure) {
+            this.from = from;
+            this.train = train;
+            this.tripDay = tripDay;
+            this.station = station;
+            this.departure = departure;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package ticket.booking.replication;
+
+import ticket.booking.metrics.Metrics;
+import ticket.booking.persistence.JournalRecord;
+import ticket.booking.service.TrainService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a {@link TrainService#replica replica} in step with a {@link ReplicationPrimary}: it loads the
+ * snapshot the primary sends, if any, then applies each journal frame in sequence order.
+ * <p>
+ * The connection is retried with a growing delay whenever it drops, and the primary is asked for the
+ * frames after the last one applied, so a follower that was away briefly only catches up on the tail.
+ * A primary that says nothing for {@value #READ_TIMEOUT_MILLIS} ms, heartbeats included, is taken to be gone.
+ * <p>
+ * Lag is reported as frames the primary has committed but this follower has not applied, and as the time
+ * since the follower last knew itself to be caught up. The second keeps growing while the primary is
+ * unreachable, so it bounds how stale the replica's answers may be.
+ */
+public final class ReplicationFollower implements AutoCloseable {
+
+    static final int READ_TIMEOUT_MILLIS = 3000;
+
+    private static final Logger logger = Logger.getLogger(ReplicationFollower.class.getName());
+    private static final long MIN_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5000;
+
+    private final InetSocketAddress primary;
+    private final TrainService replica;
+    private final Thread thread;
+    private String epoch = ""; // only touched by the replication thread
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long caughtUpAt;
+    private volatile boolean connected;
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    private ReplicationFollower(InetSocketAddress primary, TrainService replica) {
+        this.primary = primary;
+        this.replica = replica;
+        this.caughtUpAt = System.currentTimeMillis();
+        this.thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts following {@code primary} on a background thread.
+     *
+     * @param replica a service made with {@link TrainService#replica}.
+     */
+    public static ReplicationFollower start(InetSocketAddress primary, TrainService replica) {
+        ReplicationFollower follower = new ReplicationFollower(primary, replica);
+        follower.thread.start();
+        Metrics.shared().gauge("replication.appliedSequence", follower::getAppliedSequence);
+        Metrics.shared().gauge("replication.lagFrames", follower::getLagFrames);
+        Metrics.shared().gauge("replication.lagMillis", follower::getLagMillis);
+        return follower;
+    }
+
+    public TrainService getReplica() {
+        return replica;
+    }
+
+    /**
+     * Sequence number of the last frame applied, in the numbering of the primary's current epoch.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public long getLagFrames() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    public long getLagMillis() {
+        return Math.max(0, System.currentTimeMillis() - caughtUpAt);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Waits until frame {@code sequence} of the primary's current epoch has been applied, e.g. to read a
+     * change just made on the primary after taking its {@link ReplicationPrimary#getHeadSequence()}.
+     *
+     * @return false if that did not happen in time.
+     */
+    public boolean awaitSequence(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!connected || appliedSequence < sequence) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void run() {
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (!closed) {
+            try {
+                follow();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                if (connected) {
+                    retryMillis = MIN_RETRY_MILLIS; // it was up; try again soon
+                }
+                logger.info("Replication from " + primary + " interrupted (" + e.getMessage() + "); retrying in " + retryMillis + " ms.");
+            } finally {
+                setConnected(false);
+            }
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    private void follow() throws IOException {
+        try (Socket connection = new Socket()) {
+            socket = connection;
+            if (closed) {
+                return;
+            }
+            connection.connect(primary, READ_TIMEOUT_MILLIS);
+            connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            out.writeUTF(epoch);
+            out.writeLong(appliedSequence);
+            out.flush();
+            while (!closed) {
+                byte type = in.readByte();
+                switch (type) {
+                    case ReplicationPrimary.SNAPSHOT:
+                        String snapshotEpoch = in.readUTF();
+                        long sequence = in.readLong();
+                        replica.loadReplicaSnapshot(readBytes(in));
+                        epoch = snapshotEpoch;
+                        primarySequence = sequence;
+                        applied(sequence);
+                        logger.info("Loaded a replica snapshot at sequence " + sequence + " from " + primary);
+                        break;
+                    case ReplicationPrimary.FRAME:
+                        long frame = in.readLong();
+                        byte[] payload = readBytes(in);
+                        if (frame != appliedSequence + 1) {
+                            throw new IOException("Expected frame " + (appliedSequence + 1) + " but got " + frame + ".");
+                        }
+                        replica.applyReplicated(JournalRecord.decodeAll(payload));
+                        primarySequence = Math.max(primarySequence, frame);
+                        applied(frame);
+                        break;
+                    case ReplicationPrimary.HEARTBEAT:
+                        primarySequence = in.readLong();
+                        applied(appliedSequence);
+                        break;
+                    default:
+                        throw new IOException("Unknown replication message type " + type + ".");
+                }
+                setConnected(true);
+            }
+        } finally {
+            socket = null;
+        }
+    }
+
+    private synchronized void applied(long sequence) {
+        appliedSequence = sequence;
+        if (sequence >= primarySequence) {
+            caughtUpAt = System.currentTimeMillis();
+        }
+        notifyAll();
+    }
+
+    private synchronized void setConnected(boolean connected) {
+        this.connected = connected;
+        notifyAll();
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Bad replication message length " + length + ".");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,248 @@
+package ticket.booking.replication;
+
+import ticket.booking.metrics.Metrics;
+import ticket.booking.persistence.Journal;
+import ticket.booking.service.TrainService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the train journal to {@link ReplicationFollower}s over TCP, so other processes can serve searches
+ * and availability from their own copy of the trains.
+ * <p>
+ * Every frame the journal commits gets the next sequence number and is kept in a ring of the last
+ * {@code retainedFrames} frames. A follower says which sequence number it has applied and under which
+ * epoch; the epoch is new each time a primary starts, since numbering starts again. If the frames after
+ * it are still retained the follower gets just those, otherwise it gets a snapshot of the trains first.
+ * Each follower is served by its own virtual thread, and an idle connection carries a heartbeat with the
+ * latest sequence number every {@value #HEARTBEAT_MILLIS} ms.
+ * <pre>
+ * follower -&gt; primary  epoch (UTF), applied sequence (long)
+ * primary  -&gt; follower SNAPSHOT epoch (UTF), sequence (long), length (int), JSON
+ *                     FRAME sequence (long), length (int), journal frame payload
+ *                     HEARTBEAT latest sequence (long)
+ * </pre>
+ */
+public final class ReplicationPrimary implements AutoCloseable {
+
+    public static final int DEFAULT_RETAINED_FRAMES = 100_000;
+
+    static final byte SNAPSHOT = 1;
+    static final byte FRAME = 2;
+    static final byte HEARTBEAT = 3;
+    static final long HEARTBEAT_MILLIS = 100;
+
+    private static final Logger logger = Logger.getLogger(ReplicationPrimary.class.getName());
+    private static final int MAX_FRAMES_PER_WRITE = 1024;
+
+    private final TrainService trains;
+    private final String epoch = UUID.randomUUID().toString();
+    private final Frame[] retained; // frame with sequence s at s % length; guarded by this
+    private long headSequence; // guarded by this
+    private final Journal.CommitListener listener = this::committed;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final LongAdder snapshotsSent = Metrics.shared().counter("replication.snapshotsSent");
+    private volatile boolean closed;
+
+    private ReplicationPrimary(InetSocketAddress address, TrainService trains, int retainedFrames) throws IOException {
+        if (retainedFrames < 1) {
+            throw new IllegalArgumentException("At least one frame must be retained.");
+        }
+        this.trains = trains;
+        this.retained = new Frame[retainedFrames];
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+    }
+
+    /**
+     * Starts accepting followers on {@code address}; port 0 picks a free port (see {@link #getPort()}).
+     * Followers are not authenticated and receive every train and booking, so {@code address} should be
+     * a loopback or otherwise trusted interface.
+     */
+    public static ReplicationPrimary start(InetSocketAddress address, TrainService trains, int retainedFrames) throws IOException {
+        ReplicationPrimary primary = new ReplicationPrimary(address, trains, retainedFrames);
+        trains.addCommitListener(primary.listener);
+        primary.executor.submit(primary::acceptLoop);
+        Metrics.shared().gauge("replication.headSequence", primary::getHeadSequence);
+        Metrics.shared().gauge("replication.followers", primary.followers::size);
+        logger.info("Replication primary listening on " + primary.serverSocket.getLocalSocketAddress());
+        return primary;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized long getHeadSequence() {
+        return headSequence;
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        trains.removeCommitListener(listener);
+        serverSocket.close();
+        disconnectFollowers();
+        executor.shutdown();
+    }
+
+    /**
+     * Drops every follower connection; the followers reconnect and catch up.
+     */
+    void disconnectFollowers() throws IOException {
+        for (Socket follower : followers) {
+            follower.close();
+        }
+    }
+
+    /**
+     * Runs on the journal's writer thread, so it only files the frame away.
+     */
+    private synchronized void committed(byte[] payload) {
+        headSequence++;
+        retained[(int) (headSequence % retained.length)] = new Frame(headSequence, payload);
+        notifyAll();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket follower = serverSocket.accept();
+                followers.add(follower);
+                executor.submit(() -> serve(follower));
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.log(Level.WARNING, "Failed to accept a replication follower: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket follower) {
+        String name = String.valueOf(follower.getRemoteSocketAddress());
+        try (Socket socket = follower;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            String followerEpoch = in.readUTF();
+            long next = in.readLong() + 1;
+            if (!epoch.equals(followerEpoch) || !retains(next)) {
+                next = sendSnapshot(out) + 1;
+            }
+            logger.info("Replication follower " + name + " streaming from sequence " + next);
+            while (!closed) {
+                List<Frame> frames = awaitFrames(next);
+                if (frames == null) {
+                    logger.info("Replication follower " + name + " fell behind the retained frames; sending a snapshot.");
+                    next = sendSnapshot(out) + 1;
+                    continue;
+                }
+                for (Frame frame : frames) {
+                    out.writeByte(FRAME);
+                    out.writeLong(frame.sequence);
+                    out.writeInt(frame.payload.length);
+                    out.write(frame.payload);
+                    next = frame.sequence + 1;
+                }
+                if (frames.isEmpty()) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(getHeadSequence());
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            logger.info("Replication follower " + name + " disconnected: " + e.getMessage());
+        } catch (IOException e) {
+            if (!closed) {
+                logger.log(Level.WARNING, "Failed to stream to replication follower " + name + ": " + e.getMessage(), e);
+            }
+        } finally {
+            followers.remove(follower);
+        }
+    }
+
+    /**
+     * Takes the sequence number before the snapshot: the snapshot may already hold some of the later
+     * frames, and since records set state, applying them again leaves the follower where the primary is.
+     *
+     * @return the sequence number the follower has applied once it has loaded the snapshot.
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        long sequence = getHeadSequence();
+        byte[] snapshot = trains.writeReplicaSnapshot();
+        out.writeByte(SNAPSHOT);
+        out.writeUTF(epoch);
+        out.writeLong(sequence);
+        out.writeInt(snapshot.length);
+        out.write(snapshot);
+        out.flush();
+        snapshotsSent.increment();
+        return sequence;
+    }
+
+    private synchronized boolean retains(long next) {
+        return next > headSequence - retained.length && next <= headSequence + 1;
+    }
+
+    /**
+     * Waits up to a heartbeat interval for frames from {@code next} on.
+     *
+     * @return the frames, empty if none came, or null if some have already left the ring.
+     */
+    private synchronized List<Frame> awaitFrames(long next) throws IOException {
+        if (next > headSequence) {
+            try {
+                wait(HEARTBEAT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for journal frames.", e);
+            }
+        }
+        if (next > headSequence) {
+            return Collections.emptyList();
+        }
+        if (!retains(next)) {
+            return null;
+        }
+        List<Frame> frames = new ArrayList<>((int) Math.min(headSequence - next + 1, MAX_FRAMES_PER_WRITE));
+        for (long sequence = next; sequence <= headSequence && frames.size() < MAX_FRAMES_PER_WRITE; sequence++) {
+            frames.add(retained[(int) (sequence % retained.length)]);
+        }
+        return frames;
+    }
+
+    private static final class Frame {
+        private final long sequence;
+        private final byte[] payload;
+
+        private Frame(long sequence, byte[] payload) {
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ticket.booking.server;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Blocking client for {@link BookingServer}. Holds the session token of the last successful login.
+ * <p>
+ * Trains come back without their seat inventory; ask {@link #fetchSeats} for the seat map.
+ */
+public class BookingClient {
+
+    private final URI baseUri;
+    private final ObjectMapper objectMapper;
+    private final HttpClient http;
+    private String token;
+
+    public BookingClient(URI baseUri, ObjectMapper objectMapper) {
+        this.baseUri = baseUri;
+        this.objectMapper = objectMapper;
+        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    }
+
+    public boolean signUp(String name, String password) throws IOException {
+        return send("POST", "/signup", credentials(name, password)).statusCode() == 201;
+    }
+
+    public boolean login(String name, String password) throws IOException {
+        HttpResponse<byte[]> response = send("POST", "/login", credentials(name, password));
+        if (response.statusCode() != 200) {
+            return false;
+        }
+        token = objectMapper.readTree(response.body()).get("token").asText();
+        return true;
+    }
+
+    public void logout() throws IOException {
+        send("POST", "/logout", null);
+        token = null;
+    }
+
+    public boolean isLoggedIn() {
+        return token != null;
+    }
+
+    public List<Train> searchTrains(String source, String destination) throws IOException {
+        return searchTrains(source, destination, null);
+    }
+
+    /**
+     * @param date only trains running that day; null for all.
+     */
+    public List<Train> searchTrains(String source, String destination, LocalDate date) throws IOException {
+        String query = "/trains?source=" + encode(source) + "&destination=" + encode(destination)
+                + (date == null ? "" : "&date=" + date);
+        HttpResponse<byte[]> response = expect(200, send("GET", query, null));
+        return objectMapper.readValue(response.body(), new TypeReference<List<Train>>() {});
+    }
+
+    public List<List<Integer>> fetchSeats(String trainId) throws IOException {
+        return fetchSeats(trainId, null);
+    }
+
+    public List<List<Integer>> fetchSeats(String trainId, LocalDate date) throws IOException {
+        String path = "/trains/" + encode(trainId) + "/seats" + (date == null ? "" : "?date=" + date);
+        HttpResponse<byte[]> response = expect(200, send("GET", path, null));
+        return objectMapper.readValue(response.body(), new TypeReference<List<List<Integer>>>() {});
+    }
+
+    /**
+     * @return the ticket, or empty if the seat is taken.
+     */
+    public Optional<Ticket> book(String trainId, String source, String destination, int row, int seat) throws IOException {
+        return book(trainId, null, source, destination, row, seat);
+    }
+
+    /**
+     * Books a seat on the train leaving on {@code dateOfTravel}, or on its undated seat map if that is null.
+     *
+     * @return the ticket, or empty if the seat is taken.
+     */
+    public Optional<Ticket> book(String trainId, LocalDate dateOfTravel, String source, String destination, int row, int seat)
+            throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("train_id", trainId);
+        body.put("source", source);
+        body.put("destination", destination);
+        body.put("row", row);
+        body.put("seat", seat);
+        if (dateOfTravel != null) {
+            body.put("date_of_travel", dateOfTravel.toString());
+        }
+        HttpResponse<byte[]> response = send("POST", "/bookings", body);
+        if (response.statusCode() == 409) {
+            return Optional.empty();
+        }
+        return Optional.of(objectMapper.readValue(expect(201, response).body(), Ticket.class));
+    }
+
+    public List<Ticket> fetchBookings() throws IOException {
+        HttpResponse<byte[]> response = expect(200, send("GET", "/bookings", null));
+        return objectMapper.readValue(response.body(), new TypeReference<List<Ticket>>() {});
+    }
+
+    public boolean cancelBooking(String ticketId) throws IOException {
+        return send("DELETE", "/bookings/" + encode(ticketId), null).statusCode() == 204;
+    }
+
+    /**
+     * Status of any ticket by id; needs no login.
+     */
+    public Optional<Ticket> findTicket(String ticketId) throws IOException {
+        HttpResponse<byte[]> response = send("GET", "/tickets/" + encode(ticketId), null);
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        return Optional.of(objectMapper.readValue(expect(200, response).body(), Ticket.class));
+    }
+
+    /**
+     * Queues for a seat on a full train without coach details.
+     *
+     * @return the waitlist entry id, which becomes the ticket id if a seat is freed.
+     */
+    public String joinWaitlist(String trainId, LocalDate dateOfTravel, String source, String destination) throws IOException {
+        return joinWaitlist(trainId, dateOfTravel, source, destination, null);
+    }
+
+    /**
+     * Queues for a seat in a full coach type of a train.
+     */
+    public String joinWaitlist(String trainId, LocalDate dateOfTravel, String source, String destination, String coachType) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("train_id", trainId);
+        body.put("source", source);
+        body.put("destination", destination);
+        if (coachType != null) {
+            body.put("coach_type", coachType);
+        }
+        if (dateOfTravel != null) {
+            body.put("date_of_travel", dateOfTravel.toString());
+        }
+        HttpResponse<byte[]> response = expect(201, send("POST", "/waitlist", body));
+        return objectMapper.readTree(response.body()).get("entry_id").asText();
+    }
+
+    public boolean leaveWaitlist(String entryId) throws IOException {
+        return send("DELETE", "/waitlist/" + encode(entryId), null).statusCode() == 204;
+    }
+
+    private ObjectNode credentials(String name, String password) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("name", name);
+        body.put("password", password);
+        return body;
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, JsonNode body) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path)).timeout(Duration.ofSeconds(30));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        if (body == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/json");
+            request.method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+        }
+        try {
+            return http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the booking server.");
+        }
+    }
+
+    private HttpResponse<byte[]> expect(int status, HttpResponse<byte[]> response) throws IOException {
+        if (response.statusCode() != status) {
+            JsonNode error = response.body().length == 0 ? null : objectMapper.readTree(response.body()).get("error");
+            throw new IOException("Booking server answered " + response.statusCode() + (error == null ? "" : ": " + error.asText()));
+        }
+        return response;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,508 @@
+package ticket.booking.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.metrics.OperationTimer;
+import ticket.booking.service.AdmissionRejectedException;
+import ticket.booking.service.BookingAdmission;
+import ticket.booking.service.SeatAvailability;
+import ticket.booking.service.TrainSearchResult;
+import ticket.booking.service.TrainService;
+import ticket.booking.service.UserBookingService;
+import ticket.booking.service.WaitlistEntry;
+import ticket.booking.util.PasswordHasher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local HTTP/JSON front end for the booking services, so many clients can be served at once.
+ * <p>
+ * Connections are multiplexed by the server's selector thread and every request runs on its own
+ * virtual thread, so a request parked on BCrypt or a journal fsync holds no platform thread. At most
+ * {@code maxInFlight} requests are processed at a time; the rest are answered {@code 503} straight
+ * away instead of queueing.
+ * <p>
+ * Bodies are snake_case JSON. Calls made for a user carry the login token as
+ * {@code Authorization: Bearer <token>}.
+ * <pre>
+ * POST   /signup                   {"name", "password"}                               201 {"user_id"}
+ * POST   /login                    {"name", "password"}                               200 {"token"} or 401
+ * POST   /logout                                                                      204
+ * GET    /trains?source=&amp;destination=[&amp;date=]                                        200 [train with
+ *                                                                                         "free_seats_by_leg",
+ *                                                                                         "free_seats_by_coach_type"]
+ * GET    /trains/{trainId}/seats[?date=]                                              200 [[0 or 1]]
+ * GET    /trains/{trainId}/availability[?date=]                                       200 {"capacity",
+ *                                                                                         "unbooked_seats",
+ *                                                                                         "free_seats_by_leg"}
+ * GET    /bookings                                                                    200 [ticket]
+ * POST   /bookings                 {"train_id", "source", "destination", "row", "seat",
+ *                                   "date_of_travel"}                                 201 ticket or 409
+ * DELETE /bookings/{ticketId}                                                         204 or 404
+ * GET    /tickets/{ticketId}                                                          200 ticket or 404
+ * POST   /waitlist                 {"train_id", "source", "destination",
+ *                                   "date_of_travel", "coach_type"}                   201 {"entry_id", "position"}
+ * DELETE /waitlist/{entryId}                                                          204 or 404
+ * </pre>
+ * Dates are ISO {@code yyyy-MM-dd}. Without one, searches ignore days of operation and bookings use the
+ * train's undated seat map.
+ * <p>
+ * Bookings can be put behind a {@link BookingAdmission}: a booking it turns away is answered {@code 429} if
+ * the user went over their own rate and {@code 503} if the service is overloaded, both with a
+ * {@code Retry-After} in seconds.
+ * <p>
+ * A server started with {@link #startReadOnly} over a replica serves only the {@code /trains} routes and
+ * answers {@code 501} to the rest.
+ */
+public class BookingServer implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    private static final Logger logger = Logger.getLogger(BookingServer.class.getName());
+    private static final OperationTimer REQUEST_TIMER = Metrics.shared().timer("server.requests");
+    private static final LongAdder SHED_REQUESTS = Metrics.shared().counter("server.shed");
+
+    private final UserBookingService users;
+    private final TrainService trains;
+    private final BookingAdmission admission; // null to admit every booking
+    private final PasswordHasher hasher;
+    private final ObjectMapper objectMapper;
+    private final Semaphore inFlight;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private BookingServer(InetSocketAddress address, int maxInFlight, UserBookingService users, TrainService trains,
+                          BookingAdmission admission, PasswordHasher hasher, ObjectMapper objectMapper) throws IOException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed in flight.");
+        }
+        this.users = users;
+        this.trains = trains;
+        this.admission = admission;
+        this.hasher = hasher;
+        this.objectMapper = objectMapper;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        Metrics.shared().gauge("server.inFlight", () -> maxInFlight - inFlight.availablePermits());
+    }
+
+    /**
+     * Starts serving on {@code address}; port 0 picks a free port (see {@link #getPort()}).
+     *
+     * @param users  long-lived service whose session views act for the logged-in callers.
+     * @param hasher pool that hashes sign-up passwords.
+     */
+    public static BookingServer start(InetSocketAddress address, int maxInFlight, UserBookingService users, TrainService trains,
+                                      PasswordHasher hasher, ObjectMapper objectMapper) throws IOException {
+        return start(address, maxInFlight, users, trains, null, hasher, objectMapper);
+    }
+
+    /**
+     * Like {@link #start(InetSocketAddress, int, UserBookingService, TrainService, PasswordHasher, ObjectMapper)},
+     * admitting bookings through {@code admission}.
+     */
+    public static BookingServer start(InetSocketAddress address, int maxInFlight, UserBookingService users, TrainService trains,
+                                      BookingAdmission admission, PasswordHasher hasher, ObjectMapper objectMapper) throws IOException {
+        BookingServer bookingServer = new BookingServer(address, maxInFlight, users, trains, admission, hasher, objectMapper);
+        bookingServer.server.start();
+        logger.info("Booking server listening on " + bookingServer.server.getAddress());
+        return bookingServer;
+    }
+
+    /**
+     * Starts serving searches and availability only, e.g. from a {@link TrainService#replica replica}.
+     */
+    public static BookingServer startReadOnly(InetSocketAddress address, int maxInFlight, TrainService trains,
+                                              ObjectMapper objectMapper) throws IOException {
+        return start(address, maxInFlight, null, trains, null, null, objectMapper);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!inFlight.tryAcquire()) {
+            SHED_REQUESTS.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, error("Server is busy; retry shortly."));
+            return;
+        }
+        long started = REQUEST_TIMER.start();
+        int status = 500;
+        try {
+            Response response = route(exchange);
+            status = response.status;
+            send(exchange, response.status, response.body);
+        } catch (HttpError e) {
+            status = e.status;
+            send(exchange, e.status, error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            send(exchange, 400, error(e.getMessage()));
+        } catch (AdmissionRejectedException e) {
+            status = e.isUserLimited() ? 429 : 503;
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf((e.getRetryAfterMillis() + 999) / 1000));
+            send(exchange, status, error(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            status = 503;
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, error(e.getMessage()));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e.getMessage(), e);
+            send(exchange, 500, error("Internal error."));
+        } finally {
+            inFlight.release();
+            REQUEST_TIMER.stop(started, status < 500);
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+        if (users == null && !"trains".equals(path[0])) {
+            throw new HttpError(501, "This server is a read-only replica; send this to the primary.");
+        }
+        switch (path[0]) {
+            case "signup":
+                requireMethod(method, "POST");
+                return signUp(readBody(exchange));
+            case "login":
+                requireMethod(method, "POST");
+                return login(readBody(exchange));
+            case "logout":
+                requireMethod(method, "POST");
+                bearerToken(exchange).flatMap(users::forSession).ifPresent(UserBookingService::logout);
+                return new Response(204, null);
+            case "trains":
+                requireMethod(method, "GET");
+                if (path.length == 1) {
+                    return searchTrains(queryParameters(exchange));
+                }
+                if (path.length == 3 && "seats".equals(path[2])) {
+                    SeatAvailability availability = trains.getAvailability(train(path[1]), date(queryParameters(exchange).get("date")));
+                    return new Response(200, objectMapper.valueToTree(availability.getSeatMap()));
+                }
+                if (path.length == 3 && "availability".equals(path[2])) {
+                    return availability(trains.getAvailability(train(path[1]), date(queryParameters(exchange).get("date"))));
+                }
+                break;
+            case "bookings":
+                UserBookingService session = session(exchange);
+                if (path.length == 1 && "GET".equals(method)) {
+                    return new Response(200, objectMapper.valueToTree(session.getBookings()));
+                }
+                if (path.length == 1 && "POST".equals(method)) {
+                    return book(session, readBody(exchange));
+                }
+                if (path.length == 2 && "DELETE".equals(method)) {
+                    if (!session.cancelBooking(path[1])) {
+                        throw new HttpError(404, "No ticket " + path[1] + " for this user.");
+                    }
+                    return new Response(204, null);
+                }
+                throw new HttpError(405, "Method not allowed.");
+            case "tickets":
+                requireMethod(method, "GET");
+                if (path.length == 2) {
+                    Ticket ticket = users.findTicket(path[1]).orElseThrow(() -> new HttpError(404, "No ticket " + path[1] + "."));
+                    return new Response(200, objectMapper.valueToTree(ticket));
+                }
+                break;
+            case "waitlist":
+                UserBookingService waiting = session(exchange);
+                if (path.length == 1 && "POST".equals(method)) {
+                    return joinWaitlist(waiting, readBody(exchange));
+                }
+                if (path.length == 2 && "DELETE".equals(method)) {
+                    if (!waiting.leaveWaitlist(path[1])) {
+                        throw new HttpError(404, "No waitlist entry " + path[1] + " for this user.");
+                    }
+                    return new Response(204, null);
+                }
+                throw new HttpError(405, "Method not allowed.");
+            default:
+                break;
+        }
+        throw new HttpError(404, "No such resource.");
+    }
+
+    private Response signUp(JsonNode body) throws IOException {
+        String password = requiredText(body, "password");
+        String hash;
+        try {
+            hash = hasher.hash(password, PasswordHasher.Priority.INTERACTIVE).join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to hash password.", e.getCause());
+        }
+        String userId = UUID.randomUUID().toString();
+        users.signUp(new User(requiredText(body, "name"), null, hash, new ArrayList<>(), userId));
+        ObjectNode created = objectMapper.createObjectNode();
+        created.put("user_id", userId);
+        return new Response(201, created);
+    }
+
+    private Response login(JsonNode body) {
+        Optional<String> token = users.login(requiredText(body, "name"), requiredText(body, "password"));
+        if (!token.isPresent()) {
+            throw new HttpError(401, "Unknown user or wrong password.");
+        }
+        ObjectNode session = objectMapper.createObjectNode();
+        session.put("token", token.get());
+        return new Response(200, session);
+    }
+
+    private Response searchTrains(Map<String, String> query) {
+        String source = query.get("source");
+        String destination = query.get("destination");
+        List<TrainSearchResult> found;
+        try {
+            found = trains.searchTrainsWithAvailability(source, destination, date(query.get("date")));
+        } catch (IOException e) {
+            found = Collections.emptyList(); // searchTrains reports "no match" as an IOException
+        }
+        ArrayNode summaries = objectMapper.createArrayNode();
+        for (TrainSearchResult result : found) {
+            Train train = result.getTrain();
+            ObjectNode summary = summaries.addObject(); // no seat inventory: /seats has it
+            summary.put("train_id", train.getTrainId());
+            summary.put("train_no", train.getTrainNo());
+            summary.set("stations", objectMapper.valueToTree(train.getStations()));
+            summary.set("station_times", objectMapper.valueToTree(train.getStationTimes()));
+            summary.set("days_of_operation", objectMapper.valueToTree(train.getDaysOfOperation()));
+            ArrayNode byLeg = summary.putArray("free_seats_by_leg"); // legs of the journey searched for
+            for (int leg = 0; leg < result.getLegCount(); leg++) {
+                byLeg.add(result.getFreeSeats(leg));
+            }
+            summary.set("coach_details", objectMapper.valueToTree(train.getCoachDetails()));
+            ObjectNode byCoachType = summary.putObject("free_seats_by_coach_type"); // type -> free seats by leg
+            for (String coachType : result.getCoachTypes()) {
+                ArrayNode typeByLeg = byCoachType.putArray(coachType);
+                for (int leg = 0; leg < result.getLegCount(); leg++) {
+                    typeByLeg.add(result.getFreeSeats(coachType, leg));
+                }
+            }
+        }
+        return new Response(200, summaries);
+    }
+
+    private Response book(UserBookingService session, JsonNode body) throws IOException {
+        Train train = train(requiredText(body, "train_id"));
+        JsonNode row = body.get("row");
+        JsonNode seat = body.get("seat");
+        if (row == null || !row.canConvertToInt() || seat == null || !seat.canConvertToInt()) {
+            throw new IllegalArgumentException("Row and seat must be integers.");
+        }
+        List<String> stations = train.getStations();
+        String source = body.hasNonNull("source") ? body.get("source").asText() : stations.get(0);
+        String destination = body.hasNonNull("destination") ? body.get("destination").asText() : stations.get(stations.size() - 1);
+        LocalDate date = date(body.hasNonNull("date_of_travel") ? body.get("date_of_travel").asText() : null);
+        Optional<Ticket> ticket;
+        BookingAdmission.Permit permit = admit(session, train);
+        try {
+            ticket = session.bookTicket(train, date, source, destination, row.asInt(), seat.asInt());
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+        }
+        if (!ticket.isPresent()) {
+            throw new HttpError(409, "Seat is already booked on part of that journey.");
+        }
+        return new Response(201, objectMapper.valueToTree(ticket.get()));
+    }
+
+    private BookingAdmission.Permit admit(UserBookingService session, Train train) throws IOException {
+        if (admission == null) {
+            return null;
+        }
+        try {
+            return admission.admit(session.getUserId(), train.getTrainId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a turn to book.");
+        }
+    }
+
+    private Response availability(SeatAvailability availability) {
+        ObjectNode summary = objectMapper.createObjectNode();
+        summary.put("train_id", availability.getTrainId());
+        summary.put("date", availability.getDate() == null ? null : availability.getDate().toString());
+        summary.put("capacity", availability.getCapacity());
+        summary.put("unbooked_seats", availability.getUnbookedSeats());
+        ArrayNode byLeg = summary.putArray("free_seats_by_leg");
+        for (int leg = 0; leg < availability.getLegCount(); leg++) {
+            byLeg.add(availability.getFreeSeats(leg));
+        }
+        return new Response(200, summary);
+    }
+
+    private Response joinWaitlist(UserBookingService session, JsonNode body) throws IOException {
+        Train train = train(requiredText(body, "train_id"));
+        LocalDate date = date(body.hasNonNull("date_of_travel") ? body.get("date_of_travel").asText() : null);
+        String coachType = body.hasNonNull("coach_type") ? body.get("coach_type").asText() : null;
+        Optional<WaitlistEntry> entry = session.joinWaitlist(train, date, requiredText(body, "source"), requiredText(body, "destination"), coachType);
+        if (!entry.isPresent()) {
+            throw new HttpError(401, "Log in again.");
+        }
+        ObjectNode created = objectMapper.createObjectNode();
+        created.put("entry_id", entry.get().getEntryId());
+        created.put("position", trains.getWaitlist(train, date, entry.get().getCoachType()).indexOf(entry.get()) + 1); // 0 if already promoted
+        return new Response(201, created);
+    }
+
+    private static LocalDate date(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Dates must look like 2024-01-31, not " + value + ".", e);
+        }
+    }
+
+    private Train train(String trainId) {
+        return trains.getTrain(trainId).orElseThrow(() -> new HttpError(404, "No train " + trainId + "."));
+    }
+
+    private UserBookingService session(HttpExchange exchange) {
+        return bearerToken(exchange).flatMap(users::forSession)
+                .orElseThrow(() -> new HttpError(401, "Log in and send the token as a Bearer authorization."));
+    }
+
+    private static Optional<String> bearerToken(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return Optional.empty();
+        }
+        return Optional.of(authorization.substring("Bearer ".length()).trim());
+    }
+
+    private JsonNode readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            JsonNode body = objectMapper.readTree(in);
+            if (body == null || !body.isObject()) {
+                throw new IllegalArgumentException("Request body must be a JSON object.");
+            }
+            return body;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Request body is not valid JSON.", e);
+        }
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String requiredText(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        if (value == null || !value.isTextual() || value.asText().isEmpty()) {
+            throw new IllegalArgumentException("Field " + field + " is required.");
+        }
+        return value.asText();
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!expected.equals(method)) {
+            throw new HttpError(405, "Use " + expected + ".");
+        }
+    }
+
+    private JsonNode error(String message) {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("error", message);
+        return error;
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        try {
+            if (body == null) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            byte[] bytes = objectMapper.writeValueAsBytes(body);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final JsonNode body;
+
+        private Response(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
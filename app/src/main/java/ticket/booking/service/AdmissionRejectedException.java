@@ -0,0 +1,32 @@
+package ticket.booking.service;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown by {@link BookingAdmission} when a booking is turned away rather than queued, with a hint of
+ * when trying again is likely to succeed.
+ */
+public class AdmissionRejectedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean userLimited;
+    private final long retryAfterMillis;
+
+    AdmissionRejectedException(String message, boolean userLimited, long retryAfterMillis) {
+        super(message);
+        this.userLimited = userLimited;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * True if the caller went over its own rate, false if the service as a whole is overloaded.
+     */
+    public boolean isUserLimited() {
+        return userLimited;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
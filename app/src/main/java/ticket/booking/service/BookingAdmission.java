@@ -0,0 +1,217 @@
+package ticket.booking.service;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.metrics.OperationTimer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for bookings, for the rush when a booking window opens.
+ * <p>
+ * A booking is let through in three steps, and turned away with an {@link AdmissionRejectedException} at
+ * the first one that fails, so a rejected caller learns straight away:
+ * <ol>
+ * <li>the user's own token bucket, so no single user takes more than their share;</li>
+ * <li>the global token bucket, which caps bookings per second for the whole service;</li>
+ * <li>the train's queue: at most {@code concurrentPerTrain} bookings run on a train at a time, and up to
+ * {@code queuedPerTrain} more wait for a turn in arrival order for at most {@code maxWait}.</li>
+ * </ol>
+ * Each train has its own queue, so a rush on one train does not hold up bookings on the others, and since
+ * queues are short and waits bounded, the bookings that are admitted finish in predictable time however
+ * many more are turned away.
+ * <pre>
+ * try (BookingAdmission.Permit permit = admission.admit(session.getUserId(), train.getTrainId())) {
+ *     session.bookTicket(...);
+ * }
+ * </pre>
+ */
+public final class BookingAdmission {
+
+    private static final OperationTimer WAIT_TIMER = Metrics.shared().timer("admission.wait");
+    private static final LongAdder USER_REJECTIONS = Metrics.shared().counter("admission.rejected.user");
+    private static final LongAdder GLOBAL_REJECTIONS = Metrics.shared().counter("admission.rejected.global");
+    private static final LongAdder QUEUE_REJECTIONS = Metrics.shared().counter("admission.rejected.queue");
+    private static final int MAX_TRACKED_USERS = 1_000_000;
+
+    private final double userPermitsPerSecond;
+    private final int userBurst;
+    private final TokenBucket global;
+    private final int concurrentPerTrain;
+    private final int queuedPerTrain;
+    private final long maxWaitNanos;
+    private final Ticker ticker;
+    private final Cache<String, TokenBucket> userBuckets;
+    private final ConcurrentMap<String, TrainQueue> trainQueues = new ConcurrentHashMap<>();
+
+    public BookingAdmission(double userPermitsPerSecond, int userBurst, double globalPermitsPerSecond, int globalBurst,
+                            int concurrentPerTrain, int queuedPerTrain, long maxWait, TimeUnit unit) {
+        this(userPermitsPerSecond, userBurst, globalPermitsPerSecond, globalBurst, concurrentPerTrain, queuedPerTrain,
+                maxWait, unit, Ticker.systemTicker());
+    }
+
+    BookingAdmission(double userPermitsPerSecond, int userBurst, double globalPermitsPerSecond, int globalBurst,
+                     int concurrentPerTrain, int queuedPerTrain, long maxWait, TimeUnit unit, Ticker ticker) {
+        if (userPermitsPerSecond <= 0 || userBurst < 1) {
+            throw new IllegalArgumentException("Users need a positive booking rate and a burst of at least one.");
+        }
+        if (concurrentPerTrain < 1 || queuedPerTrain < 0) {
+            throw new IllegalArgumentException("Each train needs at least one booking at a time and a queue of zero or more.");
+        }
+        this.userPermitsPerSecond = userPermitsPerSecond;
+        this.userBurst = userBurst;
+        this.global = new TokenBucket(globalPermitsPerSecond, globalBurst, ticker);
+        this.concurrentPerTrain = concurrentPerTrain;
+        this.queuedPerTrain = queuedPerTrain;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.ticker = ticker;
+        // a bucket left alone this long is full again, so forgetting it changes nothing
+        long refillNanos = (long) Math.ceil(userBurst / userPermitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        this.userBuckets = CacheBuilder.newBuilder().maximumSize(MAX_TRACKED_USERS)
+                .expireAfterAccess(refillNanos, TimeUnit.NANOSECONDS).ticker(ticker).build();
+        Metrics.shared().gauge("admission.queued", this::getQueuedTotal);
+        Metrics.shared().gaugeFamily("admission.queueDepth", this::queueDepths);
+    }
+
+    /**
+     * Waits for a turn to book on a train, for at most the configured wait.
+     *
+     * @param userId   the user booking; null to skip the per-user limit.
+     * @param trainId  the train booked on.
+     * @return a permit to close once the booking is done.
+     * @throws AdmissionRejectedException if the booking may not go ahead now.
+     */
+    public Permit admit(String userId, String trainId) throws InterruptedException {
+        if (userId != null) {
+            long userWait = userBucket(userId).tryAcquire();
+            if (userWait > 0) {
+                USER_REJECTIONS.increment();
+                throw new AdmissionRejectedException("Too many bookings from this user; slow down.", true, millis(userWait));
+            }
+        }
+        long globalWait = global.tryAcquire();
+        if (globalWait > 0) {
+            GLOBAL_REJECTIONS.increment();
+            throw new AdmissionRejectedException("Bookings are at capacity; retry shortly.", false, millis(globalWait));
+        }
+        String trainKey = StationIndex.key(trainId);
+        TrainQueue queue = trainQueues.computeIfAbsent(trainKey, key -> new TrainQueue(concurrentPerTrain));
+        if (queue.waiting.incrementAndGet() > queuedPerTrain + queue.turns.availablePermits()) {
+            queue.waiting.decrementAndGet();
+            QUEUE_REJECTIONS.increment();
+            throw new AdmissionRejectedException("Too many bookings waiting for train " + trainKey + "; retry shortly.", false,
+                    millis(queue.estimatedWaitNanos(concurrentPerTrain)));
+        }
+        long started = WAIT_TIMER.start();
+        boolean admitted = false;
+        try {
+            admitted = queue.turns.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            queue.waiting.decrementAndGet();
+            WAIT_TIMER.stop(started, admitted);
+        }
+        if (!admitted) {
+            QUEUE_REJECTIONS.increment();
+            throw new AdmissionRejectedException("Timed out waiting to book on train " + trainKey + "; retry shortly.", false,
+                    millis(queue.estimatedWaitNanos(concurrentPerTrain)));
+        }
+        return new Permit(queue, ticker.read());
+    }
+
+    /**
+     * Bookings waiting for a turn, over all trains.
+     */
+    public long getQueuedTotal() {
+        long queued = 0;
+        for (TrainQueue queue : trainQueues.values()) {
+            queued += queue.waiting.get();
+        }
+        return queued;
+    }
+
+    public int getQueued(String trainId) {
+        TrainQueue queue = trainQueues.get(StationIndex.key(trainId));
+        return queue == null ? 0 : queue.waiting.get();
+    }
+
+    private Map<String, Long> queueDepths() {
+        Map<String, Long> depths = new LinkedHashMap<>();
+        trainQueues.forEach((trainKey, queue) -> {
+            int waiting = queue.waiting.get();
+            if (waiting > 0) {
+                depths.put(trainKey, (long) waiting);
+            }
+        });
+        return depths;
+    }
+
+    private TokenBucket userBucket(String userId) {
+        try {
+            return userBuckets.get(userId, () -> new TokenBucket(userPermitsPerSecond, userBurst, ticker));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to create a token bucket for user " + userId + ".", e.getCause());
+        }
+    }
+
+    private static long millis(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * A turn to book on a train; closing it lets the next booking in line go.
+     */
+    public final class Permit implements AutoCloseable {
+        private final TrainQueue queue;
+        private final long admittedAt;
+        private boolean closed;
+
+        private Permit(TrainQueue queue, long admittedAt) {
+            this.queue = queue;
+            this.admittedAt = admittedAt;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                queue.served(ticker.read() - admittedAt);
+                queue.turns.release();
+            }
+        }
+    }
+
+    private static final class TrainQueue {
+        private final Semaphore turns; // fair: waiters get their turn in arrival order
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong averageServiceNanos = new AtomicLong();
+
+        private TrainQueue(int concurrent) {
+            this.turns = new Semaphore(concurrent, true);
+        }
+
+        /**
+         * Keeps a moving average of how long a booking holds its turn, weighting the latest by 1/8.
+         */
+        private void served(long nanos) {
+            averageServiceNanos.accumulateAndGet(nanos, (average, latest) -> average == 0 ? latest : average + (latest - average) / 8);
+        }
+
+        /**
+         * Roughly how long until the bookings waiting now have all had their turn.
+         */
+        private long estimatedWaitNanos(int concurrent) {
+            return averageServiceNanos.get() * (waiting.get() + 1) / concurrent;
+        }
+    }
+}
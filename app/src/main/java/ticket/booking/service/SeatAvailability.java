@@ -0,0 +1,101 @@
+package ticket.booking.service;
+
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a train has left to sell on a date: the seat map and free seats per leg. Summaries are
+ * immutable and cached by {@link TrainService#getAvailability}; building one walks every seat for the
+ * map, while {@link TrainService#searchTrainsWithAvailability} gives the counts alone without that walk.
+ */
+public final class SeatAvailability {
+
+    private final String trainId;
+    private final LocalDate date;
+    private final int capacity;
+    private final int unbookedSeats;
+    private final int[] freeSeatsByLeg;
+    private final List<List<Integer>> seatMap;
+
+    private SeatAvailability(String trainId, LocalDate date, int capacity, int unbookedSeats, int[] freeSeatsByLeg,
+                             List<List<Integer>> seatMap) {
+        this.trainId = trainId;
+        this.date = date;
+        this.capacity = capacity;
+        this.unbookedSeats = unbookedSeats;
+        this.freeSeatsByLeg = freeSeatsByLeg;
+        this.seatMap = seatMap;
+    }
+
+    /**
+     * @param seats the seat map of {@code train} on {@code date}.
+     */
+    static SeatAvailability of(Train train, LocalDate date, SegmentSeatInventory seats) {
+        int stations = train.getStations() == null ? 0 : train.getStations().size();
+        int[] freeByLeg = new int[Math.max(0, Math.min(stations - 1, SegmentSeatInventory.MAX_LEGS))];
+        for (int leg = 0; leg < freeByLeg.length; leg++) {
+            freeByLeg[leg] = seats.freeSeatsOnLeg(leg);
+        }
+        List<List<Integer>> rows = new ArrayList<>(seats.getRows());
+        for (List<Integer> row : seats.toMatrix()) {
+            rows.add(Collections.unmodifiableList(row));
+        }
+        return new SeatAvailability(train.getTrainId(), date, seats.getCapacity(), seats.freeCount(), freeByLeg,
+                Collections.unmodifiableList(rows));
+    }
+
+    public String getTrainId() {
+        return trainId;
+    }
+
+    /**
+     * Null for the train's undated seat map.
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Seats with no booking on any leg.
+     */
+    public int getUnbookedSeats() {
+        return unbookedSeats;
+    }
+
+    /**
+     * Free seats on the leg from station {@code leg} to station {@code leg + 1}.
+     */
+    public int getFreeSeats(int leg) {
+        return freeSeatsByLeg[leg];
+    }
+
+    public int getLegCount() {
+        return freeSeatsByLeg.length;
+    }
+
+    /**
+     * 1 for a seat booked on any leg, 0 for a free one, as {@link SegmentSeatInventory#toMatrix()}.
+     */
+    public List<List<Integer>> getSeatMap() {
+        return seatMap;
+    }
+
+    @Override
+    public String toString() {
+        return "SeatAvailability{" +
+                "trainId='" + trainId + '\'' +
+                ", date=" + date +
+                ", capacity=" + capacity +
+                ", unbookedSeats=" + unbookedSeats +
+                '}';
+    }
+}
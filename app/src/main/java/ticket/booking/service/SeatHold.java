@@ -0,0 +1,74 @@
+package ticket.booking.service;
+
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.time.LocalDate;
+
+/**
+ * One seat, and the legs of it, to book or release as part of a multi-seat operation.
+ */
+public final class SeatHold {
+
+    private final Train train;
+    private final LocalDate date;
+    private final int row;
+    private final int seat;
+    private final long legs;
+
+    public SeatHold(Train train, int row, int seat, long legs) {
+        this(train, null, row, seat, legs);
+    }
+
+    /**
+     * @param date date the train leaves its first station, or null for the train's undated seat map.
+     */
+    public SeatHold(Train train, LocalDate date, int row, int seat, long legs) {
+        if (train == null) {
+            throw new IllegalArgumentException("Train object cannot be null.");
+        }
+        this.train = train;
+        this.date = date;
+        this.row = row;
+        this.seat = seat;
+        this.legs = legs;
+    }
+
+    /**
+     * Holds the seat for the whole run.
+     */
+    public SeatHold(Train train, int row, int seat) {
+        this(train, row, seat, SegmentSeatInventory.ALL_LEGS);
+    }
+
+    public Train getTrain() {
+        return train;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
+    public long getLegs() {
+        return legs;
+    }
+
+    @Override
+    public String toString() {
+        return "SeatHold{" +
+                "trainId='" + train.getTrainId() + '\'' +
+                ", date=" + date +
+                ", row=" + row +
+                ", seat=" + seat +
+                ", legs=" + Long.toHexString(legs) +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+package ticket.booking.service;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out opaque session tokens once a password has been verified, so that later calls from the
+ * same user are authorised with a map lookup instead of another BCrypt check.
+ * <p>
+ * Sessions expire a fixed time after login. Expired tokens are dropped when they are next presented
+ * and by {@link #purgeExpired()}.
+ */
+public class SessionManager {
+
+    private static final int TOKEN_BYTES = 24;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final Duration timeToLive;
+    private final Clock clock;
+
+    public SessionManager(Duration timeToLive) {
+        this(timeToLive, Clock.systemUTC());
+    }
+
+    public SessionManager(Duration timeToLive, Clock clock) {
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Session time to live must be positive.");
+        }
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens a session for a user whose password has just been verified.
+     */
+    public String open(String userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("User ID cannot be null.");
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(userId, clock.millis() + timeToLive.toMillis()));
+        return token;
+    }
+
+    /**
+     * Returns the user a token was issued to, or empty if the token is unknown or has expired.
+     */
+    public Optional<String> resolve(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (session.expiresAt <= clock.millis()) {
+            sessions.remove(token, session);
+            return Optional.empty();
+        }
+        return Optional.of(session.userId);
+    }
+
+    public void close(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Drops every expired session and returns how many were dropped.
+     */
+    public int purgeExpired() {
+        long now = clock.millis();
+        int before = sessions.size();
+        sessions.values().removeIf(session -> session.expiresAt <= now);
+        return before - sessions.size();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private static final class Session {
+        private final String userId;
+        private final long expiresAt;
+
+        private Session(String userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ticket.booking.service;
+
+import ticket.booking.entities.Train;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from station name to the trains that stop there.
+ * <p>
+ * Each station keeps a posting list of {@code trainId -> stop index}. A search between two
+ * stations walks the shorter of the two posting lists and probes the other, so it costs
+ * O(min(trains at source, trains at destination)) instead of a scan over every train.
+ * Not thread-safe; {@link TrainService} derives a new index for every change with {@link #withTrain} and
+ * never modifies a published one.
+ */
+public class StationIndex {
+
+    private final Map<String, Map<String, Integer>> postings;
+
+    public StationIndex() {
+        this(new HashMap<>());
+    }
+
+    private StationIndex(Map<String, Map<String, Integer>> postings) {
+        this.postings = postings;
+    }
+
+    /**
+     * Returns an index in which {@code updated} replaces {@code previous}; either may be null. Only the
+     * posting lists of stations the two trains stop at are copied, the rest are shared with this index,
+     * which is left as it was.
+     */
+    public StationIndex withTrain(Train previous, Train updated) {
+        StationIndex next = new StationIndex(new HashMap<>(postings));
+        Set<String> copied = new HashSet<>();
+        next.copyPostingsOf(previous, copied);
+        next.copyPostingsOf(updated, copied);
+        if (previous != null) {
+            next.remove(previous);
+        }
+        if (updated != null) {
+            next.add(updated);
+        }
+        return next;
+    }
+
+    private void copyPostingsOf(Train train, Set<String> copied) {
+        if (train == null || train.getStations() == null) {
+            return;
+        }
+        for (String station : train.getStations()) {
+            Map<String, Integer> trains = postings.get(station);
+            if (trains != null && copied.add(station)) {
+                postings.put(station, new LinkedHashMap<>(trains));
+            }
+        }
+    }
+
+    public void add(Train train) {
+        List<String> stations = train.getStations();
+        if (stations == null || train.getTrainId() == null) {
+            return;
+        }
+        String trainKey = key(train.getTrainId());
+        for (int stop = 0; stop < stations.size(); stop++) {
+            // putIfAbsent keeps the first stop, matching List.indexOf on looping routes.
+            postings.computeIfAbsent(stations.get(stop), s -> new LinkedHashMap<>()).putIfAbsent(trainKey, stop);
+        }
+    }
+
+    public void remove(Train train) {
+        List<String> stations = train.getStations();
+        if (stations == null || train.getTrainId() == null) {
+            return;
+        }
+        String trainKey = key(train.getTrainId());
+        for (String station : stations) {
+            Map<String, Integer> trains = postings.get(station);
+            if (trains != null) {
+                trains.remove(trainKey);
+                if (trains.isEmpty()) {
+                    postings.remove(station);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the (lower-cased) ids of trains that stop at {@code source} before {@code destination}.
+     */
+    public List<String> findTrainIds(String source, String destination) {
+        Map<String, Integer> fromSource = postings.get(source);
+        Map<String, Integer> toDestination = postings.get(destination);
+        if (fromSource == null || toDestination == null) {
+            return Collections.emptyList();
+        }
+        List<String> trainIds = new ArrayList<>();
+        boolean walkSource = fromSource.size() <= toDestination.size();
+        Map<String, Integer> walked = walkSource ? fromSource : toDestination;
+        Map<String, Integer> probed = walkSource ? toDestination : fromSource;
+        for (Map.Entry<String, Integer> posting : walked.entrySet()) {
+            Integer otherStop = probed.get(posting.getKey());
+            if (otherStop == null) {
+                continue;
+            }
+            int sourceStop = walkSource ? posting.getValue() : otherStop;
+            int destinationStop = walkSource ? otherStop : posting.getValue();
+            if (sourceStop < destinationStop) {
+                trainIds.add(posting.getKey());
+            }
+        }
+        return trainIds;
+    }
+
+    /**
+     * Returns the {@code trainId -> stop index} postings for a station, or an empty map.
+     */
+    public Map<String, Integer> trainsAt(String station) {
+        Map<String, Integer> trains = postings.get(station);
+        return trains == null ? Collections.<String, Integer>emptyMap() : Collections.unmodifiableMap(trains);
+    }
+
+    static String key(String trainId) {
+        return trainId.toLowerCase();
+    }
+}
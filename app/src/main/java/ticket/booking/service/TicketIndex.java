@@ -0,0 +1,64 @@
+package ticket.booking.service;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.User;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Every ticket by id, with the user holding it, so cancellation and status lookups find a ticket and
+ * its seat without scanning users. Tickets migrated from older formats carry no user id, which is why
+ * the owner is kept next to each ticket.
+ */
+final class TicketIndex {
+
+    private final ConcurrentMap<String, Indexed> tickets = new ConcurrentHashMap<>();
+
+    void add(String ownerId, Ticket ticket) {
+        if (ticket.getTicketId() != null) {
+            tickets.put(ticket.getTicketId(), new Indexed(ownerId, ticket));
+        }
+    }
+
+    void addAll(User owner) {
+        if (owner.getTicketsBooked() != null) {
+            owner.getTicketsBooked().forEach(ticket -> add(owner.getUserId(), ticket));
+        }
+    }
+
+    /**
+     * Drops a ticket if {@code ownerId} holds it.
+     */
+    void remove(String ownerId, String ticketId) {
+        Indexed indexed = tickets.get(ticketId);
+        if (indexed != null && indexed.ownerId.equals(ownerId)) {
+            tickets.remove(ticketId, indexed);
+        }
+    }
+
+    Optional<Ticket> find(String ticketId) {
+        Indexed indexed = ticketId == null ? null : tickets.get(ticketId);
+        return indexed == null ? Optional.empty() : Optional.of(indexed.ticket);
+    }
+
+    Optional<String> ownerOf(String ticketId) {
+        Indexed indexed = ticketId == null ? null : tickets.get(ticketId);
+        return indexed == null ? Optional.empty() : Optional.of(indexed.ownerId);
+    }
+
+    int size() {
+        return tickets.size();
+    }
+
+    private static final class Indexed {
+        private final String ownerId;
+        private final Ticket ticket;
+
+        private Indexed(String ownerId, Ticket ticket) {
+            this.ownerId = ownerId;
+            this.ticket = ticket;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ticket.booking.service;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allows {@code permitsPerSecond} calls a second on average and bursts of up to {@code burst} calls.
+ * Tokens are topped up lazily from the ticker whenever one is asked for, so an idle bucket costs nothing.
+ */
+public final class TokenBucket {
+
+    private final double burst;
+    private final double tokensPerNano;
+    private final Ticker ticker;
+    private double tokens; // guarded by this
+    private long refilledAt; // guarded by this
+
+    public TokenBucket(double permitsPerSecond, int burst, Ticker ticker) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("A token bucket needs a positive rate and a burst of at least one.");
+        }
+        this.burst = burst;
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.ticker = ticker;
+        this.tokens = burst;
+        this.refilledAt = ticker.read();
+    }
+
+    /**
+     * Takes a token if there is one.
+     *
+     * @return 0 if a token was taken, otherwise how many nanoseconds until there will be one.
+     */
+    public synchronized long tryAcquire() {
+        long now = ticker.read();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+}
@@ -0,0 +1,170 @@
+package ticket.booking.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import ticket.booking.entities.Train;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded caches of station-pair searches and per-train, per-date seat availability, in front of
+ * {@link TrainService}. Entries expire after {@code booking.cache.ttlSeconds} (default 60) and each
+ * cache holds at most {@code booking.cache.maxEntries} (default 10000).
+ * <p>
+ * Invalidation is precise: a booking or release drops the availability of that train and date only,
+ * and changing a train drops the searches between two of its stations and its availability. A load
+ * that races with an invalidation can read data that is already stale, so every load notes a
+ * generation first and discards its own entry if the generation moved while it ran.
+ * <p>
+ * The ages of entries served are recorded as the {@code cache.search.entryAge} and
+ * {@code cache.availability.entryAge} histograms, to see how stale the answers get.
+ */
+final class TrainQueryCache {
+
+    private static final LatencyHistogram SEARCH_ENTRY_AGE = Metrics.shared().timer("cache.search.entryAge").getLatency();
+    private static final LatencyHistogram AVAILABILITY_ENTRY_AGE = Metrics.shared().timer("cache.availability.entryAge").getLatency();
+    private static final LongAdder INVALIDATIONS = Metrics.shared().counter("cache.invalidations");
+
+    private final Cache<String, Entry<List<Train>>> searches;
+    private final Cache<String, Entry<SeatAvailability>> availability;
+    private final AtomicLong searchGeneration = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> seatGenerations = new ConcurrentHashMap<>();
+
+    TrainQueryCache() {
+        this(Long.getLong("booking.cache.maxEntries", 10_000), Long.getLong("booking.cache.ttlSeconds", 60), TimeUnit.SECONDS);
+    }
+
+    TrainQueryCache(long maxEntries, long ttl, TimeUnit unit) {
+        this.searches = CacheBuilder.newBuilder().maximumSize(maxEntries).expireAfterWrite(ttl, unit).recordStats().build();
+        this.availability = CacheBuilder.newBuilder().maximumSize(maxEntries).expireAfterWrite(ttl, unit).recordStats().build();
+    }
+
+    /**
+     * Trains from {@code source} to {@code destination}, both lower case, from the cache or {@code loader}.
+     */
+    List<Train> search(String source, String destination, Supplier<List<Train>> loader) {
+        String key = source + "->" + destination;
+        Entry<List<Train>> cached = searches.getIfPresent(key);
+        if (cached != null) {
+            SEARCH_ENTRY_AGE.recordSince(cached.createdNanos);
+            return cached.value;
+        }
+        long generation = searchGeneration.get();
+        List<Train> trains = Collections.unmodifiableList(loader.get());
+        searches.put(key, new Entry<>(trains));
+        if (searchGeneration.get() != generation) {
+            searches.invalidate(key); // a train changed while loading
+        }
+        return trains;
+    }
+
+    /**
+     * Availability of a train on a date (null for its undated seat map), from the cache or {@code loader}.
+     */
+    SeatAvailability availability(String trainKey, LocalDate date, Supplier<SeatAvailability> loader) {
+        String key = trainKey + '#' + date;
+        Entry<SeatAvailability> cached = availability.getIfPresent(key);
+        if (cached != null) {
+            AVAILABILITY_ENTRY_AGE.recordSince(cached.createdNanos);
+            return cached.value;
+        }
+        AtomicLong generation = seatGenerations.computeIfAbsent(trainKey, k -> new AtomicLong());
+        long before = generation.get();
+        SeatAvailability loaded = loader.get();
+        availability.put(key, new Entry<>(loaded));
+        if (generation.get() != before) {
+            availability.invalidate(key); // seats changed while loading
+        }
+        return loaded;
+    }
+
+    /**
+     * Seats of a train changed on one date: drops that availability only.
+     */
+    void seatsChanged(String trainKey, LocalDate date) {
+        seatGenerations.computeIfAbsent(trainKey, k -> new AtomicLong()).incrementAndGet();
+        availability.invalidate(trainKey + '#' + date);
+        INVALIDATIONS.increment();
+    }
+
+    /**
+     * A train was added, replaced or removed: drops the searches either version serves and all its availability.
+     *
+     * @param before the previous version, or null for a new train.
+     */
+    void trainChanged(Train before, Train after) {
+        searchGeneration.incrementAndGet();
+        Set<String> stations = new HashSet<>();
+        String trainKey = null;
+        for (Train version : new Train[]{before, after}) {
+            if (version != null) {
+                trainKey = StationIndex.key(version.getTrainId());
+                if (version.getStations() != null) {
+                    stations.addAll(version.getStations());
+                }
+            }
+        }
+        for (String key : searches.asMap().keySet()) {
+            int arrow = key.indexOf("->");
+            if (stations.contains(key.substring(0, arrow)) && stations.contains(key.substring(arrow + 2))) {
+                searches.invalidate(key);
+                INVALIDATIONS.increment();
+            }
+        }
+        if (trainKey != null) {
+            seatGenerations.computeIfAbsent(trainKey, k -> new AtomicLong()).incrementAndGet();
+            String prefix = trainKey + '#';
+            for (String key : availability.asMap().keySet()) {
+                if (key.startsWith(prefix)) {
+                    availability.invalidate(key);
+                    INVALIDATIONS.increment();
+                }
+            }
+        }
+    }
+
+    void invalidateAll() {
+        searchGeneration.incrementAndGet();
+        seatGenerations.values().forEach(AtomicLong::incrementAndGet);
+        searches.invalidateAll();
+        availability.invalidateAll();
+    }
+
+    CacheStats searchStats() {
+        return searches.stats();
+    }
+
+    CacheStats availabilityStats() {
+        return availability.stats();
+    }
+
+    long searchSize() {
+        return searches.size();
+    }
+
+    long availabilitySize() {
+        return availability.size();
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        private final long createdNanos = System.nanoTime();
+
+        private Entry(T value) {
+            this.value = value;
+        }
+    }
+}
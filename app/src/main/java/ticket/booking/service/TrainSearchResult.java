@@ -0,0 +1,167 @@
+package ticket.booking.service;
+
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A train found by {@link TrainService#searchTrainsWithAvailability}, with the free seats on each leg of
+ * the journey searched for, in all and per coach type. The counts come from the seat map's counters, so
+ * no seat is looked at.
+ */
+public final class TrainSearchResult {
+
+    private final Train train;
+    private final LocalDate date;
+    private final int fromStation;
+    private final int capacity;
+    private final int[] freeSeatsByLeg;
+    private final Map<String, Integer> capacityByCoachType;
+    private final Map<String, int[]> freeSeatsByCoachType; // by leg, like freeSeatsByLeg
+
+    private TrainSearchResult(Train train, LocalDate date, int fromStation, int capacity, int[] freeSeatsByLeg,
+                              Map<String, Integer> capacityByCoachType, Map<String, int[]> freeSeatsByCoachType) {
+        this.train = train;
+        this.date = date;
+        this.fromStation = fromStation;
+        this.capacity = capacity;
+        this.freeSeatsByLeg = freeSeatsByLeg;
+        this.capacityByCoachType = capacityByCoachType;
+        this.freeSeatsByCoachType = freeSeatsByCoachType;
+    }
+
+    /**
+     * @param seats the seat map of {@code train} on {@code date}.
+     */
+    static TrainSearchResult of(Train train, LocalDate date, int fromStation, int toStation, SegmentSeatInventory seats) {
+        int[] freeByLeg = new int[toStation - fromStation];
+        for (int leg = 0; leg < freeByLeg.length; leg++) {
+            freeByLeg[leg] = seats.freeSeatsOnLeg(fromStation + leg);
+        }
+        Map<String, Integer> capacityByType = new LinkedHashMap<>();
+        Map<String, int[]> freeByType = new LinkedHashMap<>();
+        for (String coachType : train.coachTypes()) {
+            int[] rows = train.rowsOfCoachType(coachType);
+            int[] free = new int[freeByLeg.length];
+            for (int leg = 0; leg < free.length; leg++) {
+                for (int row : rows) {
+                    free[leg] += seats.freeSeatsOnLeg(fromStation + leg, row, row + 1);
+                }
+            }
+            capacityByType.put(coachType, rows.length * seats.getSeatsPerRow());
+            freeByType.put(coachType, free);
+        }
+        return new TrainSearchResult(train, date, fromStation, seats.getCapacity(), freeByLeg, capacityByType, freeByType);
+    }
+
+    /**
+     * For a date nobody has booked yet, without creating its seat map.
+     */
+    static TrainSearchResult allFree(Train train, LocalDate date, int fromStation, int toStation) {
+        int capacity = train.getSeats() == null ? 0 : train.getSeats().getCapacity();
+        int seatsPerRow = train.getSeats() == null ? 0 : train.getSeats().getSeatsPerRow();
+        int[] freeByLeg = new int[toStation - fromStation];
+        Arrays.fill(freeByLeg, capacity);
+        Map<String, Integer> capacityByType = new LinkedHashMap<>();
+        Map<String, int[]> freeByType = new LinkedHashMap<>();
+        for (String coachType : train.coachTypes()) {
+            int typeCapacity = train.rowsOfCoachType(coachType).length * seatsPerRow;
+            int[] free = new int[freeByLeg.length];
+            Arrays.fill(free, typeCapacity);
+            capacityByType.put(coachType, typeCapacity);
+            freeByType.put(coachType, free);
+        }
+        return new TrainSearchResult(train, date, fromStation, capacity, freeByLeg, capacityByType, freeByType);
+    }
+
+    public Train getTrain() {
+        return train;
+    }
+
+    /**
+     * Null when the search had no date and the train's undated seat map was counted.
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Index in the train's stations of the station the journey starts at.
+     */
+    public int getFromStation() {
+        return fromStation;
+    }
+
+    /**
+     * Free seats on the {@code leg}-th leg of the journey, counting from the station searched from.
+     */
+    public int getFreeSeats(int leg) {
+        return freeSeatsByLeg[leg];
+    }
+
+    public int getLegCount() {
+        return freeSeatsByLeg.length;
+    }
+
+    /**
+     * The train's coach types in the order of its coach details; empty if it lists none.
+     */
+    public List<String> getCoachTypes() {
+        return new ArrayList<>(freeSeatsByCoachType.keySet());
+    }
+
+    public int getCapacity(String coachType) {
+        return capacityByCoachType.getOrDefault(coachType, 0);
+    }
+
+    /**
+     * Free seats in coaches of a type on the {@code leg}-th leg of the journey; 0 for a type the train does not run.
+     */
+    public int getFreeSeats(String coachType, int leg) {
+        int[] free = freeSeatsByCoachType.get(coachType);
+        return free == null ? 0 : free[leg];
+    }
+
+    /**
+     * Like {@link #getFreeSeatsOnBusiestLeg()}, for the coaches of one type.
+     */
+    public int getFreeSeatsOnBusiestLeg(String coachType) {
+        int fewest = getCapacity(coachType);
+        for (int leg = 0; leg < getLegCount(); leg++) {
+            fewest = Math.min(fewest, getFreeSeats(coachType, leg));
+        }
+        return fewest;
+    }
+
+    /**
+     * Free seats on the journey's fullest leg: at most this many seats are free for the whole journey,
+     * since a seat free on that leg may be taken on another one, and none are when it is 0.
+     */
+    public int getFreeSeatsOnBusiestLeg() {
+        int fewest = capacity;
+        for (int free : freeSeatsByLeg) {
+            fewest = Math.min(fewest, free);
+        }
+        return fewest;
+    }
+
+    @Override
+    public String toString() {
+        return "TrainSearchResult{" +
+                "trainId='" + train.getTrainId() + '\'' +
+                ", date=" + date +
+                ", capacity=" + capacity +
+                ", freeSeatsOnBusiestLeg=" + getFreeSeatsOnBusiestLeg() +
+                '}';
+    }
+}
@@ -1,43 +1,205 @@
 package ticket.booking.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.Striped;
 import ticket.booking.entities.Train;
+import ticket.booking.inventory.DatedSeatInventories;
+import ticket.booking.inventory.GroupSeating;
+import ticket.booking.inventory.SegmentSeatInventory;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.metrics.OperationTimer;
+import ticket.booking.metrics.SampledLogger;
+import ticket.booking.persistence.BinarySnapshotWriter;
+import ticket.booking.persistence.Journal;
+import ticket.booking.persistence.JournalRecord;
+import ticket.booking.persistence.MappedTrainSnapshot;
+import ticket.booking.persistence.SnapshotFiles;
+import ticket.booking.planner.Itinerary;
+import ticket.booking.planner.Timetable;
+import ticket.booking.util.JsonUtil;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/**
+ * The train repository. One instance per trains.json is meant to live for the whole process
+ * (see {@link #shared()}), so searches and bookings never re-read the file.
+ * <p>
+ * The train list, id map and station index are published together as an immutable {@link Catalog}.
+ * Reads take the current catalog from a volatile field without locking; adding or updating a train
+ * builds a new catalog and swaps it in. Seat inventories are not copied: a train's seats are shared
+ * by every catalog version and updated in place with their own atomic operations.
+ * <p>
+ * Bookings lock only a stripe chosen by train and coach (row), so bookings on different trains or
+ * coaches run in parallel; the stripe keeps each seat's journal records in the order they were
+ * applied. Multi-seat operations take their stripes in Guava's stripe order, the one ordering rule
+ * that keeps them from deadlocking with each other. Replacing the catalog (adding or updating a
+ * train, reloading) and writing a replica snapshot take the write side of {@code catalogLock} and wait
+ * for bookings in flight.
+ * <p>
+ * A booking with a date of travel goes to that day's seat map, created on the first booking and only
+ * for days the train runs within {@link #ADVANCE_BOOKING_DAYS}; bookings without a date use the
+ * train's own seat map, as before. Seat maps of past dates are archived to {@code <name>.archive.jsonl}
+ * and dropped from memory by {@link #evictPastInventories()}; the live ones are snapshotted to
+ * {@code <name>.dated.json} on compaction.
+ * <p>
+ * Passengers can queue for a coach type that is full on a train and date with {@link #joinWaitlist}.
+ * A cancellation through {@link #releaseSeatAndPromote} hands the freed seat to the head of the queue for
+ * its coach type under the same coach stripe and in the same journal frame, so no other booking can take
+ * it in between. Queues are snapshotted to {@code <name>.waitlist.json} on compaction.
+ * <p>
+ * Station-pair searches and seat availability are served from a {@link TrainQueryCache}; every
+ * change above invalidates just the entries it affects.
+ */
 public class TrainService {
 
     private static final Logger logger = Logger.getLogger(TrainService.class.getName());
-    private List<Train> trainList;
+    private static final SampledLogger updateLog = new SampledLogger(logger, Level.INFO);
+    private static final OperationTimer SEARCH_TIMER = Metrics.shared().timer("trains.search");
+    private static final OperationTimer SAVE_TIMER = Metrics.shared().timer("trains.save");
+    private static final OperationTimer PLAN_TIMER = Metrics.shared().timer("trains.plan");
+    public static final int ADVANCE_BOOKING_DAYS = 120;
+    private volatile Catalog catalog;
+    private volatile DatedSeatInventories datedSeats;
+    private volatile Waitlists waitlists;
+    private final ReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private final Striped<Lock> coachLocks = Striped.lock(COACH_LOCK_STRIPES);
     private final ObjectMapper objectMapper;
+    private final String trainDbPath;
+    private final Journal journal; // null for a replica
+    private final Clock clock;
+    private final TrainQueryCache queryCache = new TrainQueryCache();
+    private volatile FileStamp loadedStamp;
     private static final String TRAIN_DB_PATH = "localDB/trains.json";
+    private static final int COACH_LOCK_STRIPES = 256;
+    private static final int GROUP_BOOKING_ATTEMPTS = 5;
+
+    private static TrainService shared;
 
     public TrainService() throws IOException {
-        this(new ObjectMapper());
+        this(JsonUtil.newObjectMapper());
     }
 
     public TrainService(ObjectMapper objectMapper) throws IOException {
+        this(objectMapper, TRAIN_DB_PATH);
+    }
+
+    public TrainService(ObjectMapper objectMapper, String trainDbPath) throws IOException {
+        this(objectMapper, trainDbPath, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock decides which dates of travel are past, and so can no longer be booked.
+     */
+    public TrainService(ObjectMapper objectMapper, String trainDbPath, Clock clock) throws IOException {
         this.objectMapper = objectMapper;
-        this.trainList = loadTrainData();
+        this.trainDbPath = trainDbPath;
+        this.clock = clock;
+        this.journal = Journal.forSnapshot(trainDbPath);
+        load();
+    }
+
+    /**
+     * A read-only copy of a primary's trains, kept up to date by {@link ticket.booking.replication.ReplicationFollower}
+     * through {@link #loadReplicaSnapshot} and {@link #applyReplicated}. It has no files or journal of its own,
+     * serves searches and availability as usual, and refuses every change.
+     */
+    public static TrainService replica(ObjectMapper objectMapper, Clock clock) {
+        return new TrainService(objectMapper, clock);
+    }
+
+    private TrainService(ObjectMapper objectMapper, Clock clock) {
+        this.objectMapper = objectMapper;
+        this.trainDbPath = null;
+        this.clock = clock;
+        this.journal = null;
+        this.catalog = new Catalog(0, new ArrayList<>());
+        this.datedSeats = new DatedSeatInventories();
+        this.waitlists = new Waitlists();
+    }
+
+    /**
+     * The process-wide repository for the default trains.json, loaded on first use. It also publishes
+     * each train's seat occupancy as the {@code trains.occupancyPercent} gauges, and the number of dated
+     * seat maps in memory as {@code trains.datedInventories}.
+     */
+    public static synchronized TrainService shared() throws IOException {
+        if (shared == null) {
+            shared = new TrainService();
+            Metrics.shared().gaugeFamily("trains.occupancyPercent", shared::occupancyPercent);
+            TrainService service = shared;
+            Metrics.shared().gauge("trains.datedInventories", () -> service.datedSeats.size());
+            Metrics.shared().gauge("trains.waitlisted", () -> service.waitlists.size());
+            Metrics.shared().gaugeFamily("cache", service::cacheStatistics);
+        }
+        return shared;
+    }
+
+    private void load() throws IOException {
+        catalogLock.writeLock().lock();
+        try {
+            FileStamp stamp = FileStamp.of(trainDbPath);
+            Map<String, Train> trains = byId(loadTrainData());
+            DatedSeatInventories dated = loadDatedSeats();
+            Waitlists queued = loadWaitlists();
+            journal.replay(record -> applyRecord(trains, dated, queued, record));
+            this.catalog = new Catalog(catalog == null ? 0 : catalog.version + 1, new ArrayList<>(trains.values()));
+            this.datedSeats = dated;
+            this.waitlists = queued;
+            queryCache.invalidateAll();
+            this.loadedStamp = stamp;
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
     }
 
     private List<Train> loadTrainData() throws IOException {
-        File trainsFile = new File(TRAIN_DB_PATH);
+        if (SnapshotFiles.hasFreshBinarySnapshot(trainDbPath)) {
+            try (MappedTrainSnapshot snapshot = new MappedTrainSnapshot(BinarySnapshotWriter.binaryPathFor(trainDbPath))) {
+                return snapshot.readAll(); // seat maps stay in the mapped file until a train's seats are touched
+            }
+        }
+        File trainsFile = new File(trainDbPath);
         if (!trainsFile.exists()) {
             try {
-                Files.createDirectories(Paths.get(TRAIN_DB_PATH).getParent());
-                Files.createFile(Paths.get(TRAIN_DB_PATH));
+                Path path = Paths.get(trainDbPath).toAbsolutePath();
+                Files.createDirectories(path.getParent());
+                Files.createFile(path);
                 return new ArrayList<>();
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "Error creating train data file: " + e.getMessage(), e);
@@ -55,74 +217,1086 @@ public class TrainService {
         }
     }
 
+    private DatedSeatInventories loadDatedSeats() throws IOException {
+        File file = new File(datedSeatsPath());
+        if (!file.exists()) {
+            return new DatedSeatInventories();
+        }
+        try {
+            return datedSeatsOf(objectMapper.readValue(file, new TypeReference<Map<String, Map<String, SegmentSeatInventory>>>() {}));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading dated seat data: " + e.getMessage(), e);
+            throw new IOException("Failed to read dated seat data.", e);
+        }
+    }
+
+    private static DatedSeatInventories datedSeatsOf(Map<String, Map<String, SegmentSeatInventory>> stored) {
+        DatedSeatInventories dated = new DatedSeatInventories();
+        stored.forEach((trainKey, dates) -> dates.forEach((date, seats) -> dated.put(trainKey, LocalDate.parse(date), seats)));
+        return dated;
+    }
+
+    private Waitlists loadWaitlists() throws IOException {
+        File file = new File(waitlistPath());
+        if (!file.exists()) {
+            return new Waitlists();
+        }
+        try {
+            return waitlistsOf(objectMapper.readValue(file, new TypeReference<List<List<String>>>() {}));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading waitlist data: " + e.getMessage(), e);
+            throw new IOException("Failed to read waitlist data.", e);
+        }
+    }
+
+    private static Waitlists waitlistsOf(List<List<String>> stored) {
+        Waitlists queued = new Waitlists();
+        for (List<String> fields : stored) {
+            queued.add(WaitlistEntry.fromFields(fields));
+        }
+        return queued;
+    }
+
     public List<Train> searchTrains(String source, String destination) throws IOException{ //Added IOException to signature
         if (source == null || source.trim().isEmpty() || destination == null || destination.trim().isEmpty()) {
             throw new IllegalArgumentException("Source and destination cannot be null or empty.");
         }
-        String sourceLower = source.toLowerCase();
-        String destinationLower = destination.toLowerCase();
+        long started = SEARCH_TIMER.start();
+        boolean found = false;
+        try {
+            String sourceLower = source.toLowerCase();
+            String destinationLower = destination.toLowerCase();
 
-        List<Train> matchingTrains = trainList.stream()
-                .filter(train -> isValidTrain(train, sourceLower, destinationLower))
+            List<Train> matchingTrains = queryCache.search(sourceLower, destinationLower, () -> {
+                Catalog current = catalog;
+                return current.stationIndex.findTrainIds(sourceLower, destinationLower).stream()
+                        .map(current.trainsById::get)
+                        .collect(Collectors.toList());
+            });
+
+            if (matchingTrains.isEmpty()) {
+                throw new IOException("No trains found for source: " + source + " and destination: " + destination);
+            }
+            found = true;
+            return matchingTrains;
+        } finally {
+            SEARCH_TIMER.stop(started, found);
+        }
+    }
+
+    /**
+     * Like {@link #searchTrains(String, String)}, keeping only trains that leave their first station on
+     * {@code date}. Only the timetable is consulted; no seat map is created or read.
+     */
+    public List<Train> searchTrains(String source, String destination, LocalDate date) throws IOException {
+        if (date == null) {
+            return searchTrains(source, destination);
+        }
+        List<Train> running = searchTrains(source, destination).stream()
+                .filter(train -> train.runsOn(date))
                 .collect(Collectors.toList());
+        if (running.isEmpty()) {
+            throw new IOException("No trains found for source: " + source + " and destination: " + destination + " on " + date);
+        }
+        return running;
+    }
+
+    /**
+     * Like {@link #searchTrains(String, String, LocalDate)}, with the free seats on each leg of the journey,
+     * in all and per coach type.
+     * The counts are kept up to date by every booking and release, so this reads no seat map; a date nobody
+     * has booked reads as all free.
+     */
+    public List<TrainSearchResult> searchTrainsWithAvailability(String source, String destination, LocalDate date) throws IOException {
+        List<Train> trains = searchTrains(source, destination, date);
+        List<TrainSearchResult> results = new ArrayList<>(trains.size());
+        for (Train train : trains) {
+            int from = train.indexOfStation(source);
+            int to = train.indexOfStation(destination);
+            Optional<SegmentSeatInventory> seats = findSeats(train, date);
+            if (seats.isPresent()) {
+                results.add(TrainSearchResult.of(train, date, from, to, seats.get()));
+            } else {
+                results.add(TrainSearchResult.allFree(train, date, from, to));
+            }
+        }
+        return results;
+    }
 
-        if (matchingTrains.isEmpty()) {
-            throw new IOException("No trains found for source: " + source + " and destination: " + destination);
+    /**
+     * Plans journeys that may change trains, for routes no single train serves. Unlike {@link #searchTrains},
+     * finding nothing is not an error.
+     *
+     * @param departAfter          earliest time of day to leave {@code source}.
+     * @param maxTransfers         most changes of train allowed; 0 means direct trains only.
+     * @param minConnectionMinutes least time between arriving on one train and leaving on the next.
+     * @param limit                most itineraries to return, fastest first.
+     * @see Timetable#plan
+     */
+    public List<Itinerary> planJourneys(String source, String destination, LocalTime departAfter, int maxTransfers,
+                                        int minConnectionMinutes, int limit) {
+        long started = PLAN_TIMER.start();
+        List<Itinerary> itineraries = Collections.emptyList();
+        try {
+            itineraries = catalog.timetable.plan(source, destination, departAfter, maxTransfers, minConnectionMinutes, limit);
+            return itineraries;
+        } finally {
+            PLAN_TIMER.stop(started, !itineraries.isEmpty());
         }
-        return matchingTrains;
     }
 
     public void addTrain(Train newTrain) throws IOException { //Added IOException
+        checkWritable();
         if (newTrain == null) {
             throw new IllegalArgumentException("New train cannot be null.");
         }
-        if (trainList.stream().anyMatch(train -> train.getTrainId().equalsIgnoreCase(newTrain.getTrainId()))) {
-            updateTrain(newTrain);
-            return;
+        catalogLock.writeLock().lock();
+        try {
+            if (catalog.trainsById.containsKey(StationIndex.key(newTrain.getTrainId()))) {
+                updateTrain(newTrain);
+                return;
+            }
+            journal.append(new JournalRecord(JournalRecord.Type.TRAIN_UPSERT, objectMapper.writeValueAsString(newTrain)));
+            catalog = catalog.withTrain(null, newTrain);
+            queryCache.trainChanged(null, newTrain);
+        } finally {
+            catalogLock.writeLock().unlock();
         }
-        trainList.add(newTrain);
-        saveTrainListToFile();
-        logger.info("Train added: " + newTrain);
+        updateLog.log(() -> "Train added: " + newTrain.getTrainId() + " (" + newTrain.getTrainNo() + ")");
     }
 
     public void updateTrain(Train updatedTrain) throws IOException{ //Added IOException
+        checkWritable();
         if (updatedTrain == null) {
             throw new IllegalArgumentException("Updated train cannot be null.");
         }
+        catalogLock.writeLock().lock();
+        try {
+            Optional<Train> existingTrain = getTrain(updatedTrain.getTrainId());
+
+            if (existingTrain.isPresent()) {
+                journal.append(new JournalRecord(JournalRecord.Type.TRAIN_UPSERT, objectMapper.writeValueAsString(updatedTrain)));
+                catalog = catalog.withTrain(existingTrain.get(), updatedTrain);
+                queryCache.trainChanged(existingTrain.get(), updatedTrain);
+                updateLog.log(() -> "Train updated: " + updatedTrain.getTrainId() + " (" + updatedTrain.getTrainNo() + ")");
+            } else {
+                addTrain(updatedTrain);
+                logger.warning("Train with id " + updatedTrain.getTrainId() + " not found. Added as new.");
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Books a seat between two stations and journals just that booking. The booking is made on this
+     * repository's instance of the train, whichever copy the caller passes in.
+     * Pass {@link SegmentSeatInventory#ALL_LEGS} as {@code legs} to book the whole run.
+     *
+     * @return false if any of the legs is already taken.
+     */
+    public boolean bookSeat(Train train, int row, int seat, long legs) throws IOException {
+        return bookSeat(train, null, row, seat, legs);
+    }
+
+    /**
+     * Books a seat on the train leaving on {@code date}, or on its undated seat map if {@code date} is null.
+     *
+     * @return false if any of the legs is already taken.
+     * @throws IllegalArgumentException if the train does not run that day, or the date cannot be booked yet or any more.
+     */
+    public boolean bookSeat(Train train, LocalDate date, int row, int seat, long legs) throws IOException {
+        return bookSeats(Collections.singletonList(new SeatHold(train, date, row, seat, legs)));
+    }
+
+    /**
+     * The seat map of a train on a date, or its undated seat map if {@code date} is null. Empty if nothing
+     * was booked on that date yet; this never creates a seat map.
+     */
+    public Optional<SegmentSeatInventory> findSeats(Train train, LocalDate date) {
+        Train stored = storedCopyOf(train);
+        if (date == null) {
+            return Optional.ofNullable(stored.getSeats());
+        }
+        return datedSeats.find(StationIndex.key(stored.getTrainId()), date);
+    }
+
+    /**
+     * Checks that a train can be booked for a date: one it runs on, from today up to
+     * {@link #ADVANCE_BOOKING_DAYS} ahead.
+     *
+     * @throws IllegalArgumentException if it cannot.
+     */
+    public void checkBookable(Train train, LocalDate date) {
+        LocalDate today = LocalDate.now(clock);
+        if (date.isBefore(today)) {
+            throw new IllegalArgumentException("Date of travel " + date + " is in the past.");
+        }
+        if (date.isAfter(today.plusDays(ADVANCE_BOOKING_DAYS))) {
+            throw new IllegalArgumentException("Bookings open " + ADVANCE_BOOKING_DAYS + " days ahead; " + date + " is too far out.");
+        }
+        if (!train.runsOn(date)) {
+            throw new IllegalArgumentException("Train " + train.getTrainId() + " does not run on " + date + " (" + date.getDayOfWeek() + ").");
+        }
+    }
+
+    /**
+     * The seat map a hold books from, created for a dated hold if need be.
+     */
+    private SegmentSeatInventory seatsToBook(Train stored, LocalDate date) {
+        if (date == null) {
+            return stored.getSeats();
+        }
+        checkBookable(stored, date);
+        return datedSeats.getOrCreate(StationIndex.key(stored.getTrainId()), date, stored.getSeats());
+    }
+
+    /**
+     * Books several seats, possibly on different trains, all or nothing.
+     *
+     * @return false, with nothing booked, if any of the legs is already taken.
+     */
+    public boolean bookSeats(List<SeatHold> holds) throws IOException {
+        checkWritable();
+        List<Lock> locks = lockStripes(holds);
+        try {
+            List<SeatHold> booked = new ArrayList<>(holds.size());
+            try {
+                for (SeatHold hold : holds) {
+                    Train stored = storedCopyOf(hold.getTrain());
+                    if (!seatsToBook(stored, hold.getDate()).tryBookLegs(hold.getRow(), hold.getSeat(), hold.getLegs())) {
+                        rollBack(booked);
+                        return false;
+                    }
+                    booked.add(new SeatHold(stored, hold.getDate(), hold.getRow(), hold.getSeat(), hold.getLegs()));
+                }
+            } catch (RuntimeException e) {
+                rollBack(booked);
+                throw e;
+            }
+            List<JournalRecord> records = new ArrayList<>(booked.size());
+            for (SeatHold hold : booked) {
+                records.add(seatRecord(JournalRecord.Type.SEAT_BOOKED, hold));
+            }
+            try {
+                journal.appendAll(records); // one frame: a crash never leaves part of the group booked
+            } catch (IOException | RuntimeException e) {
+                rollBack(booked); // not durable, so not sold
+                throw e;
+            }
+            booked.forEach(this::seatsChanged);
+            return true;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Finds {@code count} seats free between two station indexes, arranged as {@code seating} allows,
+     * and books them all in one step. The search runs without locks; if another booking takes one of
+     * the chosen seats first, the search is repeated.
+     *
+     * @return the seats booked, or an empty list if the train cannot seat the group.
+     */
+    public List<SeatHold> bookGroup(Train train, int fromStation, int toStation, int count, GroupSeating seating) throws IOException {
+        return bookGroup(train, null, fromStation, toStation, count, seating);
+    }
+
+    /**
+     * {@link #bookGroup(Train, int, int, int, GroupSeating)} on the train leaving on {@code date}.
+     */
+    public List<SeatHold> bookGroup(Train train, LocalDate date, int fromStation, int toStation, int count,
+                                    GroupSeating seating) throws IOException {
+        checkWritable();
+        Train stored = storedCopyOf(train);
+        long legs = SegmentSeatInventory.legMask(fromStation, toStation);
+        SegmentSeatInventory seats = seatsToBook(stored, date);
+        for (int attempt = 0; attempt < GROUP_BOOKING_ATTEMPTS; attempt++) {
+            int[] found = seats.findGroup(fromStation, toStation, count, seating);
+            if (found.length == 0) {
+                return Collections.emptyList();
+            }
+            List<SeatHold> holds = new ArrayList<>(found.length);
+            for (int flat : found) {
+                holds.add(new SeatHold(stored, date, flat / seats.getSeatsPerRow(), flat % seats.getSeatsPerRow(), legs));
+            }
+            if (bookSeats(holds)) {
+                return holds;
+            }
+        }
+        logger.warning("Gave up booking a group of " + count + " on train " + stored.getTrainId() + " after repeated contention.");
+        return Collections.emptyList();
+    }
+
+    /**
+     * Frees seat legs booked with {@link #bookSeat} and journals the release.
+     *
+     * @return false if the legs were not all booked.
+     */
+    public boolean releaseSeat(Train train, int row, int seat, long legs) throws IOException {
+        return releaseSeat(train, null, row, seat, legs);
+    }
+
+    /**
+     * Frees seat legs booked on the train leaving on {@code date}. Seats of archived dates cannot be released.
+     *
+     * @return false if the legs were not all booked.
+     */
+    public boolean releaseSeat(Train train, LocalDate date, int row, int seat, long legs) throws IOException {
+        checkWritable();
+        SeatHold release = new SeatHold(train, date, row, seat, legs);
+        List<Lock> locks = lockStripes(Collections.singletonList(release));
+        try {
+            Optional<SegmentSeatInventory> seats = findSeats(train, date);
+            if (!seats.isPresent() || !seats.get().releaseLegs(row, seat, legs)) {
+                return false;
+            }
+            try {
+                journal.append(seatRecord(JournalRecord.Type.SEAT_RELEASED, release));
+            } catch (IOException | RuntimeException e) {
+                seats.get().markBooked(row, seat, legs); // nobody else can have taken it: the stripe is held
+                seatsChanged(release);
+                throw e;
+            }
+            seatsChanged(release);
+            return true;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Frees seat legs like {@link #releaseSeat(Train, LocalDate, int, int, long)} and, in the same step,
+     * books the seat for the head of the train's waitlist for that date and the seat's coach type if the
+     * freed seat covers the head's journey. The release and the promotion are journaled as one frame.
+     *
+     * @return the waitlist entry now holding the seat, if any. Legs that were not all booked are left
+     *         alone and nothing is promoted.
+     */
+    public Optional<WaitlistEntry> releaseSeatAndPromote(Train train, LocalDate date, int row, int seat, long legs) throws IOException {
+        checkWritable();
+        SeatHold release = new SeatHold(train, date, row, seat, legs);
+        List<Lock> locks = lockStripes(Collections.singletonList(release));
+        try {
+            Optional<SegmentSeatInventory> seats = findSeats(train, date);
+            if (!seats.isPresent() || !seats.get().releaseLegs(row, seat, legs)) {
+                logger.warning("Seat " + row + "/" + seat + " of train " + train.getTrainId() + " on " + date + " was not booked.");
+                return Optional.empty();
+            }
+            Train stored = storedCopyOf(train);
+            Optional<WaitlistEntry> promoted = waitlists.promoteHead(StationIndex.key(stored.getTrainId()), date, stored.coachTypeOfRow(row),
+                    head -> seats.get().tryBookLegs(row, seat, head.getLegs()));
+            List<JournalRecord> records = new ArrayList<>(3);
+            records.add(seatRecord(JournalRecord.Type.SEAT_RELEASED, release));
+            if (promoted.isPresent()) {
+                records.add(seatRecord(JournalRecord.Type.SEAT_BOOKED, new SeatHold(stored, date, row, seat, promoted.get().getLegs())));
+                records.add(new JournalRecord(JournalRecord.Type.WAITLIST_LEFT, promoted.get().getEntryId()));
+            }
+            try {
+                journal.appendAll(records);
+            } catch (IOException | RuntimeException e) {
+                if (promoted.isPresent()) {
+                    seats.get().markReleased(row, seat, promoted.get().getLegs());
+                    waitlists.restoreHead(promoted.get());
+                }
+                seats.get().markBooked(row, seat, legs);
+                seatsChanged(release);
+                throw e;
+            }
+            seatsChanged(release);
+            return promoted;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Queues a request for a seat between two stations on a train without coach details, see
+     * {@link #joinWaitlist(Train, LocalDate, String, String, String, String)}.
+     */
+    public WaitlistEntry joinWaitlist(Train train, LocalDate date, String userId, String source, String destination) throws IOException {
+        return joinWaitlist(train, date, userId, source, destination, null);
+    }
+
+    /**
+     * Queues a request for a seat between two stations in a coach type of a train and date, when no seat of
+     * that type is free for the journey. The check and the queueing run under the stripes of every coach of
+     * the type, which {@link #releaseSeatAndPromote} takes too, so a seat freed meanwhile is either seen
+     * here or offered to the new entry.
+     *
+     * @param coachType one of the train's coach types, ignoring case; null for a train that lists none.
+     * @throws IllegalArgumentException if a seat is still free, the train has no seats of that coach type,
+     *                                  or it cannot be booked for that date.
+     */
+    public WaitlistEntry joinWaitlist(Train train, LocalDate date, String userId, String source, String destination,
+                                      String coachType) throws IOException {
+        checkWritable();
+        Train stored = storedCopyOf(train);
+        int from = stored.indexOfStation(source);
+        int to = stored.indexOfStation(destination);
+        if (from == -1 || to == -1 || from >= to) {
+            throw new IllegalArgumentException("Train " + stored.getTrainId() + " does not run from " + source + " to " + destination + ".");
+        }
+        if (date != null) {
+            checkBookable(stored, date);
+        }
+        String type = coachTypeOf(stored, coachType);
+        int[] rows = type == null ? IntStream.range(0, stored.getSeats() == null ? 0 : stored.getSeats().getRows()).toArray()
+                : stored.rowsOfCoachType(type);
+        if (rows.length == 0) {
+            throw new IllegalArgumentException("Train " + stored.getTrainId() + " has no " + (type == null ? "" : type + " ") + "seats.");
+        }
+        long legs = SegmentSeatInventory.legMask(from, to);
+        List<SeatHold> coaches = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            coaches.add(new SeatHold(stored, date, row, 0, legs));
+        }
+        List<Lock> locks = lockStripes(coaches); // the catalog read lock keeps eviction from missing the entry
+        try {
+            Optional<SegmentSeatInventory> seats = findSeats(stored, date);
+            if (!seats.isPresent() || Arrays.stream(rows).anyMatch(row -> seats.get().findFreeSeatInRow(row, from, to) != -1)) {
+                throw new IllegalArgumentException("Train " + stored.getTrainId() + " still has " + (type == null ? "" : type + " ")
+                        + "seats from " + source + " to " + destination + ".");
+            }
+            WaitlistEntry entry = new WaitlistEntry(UUID.randomUUID().toString(), userId, stored.getTrainId(), date,
+                    source.toLowerCase(), destination.toLowerCase(), legs, type);
+            journal.append(new JournalRecord(JournalRecord.Type.WAITLIST_JOINED, entry.toFields().toArray(new String[0])));
+            waitlists.add(entry);
+            return entry;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * The train's own spelling of a coach type.
+     *
+     * @throws IllegalArgumentException if the train does not run that type, or one is needed and none was given.
+     */
+    private static String coachTypeOf(Train train, String coachType) {
+        List<String> types = train.coachTypes();
+        if (coachType == null && types.isEmpty()) {
+            return null;
+        }
+        for (String type : types) {
+            if (type.equalsIgnoreCase(coachType)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Train " + train.getTrainId() + " has coach types " + types + ", not " + coachType + ".");
+    }
+
+    /**
+     * Withdraws a queued request.
+     *
+     * @return false if there is no such entry, or it belongs to another user.
+     */
+    public boolean leaveWaitlist(String entryId, String userId) throws IOException {
+        checkWritable();
+        catalogLock.readLock().lock();
+        try {
+            Optional<WaitlistEntry> entry = waitlists.find(entryId);
+            if (!entry.isPresent() || !Objects.equals(entry.get().getUserId(), userId) || !waitlists.remove(entryId).isPresent()) {
+                return false;
+            }
+            journal.append(new JournalRecord(JournalRecord.Type.WAITLIST_LEFT, entryId));
+            return true;
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The waitlist of a train without coach details on a date, next in line first.
+     */
+    public List<WaitlistEntry> getWaitlist(Train train, LocalDate date) {
+        return getWaitlist(train, date, null);
+    }
+
+    /**
+     * The waitlist for a coach type of a train on a date, next in line first.
+     */
+    public List<WaitlistEntry> getWaitlist(Train train, LocalDate date, String coachType) {
+        return waitlists.entries(StationIndex.key(storedCopyOf(train).getTrainId()), date, coachType);
+    }
+
+    /**
+     * Takes the catalog read lock, then the coach stripes of every hold in stripe order.
+     */
+    private List<Lock> lockStripes(List<SeatHold> holds) {
+        List<String> coaches = new ArrayList<>(holds.size());
+        for (SeatHold hold : holds) {
+            coaches.add(StationIndex.key(hold.getTrain().getTrainId()) + '#' + hold.getDate() + '#' + hold.getRow());
+        }
+        List<Lock> locks = new ArrayList<>(holds.size() + 1);
+        catalogLock.readLock().lock();
+        locks.add(catalogLock.readLock());
+        try {
+            for (Lock stripe : coachLocks.bulkGet(coaches)) {
+                stripe.lock(); // stripes repeat when coaches share one; the locks are reentrant
+                locks.add(stripe);
+            }
+        } catch (RuntimeException e) {
+            unlock(locks);
+            throw e;
+        }
+        return locks;
+    }
+
+    private static void unlock(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    private void rollBack(List<SeatHold> booked) {
+        for (SeatHold hold : booked) {
+            findSeats(hold.getTrain(), hold.getDate())
+                    .ifPresent(seats -> seats.releaseLegs(hold.getRow(), hold.getSeat(), hold.getLegs()));
+            seatsChanged(hold); // an availability loaded in between saw the seat taken
+        }
+    }
+
+    private void seatsChanged(SeatHold hold) {
+        queryCache.seatsChanged(StationIndex.key(hold.getTrain().getTrainId()), hold.getDate());
+    }
+
+    /**
+     * The seat map and free seats per leg of a train on a date, or of its undated seat map if {@code date}
+     * is null. Served from the cache while nothing on that train and date changes; a date nobody has
+     * booked reads as all free, without creating its seat map.
+     */
+    public SeatAvailability getAvailability(Train train, LocalDate date) {
+        Train stored = storedCopyOf(train);
+        return queryCache.availability(StationIndex.key(stored.getTrainId()), date, () -> {
+            SegmentSeatInventory layout = stored.getSeats() == null ? new SegmentSeatInventory(0, 0) : stored.getSeats();
+            SegmentSeatInventory seats = findSeats(stored, date)
+                    .orElseGet(() -> new SegmentSeatInventory(layout.getRows(), layout.getSeatsPerRow()));
+            return SeatAvailability.of(stored, date, seats);
+        });
+    }
+
+    /**
+     * Hit, miss and eviction counts, sizes and hit rates of the query caches.
+     */
+    private Map<String, Long> cacheStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        putCacheStatistics(statistics, "search", queryCache.searchStats(), queryCache.searchSize());
+        putCacheStatistics(statistics, "availability", queryCache.availabilityStats(), queryCache.availabilitySize());
+        return statistics;
+    }
+
+    private static void putCacheStatistics(Map<String, Long> statistics, String cache, CacheStats stats, long size) {
+        statistics.put(cache + ".hits", stats.hitCount());
+        statistics.put(cache + ".misses", stats.missCount());
+        statistics.put(cache + ".evictions", stats.evictionCount());
+        statistics.put(cache + ".size", size);
+        statistics.put(cache + ".hitPercent", Math.round(stats.hitRate() * 100));
+    }
+
+    /**
+     * Archives the seat maps of dates before today and drops them from memory, so only the advance-booking
+     * window is held. Waitlist entries for those dates are dropped as well. Each seat map is appended to the
+     * archive file and synced before the journal records its removal; a crash in between archives it twice,
+     * which readers of the archive must tolerate.
+     *
+     * @return the number of seat maps archived.
+     */
+    public int evictPastInventories() throws IOException {
+        checkWritable();
+        LocalDate today = LocalDate.now(clock);
+        catalogLock.writeLock().lock(); // waits for bookings and releases in flight
+        try {
+            DatedSeatInventories dated = datedSeats;
+            List<JournalRecord> records = new ArrayList<>();
+            StringBuilder archive = new StringBuilder();
+            for (String trainKey : dated.trainKeys()) {
+                for (Map.Entry<LocalDate, SegmentSeatInventory> past : dated.datesOf(trainKey).headMap(today).entrySet()) {
+                    ObjectNode line = objectMapper.createObjectNode();
+                    line.put("train_id", trainKey);
+                    line.put("date", past.getKey().toString());
+                    line.set("seats", objectMapper.valueToTree(past.getValue()));
+                    archive.append(objectMapper.writeValueAsString(line)).append('\n');
+                    records.add(new JournalRecord(JournalRecord.Type.INVENTORY_ARCHIVED, trainKey, past.getKey().toString()));
+                }
+            }
+            List<JournalRecord> expired = new ArrayList<>();
+            for (WaitlistEntry entry : waitlists.all()) {
+                if (entry.getDate() != null && entry.getDate().isBefore(today)) {
+                    expired.add(new JournalRecord(JournalRecord.Type.WAITLIST_LEFT, entry.getEntryId()));
+                }
+            }
+            if (!expired.isEmpty()) {
+                journal.appendAll(expired);
+                expired.forEach(record -> waitlists.remove(record.getField(0)));
+                logger.info("Dropped " + expired.size() + " waitlist entries for past dates.");
+            }
+            if (records.isEmpty()) {
+                return 0;
+            }
+            appendToArchive(archive.toString());
+            journal.appendAll(records);
+            for (JournalRecord record : records) {
+                dated.remove(record.getField(0), LocalDate.parse(record.getField(1)));
+                queryCache.seatsChanged(record.getField(0), LocalDate.parse(record.getField(1)));
+            }
+            logger.info("Archived " + records.size() + " seat map(s) of past dates to " + archivePath());
+            return records.size();
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Archives past seat maps in the background, see {@link #evictPastInventories()}.
+     */
+    public ScheduledFuture<?> scheduleEviction(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        checkWritable();
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                evictPastInventories();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error archiving past seat maps: " + e.getMessage(), e);
+            }
+        }, 0, period, unit);
+    }
+
+    private void appendToArchive(String lines) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(archivePath(), true)) {
+            out.write(lines.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error writing seat archive: " + e.getMessage(), e);
+            throw new IOException("Failed to archive past seat maps.", e);
+        }
+    }
+
+    private String datedSeatsPath() {
+        return trainDbPath.replaceFirst("\\.json$", "") + ".dated.json";
+    }
+
+    private String waitlistPath() {
+        return trainDbPath.replaceFirst("\\.json$", "") + ".waitlist.json";
+    }
+
+    private String archivePath() {
+        return trainDbPath.replaceFirst("\\.json$", "") + ".archive.jsonl";
+    }
+
+    /**
+     * Share of each train's seats booked on at least one leg, in percent.
+     */
+    private Map<String, Long> occupancyPercent() {
+        Map<String, Long> occupancy = new HashMap<>();
+        for (Train train : catalog.trainList) {
+            SegmentSeatInventory seats = train.getSeats();
+            if (seats != null && seats.getCapacity() > 0) {
+                occupancy.put(train.getTrainId(), 100L * (seats.getCapacity() - seats.freeCount()) / seats.getCapacity());
+            }
+        }
+        return occupancy;
+    }
+
+    public Optional<Train> getTrain(String trainId) {
+        if (trainId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(catalog.trainsById.get(StationIndex.key(trainId)));
+    }
+
+    public List<Train> getTrains() {
+        return catalog.trainList;
+    }
+
+    /**
+     * Incremented whenever a train is added or updated, or the repository is reloaded.
+     */
+    public long getVersion() {
+        return catalog.version;
+    }
+
+    /**
+     * Reloads trains.json and the journal if the file was replaced since it was loaded, e.g. by another
+     * process or by hand. Returns true if a reload happened.
+     */
+    public boolean reloadIfChanged() throws IOException {
+        checkWritable();
+        if (FileStamp.of(trainDbPath).equals(loadedStamp)) {
+            return false;
+        }
+        load();
+        logger.info("Train data reloaded from changed file: " + trainDbPath);
+        return true;
+    }
+
+    /**
+     * Polls trains.json for changes in the background and reloads when it changes.
+     */
+    public ScheduledFuture<?> watchForChanges(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        checkWritable();
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reloadIfChanged();
+            } catch (IOException | UncheckedIOException e) {
+                logger.log(Level.SEVERE, "Error reloading train data: " + e.getMessage(), e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Folds the journal into trains.json. The new snapshot is rebuilt from the previous snapshot
+     * and the journal on disk, so it never depends on what this instance happens to hold in memory.
+     */
+    public void compact() throws IOException {
+        checkWritable();
+        journal.compact(() -> {
+            Map<String, Train> trains = byId(loadTrainData());
+            DatedSeatInventories dated = loadDatedSeats();
+            Waitlists queued = loadWaitlists();
+            journal.replayRotated(record -> applyRecord(trains, dated, queued, record));
+            saveDatedSeats(dated);
+            saveWaitlists(queued);
+            saveTrainListToFile(new ArrayList<>(trains.values()));
+        });
+    }
+
+    /**
+     * Compacts the journal in the background whenever at least {@code minRecords} records have piled up.
+     */
+    public ScheduledFuture<?> scheduleCompaction(ScheduledExecutorService scheduler, long period, TimeUnit unit, long minRecords) {
+        checkWritable();
+        return scheduler.scheduleWithFixedDelay(() -> {
+            if (journal.getPendingRecords() < minRecords) {
+                return;
+            }
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error compacting train journal: " + e.getMessage(), e);
+            }
+        }, period, period, unit);
+    }
+
+    private static Map<String, Map<String, SegmentSeatInventory>> storedForm(DatedSeatInventories dated) {
+        Map<String, Map<String, SegmentSeatInventory>> stored = new TreeMap<>(); // {"t101": {"2024-01-31": [[0, 1]]}}
+        for (String trainKey : dated.trainKeys()) {
+            for (Map.Entry<LocalDate, SegmentSeatInventory> date : dated.datesOf(trainKey).entrySet()) {
+                stored.computeIfAbsent(trainKey, key -> new TreeMap<>()).put(date.getKey().toString(), date.getValue());
+            }
+        }
+        return stored;
+    }
 
-        Optional<Train> existingTrain = trainList.stream()
-                .filter(train -> train.getTrainId().equalsIgnoreCase(updatedTrain.getTrainId()))
-                .findFirst();
+    private static List<List<String>> storedForm(Waitlists queued) {
+        List<List<String>> entries = new ArrayList<>();
+        for (WaitlistEntry entry : queued.all()) {
+            entries.add(entry.toFields());
+        }
+        return entries;
+    }
 
-        if (existingTrain.isPresent()) {
-            int index = trainList.indexOf(existingTrain.get());
-            trainList.set(index, updatedTrain);
-            saveTrainListToFile();
-            logger.info("Train updated: " + updatedTrain);
-        } else {
-            addTrain(updatedTrain);
-            logger.warning("Train with id " + updatedTrain.getTrainId() + " not found. Added as new.");
+    private void saveDatedSeats(DatedSeatInventories dated) throws IOException {
+        try {
+            SnapshotFiles.writeJsonAtomically(objectMapper, datedSeatsPath(), storedForm(dated));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error saving dated seat data: " + e.getMessage(), e);
+            throw new IOException("Failed to save dated seat data.", e);
         }
     }
 
-    private void saveTrainListToFile() throws IOException { //Added IOException
+    private void saveWaitlists(Waitlists queued) throws IOException {
         try {
-            objectMapper.writeValue(new File(TRAIN_DB_PATH), trainList);
-            logger.info("Train data saved to file: " + TRAIN_DB_PATH);
+            SnapshotFiles.writeJsonAtomically(objectMapper, waitlistPath(), storedForm(queued));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error saving waitlist data: " + e.getMessage(), e);
+            throw new IOException("Failed to save waitlist data.", e);
+        }
+    }
+
+    private void saveTrainListToFile(List<Train> trains) throws IOException { //Added IOException
+        long started = SAVE_TIMER.start();
+        boolean saved = false;
+        try {
+            SnapshotFiles.writeJsonAtomically(objectMapper, trainDbPath, trains);
+            loadedStamp = FileStamp.of(trainDbPath); // our own rewrite holds nothing new
+            Path binary = BinarySnapshotWriter.binaryPathFor(trainDbPath);
+            if (Files.exists(binary)) {
+                BinarySnapshotWriter.writeTrains(trains, binary);
+            }
+            logger.info("Train data saved to file: " + trainDbPath);
+            saved = true;
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error saving train data: " + e.getMessage(), e);
             throw new IOException("Failed to save train data.", e);
+        } finally {
+            SAVE_TIMER.stop(started, saved);
         }
     }
 
-    private boolean isValidTrain(Train train, String source, String destination) {
-        List<String> stationOrder = train.getStations();
-        if (stationOrder == null) {
-            return false;
+    private Train storedCopyOf(Train train) {
+        if (train == null) {
+            throw new IllegalArgumentException("Train object cannot be null.");
+        }
+        return getTrain(train.getTrainId())
+                .orElseThrow(() -> new IllegalArgumentException("Train with id " + train.getTrainId() + " not found."));
+    }
+
+    /**
+     * One published version of the repository. Never modified after construction.
+     */
+    private static final class Catalog {
+        private final long version;
+        private final List<Train> trainList;
+        private final Map<String, Train> trainsById;
+        private final StationIndex stationIndex;
+        private final Timetable timetable;
+
+        /**
+         * Indexes every train; for loading. A single change goes through {@link #withTrain}.
+         */
+        private Catalog(long version, List<Train> trains) {
+            Map<String, Train> byId = new HashMap<>();
+            StationIndex index = new StationIndex();
+            for (Train train : trains) {
+                byId.put(StationIndex.key(train.getTrainId()), train);
+                index.add(train);
+            }
+            this.version = version;
+            this.trainList = Collections.unmodifiableList(trains);
+            this.trainsById = Collections.unmodifiableMap(byId);
+            this.stationIndex = index;
+            this.timetable = Timetable.of(trains);
+        }
+
+        private Catalog(long version, List<Train> trains, Map<String, Train> trainsById, StationIndex stationIndex, Timetable timetable) {
+            this.version = version;
+            this.trainList = Collections.unmodifiableList(trains);
+            this.trainsById = Collections.unmodifiableMap(trainsById);
+            this.stationIndex = stationIndex;
+            this.timetable = timetable;
+        }
+
+        /**
+         * The next version, with {@code updated} in place of {@code previous}, or added if that is null. The
+         * station index and timetable only change for the stations and connections of the two trains.
+         */
+        private Catalog withTrain(Train previous, Train updated) {
+            List<Train> trains = new ArrayList<>(trainList);
+            int position = previous == null ? -1 : trains.indexOf(previous);
+            if (position == -1) {
+                trains.add(updated);
+            } else {
+                trains.set(position, updated);
+            }
+            Map<String, Train> byId = new HashMap<>(trainsById);
+            byId.put(StationIndex.key(updated.getTrainId()), updated);
+            return new Catalog(version + 1, trains, byId, stationIndex.withTrain(previous, updated), timetable.withTrain(updated));
+        }
+    }
+
+    /**
+     * What the snapshot file looked like when it was read, to notice when it is replaced.
+     */
+    private static final class FileStamp {
+        private final long lastModified;
+        private final long size;
+
+        private FileStamp(long lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        static FileStamp of(String path) {
+            File file = new File(path);
+            return new FileStamp(file.lastModified(), file.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FileStamp that = (FileStamp) o;
+            return lastModified == that.lastModified && size == that.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModified, size);
+        }
+    }
+
+    private static final int DATE_FIELD = 4;
+
+    private static JournalRecord seatRecord(JournalRecord.Type type, SeatHold hold) {
+        String trainId = hold.getTrain().getTrainId();
+        String row = String.valueOf(hold.getRow());
+        String seat = String.valueOf(hold.getSeat());
+        String legs = Long.toHexString(hold.getLegs());
+        return hold.getDate() == null
+                ? new JournalRecord(type, trainId, row, seat, legs)
+                : new JournalRecord(type, trainId, row, seat, legs, hold.getDate().toString());
+    }
+
+    private static Map<String, Train> byId(List<Train> trains) {
+        Map<String, Train> byId = new LinkedHashMap<>();
+        for (Train train : trains) {
+            byId.put(StationIndex.key(train.getTrainId()), train);
+        }
+        return byId;
+    }
+
+    private void checkWritable() {
+        if (journal == null) {
+            throw new IllegalStateException("This is a read-only replica; send changes to the primary.");
+        }
+    }
+
+    /**
+     * Hands every journal frame committed from now on to {@code listener}, in commit order; see
+     * {@link Journal#addCommitListener}. A replication primary ships them to replicas.
+     */
+    public void addCommitListener(Journal.CommitListener listener) {
+        checkWritable();
+        journal.addCommitListener(listener);
+    }
+
+    public void removeCommitListener(Journal.CommitListener listener) {
+        checkWritable();
+        journal.removeCommitListener(listener);
+    }
+
+    /**
+     * Trains, dated seat maps and waitlists as one JSON document, for a replica to start from. It is taken
+     * under the write side of {@code catalogLock}, which waits for every booking, release and waitlist change
+     * in flight: those change memory before their journal commit and undo it if the commit fails, so only
+     * between them does memory hold committed state alone. The replica must still apply every frame
+     * committed after {@code writeReplicaSnapshot} was called; records set state, so any already in the
+     * snapshot change nothing.
+     */
+    public byte[] writeReplicaSnapshot() throws IOException {
+        catalogLock.writeLock().lock();
+        try {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("trains", catalog.trainList);
+            snapshot.put("dated", storedForm(datedSeats));
+            snapshot.put("waitlist", storedForm(waitlists));
+            return objectMapper.writeValueAsBytes(snapshot);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces everything a replica holds with a snapshot from {@link #writeReplicaSnapshot}.
+     */
+    public void loadReplicaSnapshot(byte[] snapshot) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("Only a replica loads snapshots from a primary.");
         }
-        int sourceIndex = stationOrder.indexOf(source);
-        int destinationIndex = stationOrder.indexOf(destination);
+        JsonNode tree = objectMapper.readTree(snapshot);
+        List<Train> trains = objectMapper.readerFor(new TypeReference<List<Train>>() {}).readValue(tree.get("trains"));
+        Map<String, Map<String, SegmentSeatInventory>> dated = objectMapper
+                .readerFor(new TypeReference<Map<String, Map<String, SegmentSeatInventory>>>() {}).readValue(tree.get("dated"));
+        List<List<String>> queued = objectMapper.readerFor(new TypeReference<List<List<String>>>() {}).readValue(tree.get("waitlist"));
+        catalogLock.writeLock().lock();
+        try {
+            this.catalog = new Catalog(catalog.version + 1, trains);
+            this.datedSeats = datedSeatsOf(dated);
+            this.waitlists = waitlistsOf(queued);
+            queryCache.invalidateAll();
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
 
-        return sourceIndex != -1 && destinationIndex != -1 && sourceIndex < destinationIndex;
+    /**
+     * Applies one frame of a primary's journal to a replica, dropping the cached results it affects.
+     */
+    public void applyReplicated(List<JournalRecord> records) {
+        if (journal != null) {
+            throw new IllegalStateException("Only a replica applies records from a primary.");
+        }
+        catalogLock.writeLock().lock();
+        try {
+            for (JournalRecord record : records) {
+                switch (record.getType()) {
+                    case TRAIN_UPSERT: // the catalog is derived from the last one, never rebuilt
+                        Train updated = trainOf(record);
+                        Train previous = catalog.trainsById.get(StationIndex.key(updated.getTrainId()));
+                        catalog = catalog.withTrain(previous, updated);
+                        queryCache.trainChanged(previous, updated);
+                        break;
+                    case SEAT_BOOKED:
+                    case SEAT_RELEASED:
+                        applyRecord(catalog.trainsById, datedSeats, waitlists, record);
+                        LocalDate date = record.getFields().size() > DATE_FIELD ? LocalDate.parse(record.getField(DATE_FIELD)) : null;
+                        queryCache.seatsChanged(StationIndex.key(record.getField(0)), date);
+                        break;
+                    case INVENTORY_ARCHIVED:
+                        applyRecord(catalog.trainsById, datedSeats, waitlists, record);
+                        queryCache.seatsChanged(record.getField(0), LocalDate.parse(record.getField(1)));
+                        break;
+                    default:
+                        applyRecord(catalog.trainsById, datedSeats, waitlists, record);
+                        break;
+                }
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    private Train trainOf(JournalRecord upsert) {
+        try {
+            return objectMapper.readValue(upsert.getField(0), Train.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable train in journal.", e);
+        }
+    }
+
+    /**
+     * Applies a journal record to a set of trains. Records set state rather than test-and-set it,
+     * so replaying a record that is already reflected in the snapshot changes nothing.
+     */
+    private void applyRecord(Map<String, Train> trains, DatedSeatInventories dated, Waitlists queued, JournalRecord record) {
+        switch (record.getType()) {
+            case TRAIN_UPSERT:
+                Train upserted = trainOf(record);
+                trains.put(StationIndex.key(upserted.getTrainId()), upserted);
+                break;
+            case SEAT_BOOKED:
+            case SEAT_RELEASED:
+                Train train = trains.get(StationIndex.key(record.getField(0)));
+                int row = record.getInt(1);
+                int seat = record.getInt(2);
+                boolean booked = record.getType() == JournalRecord.Type.SEAT_BOOKED;
+                SegmentSeatInventory seats = train == null ? null : train.getSeats();
+                if (seats != null && record.getFields().size() > DATE_FIELD) {
+                    String trainKey = StationIndex.key(train.getTrainId());
+                    LocalDate date = LocalDate.parse(record.getField(DATE_FIELD));
+                    seats = booked ? dated.getOrCreate(trainKey, date, seats) : dated.find(trainKey, date).orElse(null);
+                }
+                if (seats == null || !seats.isValidSeat(row, seat)) {
+                    logger.warning("Skipping journal record for unknown seat: " + record);
+                    break;
+                }
+                if (booked) {
+                    seats.markBooked(row, seat, record.getHexLong(3));
+                } else {
+                    seats.markReleased(row, seat, record.getHexLong(3));
+                }
+                break;
+            case INVENTORY_ARCHIVED:
+                dated.remove(record.getField(0), LocalDate.parse(record.getField(1)));
+                break;
+            case WAITLIST_JOINED:
+                queued.add(WaitlistEntry.fromFields(record.getFields()));
+                break;
+            case WAITLIST_LEFT:
+                queued.remove(record.getField(0));
+                break;
+            default:
+                break;
+        }
     }
 }
@@ -1,57 +1,261 @@
 package ticket.booking.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.google.common.util.concurrent.Striped;
 import ticket.booking.entities.Ticket;
 import ticket.booking.entities.Train;
 import ticket.booking.entities.User;
-import ticket.booking.util.UserServiceUtil;
+import ticket.booking.inventory.GroupSeating;
+import ticket.booking.inventory.SegmentSeatInventory;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.metrics.OperationTimer;
+import ticket.booking.metrics.SampledLogger;
+import ticket.booking.persistence.BinarySnapshotWriter;
+import ticket.booking.persistence.Journal;
+import ticket.booking.persistence.JournalRecord;
+import ticket.booking.persistence.LazyUserStore;
+import ticket.booking.persistence.MappedUserSnapshot;
+import ticket.booking.persistence.SnapshotFiles;
+import ticket.booking.persistence.UserShards;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.PasswordHasher;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class UserBookingService {
 
     private static final Logger logger = Logger.getLogger(UserBookingService.class.getName());
+    private static final SampledLogger eventLog = new SampledLogger(logger, Level.INFO);
+    private static final OperationTimer LOGIN_TIMER = Metrics.shared().timer("users.login");
+    private static final OperationTimer SIGN_UP_TIMER = Metrics.shared().timer("users.signUp");
+    private static final OperationTimer SAVE_TIMER = Metrics.shared().timer("users.save");
+    private static final OperationTimer BOOK_TIMER = Metrics.shared().timer("bookings.book");
+    private static final OperationTimer GROUP_TIMER = Metrics.shared().timer("bookings.bookGroup");
+    private static final OperationTimer CANCEL_TIMER = Metrics.shared().timer("bookings.cancel");
     private final ObjectMapper objectMapper;
-    private List<User> userList;
+    private final Map<String, User> usersById;
+    private final Map<String, List<User>> usersByName;
+    private final TicketIndex ticketIndex; // in lazy mode, only tickets journaled or looked up since startup
+    private List<LazyUserStore> lazyShards; // replaces the two maps above when users are loaded lazily, one per shard
+    private final SessionManager sessions;
+    private final PasswordHasher hasher;
+    private TrainService trainService; // the shared repository unless one is passed in
+    private final Striped<Lock> userLocks; // guards each user's tickets
+    private final Lock signUpLock; // shared with session views, unlike a synchronized method
+    private String sessionToken; // set once the user passed to the constructor has logged in
     private User user;  //  Consider if this should be a constructor parameter or handled differently
+    private final List<String> shardPaths; // just userFilePath unless the store is sharded, see UserShards
+    private final List<Journal> journals; // one per shard
     private static final String USER_FILE_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+    private static final long MAX_CACHED_USERS = 10_000;
+    private static final int USER_LOCK_STRIPES = 64;
+    private static final SessionManager SHARED_SESSIONS = new SessionManager(Duration.ofMinutes(30));
 
     public UserBookingService(User user) throws IOException {
-        this(user, new ObjectMapper()); // Call the other constructor
+        this(user, JsonUtil.newObjectMapper()); // Call the other constructor
     }
 
     public UserBookingService() throws IOException {
-        this(null, objectMapper);
+        this(null, JsonUtil.newObjectMapper());
     }
 
     public UserBookingService(User user, ObjectMapper objectMapper) throws IOException {
+        this(user, objectMapper, USER_FILE_PATH);
+    }
+
+    public UserBookingService(User user, ObjectMapper objectMapper, String userFilePath) throws IOException {
+        this(user, objectMapper, userFilePath, false);
+    }
+
+    /**
+     * @param lazyLoad if true, users.json is only indexed at startup and each user is parsed the first
+     *                 time it is looked up (see {@link LazyUserStore}); otherwise every user is loaded.
+     */
+    public UserBookingService(User user, ObjectMapper objectMapper, String userFilePath, boolean lazyLoad) throws IOException {
+        this(user, objectMapper, userFilePath, lazyLoad, SHARED_SESSIONS);
+    }
+
+    /**
+     * @param sessions where login sessions are kept; by default they are shared by every instance in the process.
+     */
+    public UserBookingService(User user, ObjectMapper objectMapper, String userFilePath, boolean lazyLoad, SessionManager sessions) throws IOException {
+        this(user, objectMapper, userFilePath, lazyLoad, sessions, PasswordHasher.shared());
+    }
+
+    /**
+     * @param hasher pool that runs password checks and hash upgrades off the calling thread.
+     */
+    public UserBookingService(User user, ObjectMapper objectMapper, String userFilePath, boolean lazyLoad,
+                              SessionManager sessions, PasswordHasher hasher) throws IOException {
+        this(user, objectMapper, userFilePath, lazyLoad, sessions, hasher, null);
+    }
+
+    /**
+     * @param trainService train repository to search and book against; null means {@link TrainService#shared()}.
+     */
+    public UserBookingService(User user, ObjectMapper objectMapper, String userFilePath, boolean lazyLoad,
+                              SessionManager sessions, PasswordHasher hasher, TrainService trainService) throws IOException {
+        this.trainService = trainService;
         this.user = user;
+        this.usersById = new ConcurrentHashMap<>();
+        this.usersByName = new ConcurrentHashMap<>();
+        this.ticketIndex = new TicketIndex();
+        this.userLocks = Striped.lock(USER_LOCK_STRIPES);
+        this.signUpLock = new ReentrantLock();
         this.objectMapper = objectMapper;
-        this.userList = loadUserListFromFile();
+        this.sessions = sessions;
+        this.hasher = hasher;
+        this.shardPaths = UserShards.snapshotPaths(userFilePath);
+        List<Journal> journals = new ArrayList<>(shardPaths.size());
+        for (String shardPath : shardPaths) {
+            journals.add(Journal.forSnapshot(shardPath));
+        }
+        this.journals = Collections.unmodifiableList(journals);
+        if (lazyLoad) {
+            this.lazyShards = forEachShard(shard -> {
+                createUserFileIfMissing(shardPaths.get(shard));
+                LazyUserStore store = new LazyUserStore(Paths.get(shardPaths.get(shard)), objectMapper, MAX_CACHED_USERS);
+                journals.get(shard).replay(record -> {
+                    applyRecord(store::findById, store::put, record);
+                    indexRecord(ticketIndex, store::findById, record);
+                });
+                return store;
+            });
+        } else {
+            forEachShard(shard -> {
+                List<User> users = loadUserListFromFile(shardPaths.get(shard));
+                journals.get(shard).replay(applierFor(users));
+                users.forEach(this::storeUser); // both maps are concurrent
+                users.forEach(ticketIndex::addAll);
+                return users.size();
+            });
+        }
     }
 
-    private List<User> loadUserListFromFile() throws IOException {
-        File usersFile = new File(USER_FILE_PATH);
-        if (!usersFile.exists()) {
-            try {
-                Files.createDirectories(Paths.get(USER_FILE_PATH).getParent());
-                Files.createFile(Paths.get(USER_FILE_PATH));
-                return new ArrayList<>();
-            } catch (IOException e) {
-                logger.log(Level.SEVERE, "Error creating user data file: " + e.getMessage(), e);
-                throw new IOException("Failed to create user data file.", e);
+    /**
+     * A session view: shares every user, lock and the journal of {@code shared} and acts for one user.
+     */
+    private UserBookingService(UserBookingService shared, User user, String sessionToken) {
+        this.trainService = shared.trainService;
+        this.user = user;
+        this.sessionToken = sessionToken;
+        this.usersById = shared.usersById;
+        this.usersByName = shared.usersByName;
+        this.ticketIndex = shared.ticketIndex;
+        this.lazyShards = shared.lazyShards;
+        this.userLocks = shared.userLocks;
+        this.signUpLock = shared.signUpLock;
+        this.objectMapper = shared.objectMapper;
+        this.shardPaths = shared.shardPaths;
+        this.sessions = shared.sessions;
+        this.hasher = shared.hasher;
+        this.journals = shared.journals;
+    }
+
+    /**
+     * Returns this service acting for the user behind a session token, or empty if the token is unknown
+     * or has expired. The view is cheap to create and shares all state with this service, so one
+     * long-lived service can serve many logged-in users at once.
+     */
+    public Optional<UserBookingService> forSession(String token) {
+        return findUserBySession(token).map(stored -> new UserBookingService(this, stored, token));
+    }
+
+    /**
+     * Runs {@code task} for every shard on the common fork-join pool, so a sharded store loads and
+     * compacts on all cores. Returns the results in shard order.
+     */
+    private <T> List<T> forEachShard(ShardTask<T> task) throws IOException {
+        if (shardPaths.size() == 1) {
+            return Collections.singletonList(task.run(0));
+        }
+        try {
+            return IntStream.range(0, shardPaths.size()).parallel().mapToObj(shard -> {
+                try {
+                    return task.run(shard);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardTask<T> {
+        T run(int shard) throws IOException;
+    }
+
+    private int shardOf(String userId) {
+        return UserShards.shardOf(userId, shardPaths.size());
+    }
+
+    private Journal journalFor(String userId) {
+        return journals.get(shardOf(userId));
+    }
+
+    /**
+     * Every stored user. Only an eagerly loaded service holds them all; used to rewrite the store in a new layout.
+     */
+    Collection<User> allUsers() {
+        if (lazyShards != null) {
+            throw new IllegalStateException("A lazily loaded user store does not hold every user.");
+        }
+        return Collections.unmodifiableCollection(usersById.values());
+    }
+
+    private List<User> loadUserListFromFile(String userFilePath) throws IOException {
+        if (SnapshotFiles.hasFreshBinarySnapshot(userFilePath)) {
+            try (MappedUserSnapshot snapshot = new MappedUserSnapshot(BinarySnapshotWriter.binaryPathFor(userFilePath), objectMapper)) {
+                return snapshot.readAll(); // tickets stay undecoded until a user's bookings are touched
             }
         }
+        File usersFile = new File(userFilePath);
+        if (createUserFileIfMissing(userFilePath)) {
+            return new ArrayList<>();
+        }
         try {
             return objectMapper.readValue(usersFile, new TypeReference<List<User>>() {});
         } catch (MismatchedInputException e) {
@@ -63,48 +267,441 @@ public class UserBookingService {
         }
     }
 
+    private static boolean createUserFileIfMissing(String userFilePath) throws IOException {
+        Path path = Paths.get(userFilePath).toAbsolutePath();
+        if (Files.exists(path)) {
+            return false;
+        }
+        try {
+            Files.createDirectories(path.getParent());
+            Files.createFile(path);
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error creating user data file: " + e.getMessage(), e);
+            throw new IOException("Failed to create user data file.", e);
+        }
+    }
+
     public boolean loginUser() {
         if (user == null) {
             throw new IllegalArgumentException("User object must be provided for login.");
         }
-        Optional<User> foundUser = userList.stream().filter(user1 ->
-                user1.getName().equals(user.getName()) && UserServiceUtil.checkPassword(user.getPassword(), user1.getHashedPassword())
-        ).findFirst();
-        return foundUser.isPresent();
+        Optional<String> token = login(user.getName(), user.getPassword());
+        token.ifPresent(t -> sessionToken = t);
+        return token.isPresent();
+    }
+
+    /**
+     * Verifies a password once and opens a session for the user, waiting for the hashing pool.
+     *
+     * @return the session token to present on later calls, or empty if the name and password do not match.
+     * @throws RejectedExecutionException if the hashing pool is saturated; the caller should retry later.
+     */
+    public Optional<String> login(String name, String password) {
+        try {
+            return loginAsync(name, password).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #login}, but returns as soon as the password checks are queued. A stored hash that
+     * is weaker than the hasher's cost is re-hashed in the background after a successful check.
+     */
+    public CompletableFuture<Optional<String>> loginAsync(String name, String password) {
+        if (name == null || password == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        long started = LOGIN_TIMER.start();
+        CompletableFuture<Optional<User>> match = CompletableFuture.completedFuture(Optional.empty());
+        for (User candidate : findUsersByName(name)) {
+            match = match.thenCompose(found -> found.isPresent()
+                    ? CompletableFuture.completedFuture(found)
+                    : hasher.verify(password, candidate.getHashedPassword(), PasswordHasher.Priority.INTERACTIVE)
+                            .thenApply(valid -> valid ? Optional.of(candidate) : Optional.<User>empty()));
+        }
+        return match.thenApply(found -> found.map(verified -> {
+            upgradeHashIfWeak(verified, password);
+            return sessions.open(verified.getUserId());
+        })).whenComplete((token, e) -> LOGIN_TIMER.stop(started, token != null && token.isPresent()));
+    }
+
+    public void logout() {
+        sessions.close(sessionToken);
+        sessionToken = null;
+    }
+
+    /**
+     * Returns the stored user behind a session token without checking any password.
+     */
+    public Optional<User> findUserBySession(String token) {
+        return sessions.resolve(token).flatMap(this::findUserById);
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    /**
+     * Id of the user this service acts for; null for the shared service.
+     */
+    public String getUserId() {
+        return user == null ? null : user.getUserId();
+    }
+
+    /**
+     * The stored copy of the user this service was created for. Only the first call, or the first call
+     * after the session expires, pays for a password check.
+     */
+    private Optional<User> authenticatedUser() {
+        Optional<User> current = findUserBySession(sessionToken);
+        if (current.isPresent() || !loginUser()) {
+            return current;
+        }
+        return findUserBySession(sessionToken);
     }
 
     public boolean signUp(User newUser) throws IOException { // Added IOException
         if (newUser == null) {
             throw new IllegalArgumentException("User object must be provided for sign up.");
         }
-        // Check if user already exists
-        if (userList.stream().anyMatch(u -> u.getUserId().equals(newUser.getUserId()))) {
-            logger.warning("User with ID " + newUser.getUserId() + " already exists.");
-            return false; // Or throw an exception:  throw new UserAlreadyExistsException("User already exists");
+        long started = SIGN_UP_TIMER.start();
+        boolean signedUp = false;
+        signUpLock.lock();
+        try {
+            // Check if user already exists
+            if (findUserById(newUser.getUserId()).isPresent()) {
+                logger.warning("User with ID " + newUser.getUserId() + " already exists.");
+                return false; // Or throw an exception:  throw new UserAlreadyExistsException("User already exists");
+            }
+            // journaled first: a user who cannot be made durable is never seen
+            journalFor(newUser.getUserId()).append(new JournalRecord(JournalRecord.Type.USER_SIGNUP, newUser.getUserId(), newUser.getName(), newUser.getHashedPassword()));
+            storeUser(newUser);
+            eventLog.log(() -> "User signed up: " + newUser.getName());
+            signedUp = true;
+            return true;
+        } finally {
+            signUpLock.unlock();
+            SIGN_UP_TIMER.stop(started, signedUp);
+        }
+    }
+
+    private void saveUserListToFile(String userFilePath, List<User> users) throws IOException {
+        long started = SAVE_TIMER.start();
+        boolean saved = false;
+        try {
+            SnapshotFiles.writeJsonAtomically(objectMapper, userFilePath, users);
+            Path binary = BinarySnapshotWriter.binaryPathFor(userFilePath);
+            if (Files.exists(binary)) {
+                BinarySnapshotWriter.writeUsers(objectMapper, users, binary);
+            }
+            logger.info("User data saved to file: " + userFilePath);
+            saved = true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error saving user data to file: " + e.getMessage(), e);
+            throw new IOException("Failed to save user data.", e);
+        } finally {
+            SAVE_TIMER.stop(started, saved);
         }
-        userList.add(newUser);
-        saveUserListToFile();
-        logger.info("User signed up: " + newUser.getName());
-        return true;
     }
 
-    private void saveUserListToFile() throws IOException {
+    /**
+     * Rewrites a lazily loaded shard without holding it in memory: the snapshot is streamed user by user,
+     * each user gets the rotated journal records about them, and users who signed up since are appended.
+     * A binary shadow, if any, is left older than the new JSON, so loading skips it until the next full save.
+     */
+    private void writeCompactedShard(String shardPath, Journal journal) throws IOException {
+        Map<String, List<JournalRecord>> recordsByUser = new LinkedHashMap<>();
+        journal.replayRotated(record -> recordsByUser.computeIfAbsent(record.getField(0), id -> new ArrayList<>()).add(record));
+        long started = SAVE_TIMER.start();
+        boolean saved = false;
+        Path target = Paths.get(shardPath).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
         try {
-            objectMapper.writeValue(new File(USER_FILE_PATH), userList);
-            logger.info("User data saved to file: " + USER_FILE_PATH);
+            try (JsonParser parser = objectMapper.getFactory().createParser(target.toFile());
+                 FileOutputStream out = new FileOutputStream(temp.toFile());
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                if (parser.nextToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        User user = objectMapper.readValue(parser, User.class);
+                        writer.writeValue(generator, withRecords(user, recordsByUser.remove(user.getUserId())));
+                    }
+                }
+                for (List<JournalRecord> records : recordsByUser.values()) {
+                    User signedUp = withRecords(null, records);
+                    if (signedUp != null) {
+                        writer.writeValue(generator, signedUp);
+                    }
+                }
+                generator.writeEndArray();
+                generator.flush();
+                out.getFD().sync();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("User data saved to file: " + shardPath);
+            saved = true;
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error saving user data to file: " + e.getMessage(), e);
             throw new IOException("Failed to save user data.", e);
+        } finally {
+            SAVE_TIMER.stop(started, saved);
         }
     }
 
+    /**
+     * Applies one user's journal records in order. {@code user} is null for a user who signed up after the
+     * snapshot was written; the result is still null if the records do not create them.
+     */
+    private static User withRecords(User user, List<JournalRecord> records) {
+        if (records == null) {
+            return user;
+        }
+        User[] current = {user};
+        for (JournalRecord record : records) {
+            applyRecord(id -> Optional.ofNullable(current[0]), u -> current[0] = u, record);
+        }
+        return current[0];
+    }
+
+    /**
+     * Folds the user journals into their snapshots, rebuilding each from disk rather than from this instance.
+     * Only shards with journaled changes are rewritten, in parallel. A lazily loaded shard is streamed, then
+     * its store is reopened on the new file and unpins the users the file now holds.
+     */
+    public void compact() throws IOException {
+        compactShards(1);
+    }
+
+    private void compactShards(long minRecords) throws IOException {
+        forEachShard(shard -> {
+            Journal journal = journals.get(shard);
+            if (journal.getPendingRecords() < minRecords) {
+                return false;
+            }
+            String shardPath = shardPaths.get(shard);
+            if (lazyShards != null) {
+                LazyUserStore store = lazyShards.get(shard);
+                long pinMark = store.pinMark(); // every pin up to here was journaled before the rotation below
+                journal.compact(() -> {
+                    writeCompactedShard(shardPath, journal);
+                    store.reopen(pinMark); // under the compaction lock, so no other compaction replaces the file meanwhile
+                });
+                return true;
+            }
+            journal.compact(() -> {
+                List<User> users = loadUserListFromFile(shardPath);
+                journal.replayRotated(applierFor(users));
+                saveUserListToFile(shardPath, users);
+            });
+            return true;
+        });
+    }
+
+    /**
+     * Compacts in the background each shard whose journal has at least {@code minRecords} records piled up.
+     */
+    public ScheduledFuture<?> scheduleCompaction(ScheduledExecutorService scheduler, long period, TimeUnit unit, long minRecords) {
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                compactShards(Math.max(1, minRecords));
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error compacting user journal: " + e.getMessage(), e);
+            }
+        }, period, period, unit);
+    }
+
+    private void upgradeHashIfWeak(User verified, String password) {
+        String weakHash = verified.getHashedPassword();
+        if (!hasher.needsRehash(weakHash)) {
+            return;
+        }
+        try {
+            hasher.hash(password, PasswordHasher.Priority.BACKGROUND)
+                    .thenAccept(strongHash -> replaceHash(verified.getUserId(), weakHash, strongHash))
+                    .exceptionally(e -> {
+                        logger.log(Level.WARNING, "Error upgrading password hash: " + e.getMessage(), e);
+                        return null;
+                    });
+        } catch (RejectedExecutionException e) {
+            logger.fine("Hashing pool busy; password hash for " + verified.getUserId() + " will be upgraded on a later login.");
+        }
+    }
+
+    private void replaceHash(String userId, String weakHash, String strongHash) {
+        Lock userLock = userLocks.get(userId);
+        userLock.lock();
+        try {
+            Optional<User> stored = findUserById(userId);
+            if (!stored.isPresent() || !weakHash.equals(stored.get().getHashedPassword())) {
+                return; // changed since the login that triggered the upgrade
+            }
+            JournalRecord rehashed = new JournalRecord(JournalRecord.Type.PASSWORD_REHASHED, userId, strongHash);
+            apply(rehashed);
+            journalFor(userId).append(rehashed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal password hash upgrade.", e);
+        } finally {
+            userLock.unlock();
+        }
+    }
+
+    private Optional<User> findUserById(String userId) {
+        if (lazyShards != null) {
+            return lazyShards.get(shardOf(userId)).findById(userId);
+        }
+        return userId == null ? Optional.empty() : Optional.ofNullable(usersById.get(userId));
+    }
+
+    private List<User> findUsersByName(String name) {
+        if (lazyShards != null) {
+            if (lazyShards.size() == 1) {
+                return lazyShards.get(0).findByName(name);
+            }
+            List<User> users = new ArrayList<>();
+            lazyShards.forEach(store -> users.addAll(store.findByName(name))); // names are not what users are sharded by
+            return users;
+        }
+        List<User> users = name == null ? null : usersByName.get(name);
+        return users == null ? Collections.emptyList() : users;
+    }
+
+    /**
+     * Adds a new user or keeps a changed one; in lazy mode the user is pinned in memory on top of the file.
+     */
+    private void storeUser(User changedUser) {
+        if (lazyShards != null) {
+            lazyShards.get(shardOf(changedUser.getUserId())).put(changedUser);
+        } else if (changedUser.getUserId() != null && usersById.putIfAbsent(changedUser.getUserId(), changedUser) == null
+                && changedUser.getName() != null) {
+            usersByName.computeIfAbsent(changedUser.getName(), n -> new CopyOnWriteArrayList<>()).add(changedUser);
+        }
+    }
+
+    private void apply(JournalRecord record) {
+        applyRecord(this::findUserById, this::storeUser, record);
+        indexRecord(ticketIndex, this::findUserById, record);
+    }
+
+    private static void indexRecord(TicketIndex index, Function<String, Optional<User>> findById, JournalRecord record) {
+        if (record.getType() == JournalRecord.Type.TICKET_BOOKED && findById.apply(record.getField(0)).isPresent()) {
+            index.add(record.getField(0), ticketOf(record));
+        } else if (record.getType() == JournalRecord.Type.TICKET_CANCELLED) {
+            index.remove(record.getField(0), record.getField(1));
+        }
+    }
+
+    /**
+     * Applies records to a list of users through a by-id map built once, so a record costs one lookup however
+     * many users there are. Users who sign up are appended to the list.
+     */
+    private static Consumer<JournalRecord> applierFor(List<User> users) {
+        Map<String, User> byId = new HashMap<>(users.size() * 2);
+        for (User listed : users) {
+            if (listed.getUserId() != null) {
+                byId.putIfAbsent(listed.getUserId(), listed);
+            }
+        }
+        return record -> applyRecord(id -> Optional.ofNullable(byId.get(id)), u -> {
+            if (byId.putIfAbsent(u.getUserId(), u) == null) {
+                users.add(u);
+            }
+        }, record);
+    }
+
+    /**
+     * Applies a journal record through lookup/store callbacks, so the same code serves a plain list and
+     * the lazy store. Replaying a record that is already reflected changes nothing.
+     */
+    private static void applyRecord(Function<String, Optional<User>> findById, Consumer<User> store, JournalRecord record) {
+        switch (record.getType()) {
+            case USER_SIGNUP:
+                String userId = record.getField(0);
+                if (!findById.apply(userId).isPresent()) {
+                    store.accept(new User(record.getField(1), null, record.getField(2), new ArrayList<>(), userId));
+                }
+                break;
+            case TICKET_CANCELLED:
+                // Ticket lists are replaced rather than modified, so readers can iterate them without locking.
+                findById.apply(record.getField(0)).filter(u -> u.getTicketsBooked() != null).ifPresent(u -> {
+                    List<Ticket> remaining = new ArrayList<>(u.getTicketsBooked());
+                    if (remaining.removeIf(ticket -> record.getField(1).equals(ticket.getTicketId()))) {
+                        u.setTicketsBooked(remaining);
+                        store.accept(u); // lets the lazy store pin the changed user
+                    }
+                });
+                break;
+            case TICKET_BOOKED:
+                findById.apply(record.getField(0)).ifPresent(u -> {
+                    List<Ticket> tickets = u.getTicketsBooked() == null ? new ArrayList<>() : new ArrayList<>(u.getTicketsBooked());
+                    Ticket ticket = ticketOf(record);
+                    if (!tickets.contains(ticket)) {
+                        tickets.add(ticket);
+                        u.setTicketsBooked(tickets);
+                        store.accept(u);
+                    }
+                });
+                break;
+            case PASSWORD_REHASHED:
+                findById.apply(record.getField(0)).ifPresent(u -> {
+                    u.setHashedPassword(record.getField(1));
+                    store.accept(u);
+                });
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Ticket ticketOf(JournalRecord booked) {
+        LocalDate dateOfTravel = booked.getFields().size() > 7 && !booked.getField(7).isEmpty()
+                ? LocalDate.parse(booked.getField(7)) : null;
+        return new Ticket(booked.getField(1), booked.getField(0), emptyToNull(booked.getField(5)),
+                emptyToNull(booked.getField(6)), dateOfTravel, booked.getField(2), booked.getInt(3), booked.getInt(4));
+    }
+
+    /**
+     * Looks a ticket up by id for anyone, e.g. for a PNR status check, without scanning users.
+     */
+    public Optional<Ticket> findTicket(String ticketId) {
+        return ownerOfTicket(ticketId).flatMap(owner -> ticketIndex.find(ticketId));
+    }
+
+    /**
+     * The user holding a ticket. A lazily loaded store has only indexed ticket ids in its files, so the
+     * first lookup of such a ticket loads its owner and indexes their current tickets under their stripe.
+     */
+    private Optional<String> ownerOfTicket(String ticketId) {
+        Optional<String> owner = ticketIndex.ownerOf(ticketId);
+        if (owner.isPresent() || lazyShards == null || ticketId == null) {
+            return owner;
+        }
+        for (LazyUserStore store : lazyShards) {
+            Optional<String> fileOwner = store.findTicketOwner(ticketId);
+            if (fileOwner.isPresent()) {
+                Lock userLock = userLocks.get(fileOwner.get());
+                userLock.lock();
+                try {
+                    findUserById(fileOwner.get()).ifPresent(ticketIndex::addAll);
+                } finally {
+                    userLock.unlock();
+                }
+                return ticketIndex.ownerOf(ticketId); // empty if cancelled since the file was written
+            }
+        }
+        return Optional.empty();
+    }
+
     public void fetchBookings() {
         if (user == null) {
             throw new IllegalArgumentException("User object must be provided to fetch bookings.");
         }
-        Optional<User> userFetched = userList.stream().filter(user1 ->
-                user1.getName().equals(user.getName()) && UserServiceUtil.checkPassword(user.getPassword(), user1.getHashedPassword())
-        ).findFirst();
+        Optional<User> userFetched = authenticatedUser();
         if (userFetched.isPresent()) {
             userFetched.get().printTicketsBooked();
         } else {
@@ -113,6 +710,19 @@ public class UserBookingService {
         }
     }
 
+    /**
+     * The tickets of the user this service acts for, or an empty list if the user cannot be authenticated.
+     */
+    public List<Ticket> getBookings() {
+        if (user == null) {
+            throw new IllegalArgumentException("User object must be provided to fetch bookings.");
+        }
+        return authenticatedUser()
+                .map(owner -> owner.getTicketsBooked() == null ? Collections.<Ticket>emptyList()
+                        : Collections.unmodifiableList(new ArrayList<>(owner.getTicketsBooked())))
+                .orElse(Collections.emptyList());
+    }
+
     public boolean cancelBooking(String ticketId) throws IOException { // Added IOException
         if (user == null) {
             throw new IllegalArgumentException("User object must be provided to cancel a booking.");
@@ -121,51 +731,390 @@ public class UserBookingService {
             throw new IllegalArgumentException("Ticket ID cannot be null or empty.");
         }
 
-        Optional<Ticket> ticketToRemove = user.getTicketsBooked().stream()
-                .filter(ticket -> ticket.getTicketId().equals(ticketId))
-                .findFirst();
+        long started = CANCEL_TIMER.start();
+        boolean cancelled = false;
+        try {
+            Optional<User> owner = authenticatedUser();
+            if (!owner.isPresent()) {
+                logger.warning("User " + user.getName() + " could not be authenticated.");
+                return false;
+            }
+            Optional<Ticket> promoted;
+            Lock userLock = userLocks.get(owner.get().getUserId());
+            userLock.lock();
+            try {
+                promoted = cancelTicket(owner.get(), ticketId);
+                cancelled = promoted != null;
+            } finally {
+                userLock.unlock();
+            }
+            if (promoted != null && promoted.isPresent()) {
+                issuePromotedTicket(promoted.get()); // after the canceller's stripe: never hold two user stripes
+            }
+            return cancelled;
+        } finally {
+            CANCEL_TIMER.stop(started, cancelled);
+        }
+    }
 
-        if (ticketToRemove.isPresent()) {
-            user.getTicketsBooked().remove(ticketToRemove.get()); // Remove the ticket
-            saveUserListToFile(); // Persist the change
-            logger.info("Ticket with ID " + ticketId + " has been canceled.");
-            return true;
+    /**
+     * Called with the owner's stripe held. The cancellation is journaled first, then the seat is released
+     * under its coach stripe inside the owner's: user stripe first, then train stripes, never the other
+     * way round. A release that fails leaves the seat booked, never sold to two passengers.
+     *
+     * @return null if the owner has no such ticket; otherwise the ticket for the waitlisted passenger
+     *         the seat went to, if any.
+     */
+    private Optional<Ticket> cancelTicket(User owner, String ticketId) throws IOException {
+        Optional<Ticket> ticketToCancel = ownerOfTicket(ticketId).filter(owner.getUserId()::equals)
+                .flatMap(ownerId -> ticketIndex.find(ticketId));
+
+        if (ticketToCancel.isPresent()) {
+            JournalRecord cancelled = new JournalRecord(JournalRecord.Type.TICKET_CANCELLED, owner.getUserId(), ticketId);
+            journalFor(owner.getUserId()).append(cancelled); // Persist just the change, before the seat goes to anyone else
+            apply(cancelled); // Remove the ticket from the stored user and the index
+            if (user != owner && user.getTicketsBooked() != null) {
+                user.getTicketsBooked().removeIf(ticket -> ticketId.equals(ticket.getTicketId()));
+            }
+            eventLog.log(() -> "Ticket with ID " + ticketId + " has been canceled.");
+            try {
+                return releaseSeatOf(ticketToCancel.get());
+            } catch (IOException | RuntimeException e) {
+                // the cancellation stands; the seat is left booked rather than sold twice
+                logger.log(Level.SEVERE, "Seat of cancelled ticket " + ticketId + " stays booked", e);
+                return Optional.empty();
+            }
         } else {
             logger.warning("No ticket found with ID " + ticketId + " for user " + user.getName());
-            return false;
+            return null;
         }
     }
 
+    /**
+     * Frees the legs a ticket holds and hands the seat to the head of the waitlist if it fits their journey.
+     * Tickets migrated from the embedded-train format have no seat to free.
+     *
+     * @return the ticket for the promoted passenger, not yet recorded.
+     */
+    private Optional<Ticket> releaseSeatOf(Ticket ticket) throws IOException {
+        if (ticket.getRow() == null || ticket.getSeat() == null) {
+            return Optional.empty();
+        }
+        Optional<Train> train = findTrain(ticket);
+        if (!train.isPresent()) {
+            logger.warning("Train " + ticket.getTrainId() + " of ticket " + ticket.getTicketId() + " no longer exists.");
+            return Optional.empty();
+        }
+        long legs = legsFor(train.get(), ticket.getSource(), ticket.getDestination());
+        return trainService().releaseSeatAndPromote(train.get(), ticket.getDateOfTravel(), ticket.getRow(), ticket.getSeat(), legs)
+                .map(entry -> new Ticket(entry.getEntryId(), entry.getUserId(), entry.getSource(), entry.getDestination(),
+                        entry.getDate(), entry.getTrainId(), ticket.getRow(), ticket.getSeat()));
+    }
+
+    /**
+     * Records the ticket of a passenger promoted off the waitlist. The train journal already holds their
+     * seat; if the process dies before this, the seat stays booked without a ticket.
+     */
+    private void issuePromotedTicket(Ticket ticket) throws IOException {
+        Optional<User> passenger = ticket.getUserId() == null ? Optional.empty() : findUserById(ticket.getUserId());
+        if (!passenger.isPresent()) {
+            logger.warning("Waitlisted user " + ticket.getUserId() + " no longer exists; seat of " + ticket.getTicketId() + " stays booked.");
+            return;
+        }
+        Lock userLock = userLocks.get(passenger.get().getUserId());
+        userLock.lock();
+        try {
+            JournalRecord booked = ticketBookedRecord(ticket);
+            journalFor(passenger.get().getUserId()).append(booked);
+            apply(booked);
+        } finally {
+            userLock.unlock();
+        }
+        eventLog.log(() -> "Ticket " + ticket.getTicketId() + " issued to user " + passenger.get().getName() + " off the waitlist");
+    }
+
+    /**
+     * Queues the user this service acts for on a full train without coach details.
+     */
+    public Optional<WaitlistEntry> joinWaitlist(Train train, LocalDate dateOfTravel, String source, String destination) throws IOException {
+        return joinWaitlist(train, dateOfTravel, source, destination, null);
+    }
+
+    /**
+     * Queues the user this service acts for on a full coach type of a train and date, see
+     * {@link TrainService#joinWaitlist(Train, LocalDate, String, String, String, String)}. When a cancellation
+     * frees a seat for them, they get a ticket whose id is the entry id.
+     *
+     * @return the entry, or empty if the user cannot be authenticated.
+     */
+    public Optional<WaitlistEntry> joinWaitlist(Train train, LocalDate dateOfTravel, String source, String destination,
+                                                String coachType) throws IOException {
+        if (user == null) {
+            throw new IllegalArgumentException("User object must be provided to join a waitlist.");
+        }
+        Optional<User> owner = authenticatedUser();
+        if (!owner.isPresent()) {
+            logger.warning("User " + user.getName() + " could not be authenticated.");
+            return Optional.empty();
+        }
+        return Optional.of(trainService().joinWaitlist(train, dateOfTravel, owner.get().getUserId(), source, destination, coachType));
+    }
+
+    /**
+     * @return false if the user has no such waitlist entry.
+     */
+    public boolean leaveWaitlist(String entryId) throws IOException {
+        if (user == null) {
+            throw new IllegalArgumentException("User object must be provided to leave a waitlist.");
+        }
+        Optional<User> owner = authenticatedUser();
+        return owner.isPresent() && trainService().leaveWaitlist(entryId, owner.get().getUserId());
+    }
+
+    /**
+     * Resolves the train a ticket refers to. Every ticket on a train shares the train store's instance.
+     */
+    public Optional<Train> findTrain(Ticket ticket) throws IOException {
+        if (ticket == null) {
+            throw new IllegalArgumentException("Ticket cannot be null.");
+        }
+        return trainService().getTrain(ticket.getTrainId());
+    }
+
+    private TrainService trainService() throws IOException {
+        return trainService != null ? trainService : TrainService.shared();
+    }
+
     public List<Train> getTrains(String source, String destination) throws IOException {
-        TrainService trainService = new TrainService();
-        return trainService.searchTrains(source, destination);
+        return trainService().searchTrains(source, destination);
+    }
+
+    /**
+     * Trains between two stations that run on {@code date}.
+     */
+    public List<Train> getTrains(String source, String destination, LocalDate date) throws IOException {
+        return trainService().searchTrains(source, destination, date);
     }
 
     public List<List<Integer>> fetchSeats(Train train) {
         if (train == null) {
             throw new IllegalArgumentException("Train object cannot be null.");
         }
-        return train.getSeats();
+        return train.getSeats().toMatrix();
+    }
+
+    /**
+     * The seat map of the train leaving on {@code date}; all seats free if nothing was booked on it yet.
+     */
+    public List<List<Integer>> fetchSeats(Train train, LocalDate date) throws IOException {
+        if (train == null) {
+            throw new IllegalArgumentException("Train object cannot be null.");
+        }
+        return trainService().getAvailability(train, date).getSeatMap();
     }
 
     public boolean bookTrainSeat(Train train, int row, int seat) throws IOException {
         if (train == null) {
             throw new IllegalArgumentException("Train object cannot be null.");
         }
-        if (row < 0 || row >= train.getSeats().size() || seat < 0 || seat >= train.getSeats().get(row).size()) {
+        SegmentSeatInventory seats = train.getSeats();
+        if (seats == null || !seats.isValidSeat(row, seat)) {
             throw new IllegalArgumentException("Invalid row or seat index.");
         }
 
-        List<List<Integer>> seats = train.getSeats();  // Get the seats
-        if (seats.get(row).get(seat) == 0) {
-            seats.get(row).set(seat, 1); // Book the seat
-            train.setSeats(seats);       // Set the updated seats back to the train
-            TrainService trainService = new TrainService(); //Use TrainService
-            trainService.updateTrain(train); // Update the train in the "database"
-            return true;
-        } else {
-            return false;
+        List<String> stations = train.getStations();
+        if (stations == null || stations.size() < 2) {
+            return bookAndIssueTicket(train, null, null, null, row, seat, SegmentSeatInventory.ALL_LEGS).isPresent();
         }
+        String origin = stations.get(0);
+        String terminus = stations.get(stations.size() - 1);
+        return bookAndIssueTicket(train, null, origin, terminus, row, seat, legsFor(train, origin, terminus)).isPresent();
+    }
+
+    /**
+     * Books a seat only for the legs between source and destination, leaving the rest of the run free to sell.
+     */
+    public boolean bookTrainSeat(Train train, String source, String destination, int row, int seat) throws IOException {
+        return bookTicket(train, source, destination, row, seat).isPresent();
+    }
+
+    /**
+     * Same as {@link #bookTrainSeat(Train, String, String, int, int)}, but returns the ticket issued.
+     *
+     * @return the ticket, or empty if the seat is taken on any of the legs. Without a user the ticket is not recorded.
+     */
+    public Optional<Ticket> bookTicket(Train train, String source, String destination, int row, int seat) throws IOException {
+        return bookTicket(train, null, source, destination, row, seat);
+    }
+
+    /**
+     * Books a seat on the train leaving its first station on {@code dateOfTravel}; the ticket carries that date.
+     *
+     * @throws IllegalArgumentException if the train does not run that day or it cannot be booked.
+     * @see TrainService#checkBookable
+     */
+    public Optional<Ticket> bookTicket(Train train, LocalDate dateOfTravel, String source, String destination,
+                                       int row, int seat) throws IOException {
+        if (train == null) {
+            throw new IllegalArgumentException("Train object cannot be null.");
+        }
+        SegmentSeatInventory seats = train.getSeats();
+        if (seats == null || !seats.isValidSeat(row, seat)) {
+            throw new IllegalArgumentException("Invalid row or seat index.");
+        }
+        return bookAndIssueTicket(train, dateOfTravel, source, destination, row, seat, legsFor(train, source, destination));
     }
-}
 
+    /**
+     * Books the seat (atomic, journals only this seat) and, if this service was created for a user,
+     * records a ticket that refers to the train by id and the seat by its coordinates.
+     */
+    private Optional<Ticket> bookAndIssueTicket(Train train, LocalDate dateOfTravel, String source, String destination,
+                                                int row, int seat, long legs) throws IOException {
+        long started = BOOK_TIMER.start();
+        boolean booked = false;
+        try {
+            Optional<User> owner = user == null ? Optional.empty() : authenticatedUser();
+            if (user != null && !owner.isPresent()) {
+                logger.warning("User " + user.getName() + " could not be authenticated.");
+                return Optional.empty(); // never sell a seat without a ticket to show for it
+            }
+            if (!trainService().bookSeat(train, dateOfTravel, row, seat, legs)) {
+                return Optional.empty();
+            }
+            Ticket ticket = new Ticket(UUID.randomUUID().toString(), owner.map(User::getUserId).orElse(null), source, destination,
+                    dateOfTravel, train.getTrainId(), row, seat);
+            if (owner.isPresent()) {
+                issueTickets(owner.get(), Collections.singletonList(ticket),
+                        Collections.singletonList(new SeatHold(train, dateOfTravel, row, seat, legs)));
+            }
+            booked = true;
+            return Optional.of(ticket);
+        } finally {
+            BOOK_TIMER.stop(started, booked);
+        }
+    }
+
+    /**
+     * Books {@code groupSize} seats between two stations in one call, all or none, seated as closely as
+     * {@code seating} requires. The seats are journaled together, and so are the tickets.
+     *
+     * @return one ticket per seat, or an empty list if the train cannot seat the group.
+     */
+    public List<Ticket> bookGroup(Train train, String source, String destination, int groupSize, GroupSeating seating) throws IOException {
+        return bookGroup(train, null, source, destination, groupSize, seating);
+    }
+
+    /**
+     * {@link #bookGroup(Train, String, String, int, GroupSeating)} on the train leaving on {@code dateOfTravel}.
+     */
+    public List<Ticket> bookGroup(Train train, LocalDate dateOfTravel, String source, String destination, int groupSize,
+                                  GroupSeating seating) throws IOException {
+        if (train == null) {
+            throw new IllegalArgumentException("Train object cannot be null.");
+        }
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("Group size must be at least 1.");
+        }
+        int[] legs = stationInterval(train, source, destination);
+        long started = GROUP_TIMER.start();
+        List<Ticket> tickets = Collections.emptyList();
+        try {
+            Optional<User> owner = user == null ? Optional.empty() : authenticatedUser();
+            if (user != null && !owner.isPresent()) {
+                logger.warning("User " + user.getName() + " could not be authenticated.");
+                return tickets;
+            }
+            List<SeatHold> holds = trainService().bookGroup(train, dateOfTravel, legs[0], legs[1], groupSize, seating);
+            tickets = new ArrayList<>(holds.size());
+            for (SeatHold hold : holds) {
+                tickets.add(new Ticket(UUID.randomUUID().toString(), owner.map(User::getUserId).orElse(null), source, destination,
+                        dateOfTravel, train.getTrainId(), hold.getRow(), hold.getSeat()));
+            }
+            if (owner.isPresent() && !tickets.isEmpty()) {
+                issueTickets(owner.get(), tickets, holds);
+            }
+            return tickets;
+        } finally {
+            GROUP_TIMER.stop(started, !tickets.isEmpty());
+        }
+    }
+
+    /**
+     * Records tickets for seats already booked in the train journal. The seats and the tickets are
+     * separate frames in separate journals, so if the tickets cannot be recorded the seats are released
+     * again rather than left sold to nobody.
+     */
+    private void issueTickets(User owner, List<Ticket> tickets, List<SeatHold> holds) throws IOException {
+        Lock userLock = userLocks.get(owner.getUserId());
+        userLock.lock();
+        try {
+            recordTickets(owner, tickets);
+        } catch (IOException | RuntimeException e) {
+            releaseUnticketed(holds, e);
+            throw e;
+        } finally {
+            userLock.unlock();
+        }
+        eventLog.log(() -> tickets.size() + " ticket(s) issued to user " + owner.getName());
+    }
+
+    private void releaseUnticketed(List<SeatHold> holds, Exception cause) {
+        for (SeatHold hold : holds) {
+            try {
+                trainService().releaseSeat(hold.getTrain(), hold.getDate(), hold.getRow(), hold.getSeat(), hold.getLegs());
+            } catch (IOException | RuntimeException e) {
+                cause.addSuppressed(e);
+                logger.log(Level.SEVERE, "Seat " + hold.getRow() + "/" + hold.getSeat() + " of train "
+                        + hold.getTrain().getTrainId() + " stays booked without a ticket", e);
+            }
+        }
+    }
+
+    /**
+     * Journals the tickets, then adds them to the owner: a ticket the journal does not hold is never shown.
+     */
+    private void recordTickets(User owner, List<Ticket> tickets) throws IOException {
+        List<JournalRecord> records = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            records.add(ticketBookedRecord(ticket));
+        }
+        journalFor(owner.getUserId()).appendAll(records);
+        records.forEach(this::apply);
+        if (user != owner && user.getTicketsBooked() != null) {
+            user.getTicketsBooked().addAll(tickets);
+        }
+    }
+
+    private static JournalRecord ticketBookedRecord(Ticket ticket) {
+        return new JournalRecord(JournalRecord.Type.TICKET_BOOKED, ticket.getUserId(), ticket.getTicketId(),
+                ticket.getTrainId(), String.valueOf(ticket.getRow()), String.valueOf(ticket.getSeat()),
+                nullToEmpty(ticket.getSource()), nullToEmpty(ticket.getDestination()),
+                ticket.getDateOfTravel() == null ? "" : ticket.getDateOfTravel().toString());
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private long legsFor(Train train, String source, String destination) {
+        if (source == null || destination == null) {
+            return SegmentSeatInventory.ALL_LEGS;
+        }
+        int[] legs = stationInterval(train, source, destination);
+        return SegmentSeatInventory.legMask(legs[0], legs[1]);
+    }
+
+    private int[] stationInterval(Train train, String source, String destination) {
+        int from = train.indexOfStation(source);
+        int to = train.indexOfStation(destination);
+        if (from == -1 || to == -1 || from >= to) {
+            throw new IllegalArgumentException("Train " + train.getTrainId() + " does not run from " + source + " to " + destination + ".");
+        }
+        return new int[]{from, to};
+    }
+}
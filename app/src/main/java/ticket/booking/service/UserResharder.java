@@ -0,0 +1,102 @@
+package ticket.booking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.User;
+import ticket.booking.persistence.BinarySnapshotWriter;
+import ticket.booking.persistence.SnapshotFiles;
+import ticket.booking.persistence.UserShards;
+import ticket.booking.util.JsonUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites a user store into a number of shards, from the single users.json or from another shard count.
+ * <pre>
+ * UserResharder localDb/users.json 8
+ * </pre>
+ * The store is loaded the way the service loads it, journals included, so the new shards start with empty
+ * journals. The old files are kept as {@code users.json.bak} or {@code users.shards.bak}. Run it while
+ * nothing else has the store open: journals stay open for the life of a process.
+ */
+public final class UserResharder {
+
+    private UserResharder() {
+        // Command-line entry point only.
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: UserResharder <users.json> <shards>");
+            System.exit(2);
+            return;
+        }
+        long start = System.nanoTime();
+        int users = reshard(JsonUtil.newObjectMapper(), args[0], Integer.parseInt(args[1]));
+        System.out.printf("Wrote %d users into %s shards under %s in %d ms%n", users, args[1],
+                UserShards.directoryFor(args[0]), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return the number of users written.
+     */
+    public static int reshard(ObjectMapper objectMapper, String userFilePath, int shards) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("A user store needs at least one shard.");
+        }
+        UserBookingService service = new UserBookingService(null, objectMapper, userFilePath, false);
+        List<List<User>> usersByShard = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            usersByShard.add(new ArrayList<>());
+        }
+        int users = 0;
+        for (User stored : service.allUsers()) {
+            usersByShard.get(UserShards.shardOf(stored.getUserId(), shards)).add(stored);
+            users++;
+        }
+
+        Path directory = UserShards.directoryFor(userFilePath);
+        Path staging = Paths.get(directory + ".tmp");
+        deleteRecursively(staging);
+        Files.createDirectories(staging);
+        for (int shard = 0; shard < shards; shard++) {
+            SnapshotFiles.writeJsonAtomically(objectMapper, UserShards.shardPath(staging, shard).toString(), usersByShard.get(shard));
+        }
+
+        try {
+            if (Files.isDirectory(directory)) {
+                Path backup = Paths.get(directory + ".bak");
+                deleteRecursively(backup);
+                Files.move(directory, backup, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.move(Paths.get(userFilePath), Paths.get(userFilePath + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+                String journal = userFilePath.replaceFirst("\\.json$", "") + ".journal";
+                Files.deleteIfExists(Paths.get(journal));
+                Files.deleteIfExists(Paths.get(journal + ".old"));
+                Files.deleteIfExists(BinarySnapshotWriter.binaryPathFor(userFilePath));
+            }
+            Files.move(staging, directory, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IOException("Failed to replace user store " + userFilePath + " with " + shards + " shards.", e);
+        }
+        return users;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
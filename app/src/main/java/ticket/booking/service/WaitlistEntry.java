@@ -0,0 +1,118 @@
+package ticket.booking.service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A request for a seat on a full train, queued until a cancellation frees one. When it is promoted,
+ * the ticket issued carries the entry id as its ticket id.
+ */
+public final class WaitlistEntry {
+
+    private final String entryId;
+    private final String userId;
+    private final String trainId;
+    private final LocalDate date;
+    private final String source;
+    private final String destination;
+    private final long legs;
+    private final String coachType;
+
+    /**
+     * An entry on a train without coach details.
+     */
+    public WaitlistEntry(String entryId, String userId, String trainId, LocalDate date, String source, String destination, long legs) {
+        this(entryId, userId, trainId, date, source, destination, legs, null);
+    }
+
+    /**
+     * @param date      date the train leaves its first station, or null to wait on the train's undated seat map.
+     * @param legs      leg mask of the journey, see {@link ticket.booking.inventory.SegmentSeatInventory#legMask}.
+     * @param coachType coach type waited for, as listed in the train's coach details; null for a train without any.
+     */
+    public WaitlistEntry(String entryId, String userId, String trainId, LocalDate date, String source, String destination,
+                         long legs, String coachType) {
+        if (entryId == null || trainId == null) {
+            throw new IllegalArgumentException("Waitlist entries need an id and a train.");
+        }
+        this.entryId = entryId;
+        this.userId = userId;
+        this.trainId = trainId;
+        this.date = date;
+        this.source = source;
+        this.destination = destination;
+        this.legs = legs;
+        this.coachType = coachType;
+    }
+
+    public String getEntryId() {
+        return entryId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getTrainId() {
+        return trainId;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public long getLegs() {
+        return legs;
+    }
+
+    public String getCoachType() {
+        return coachType;
+    }
+
+    /**
+     * The entry as strings, the way journal records and the waitlist snapshot store it. The coach type
+     * comes last, so entries stored before there was one read back without it.
+     */
+    List<String> toFields() {
+        return Arrays.asList(entryId, nullToEmpty(userId), trainId, date == null ? "" : date.toString(),
+                nullToEmpty(source), nullToEmpty(destination), Long.toHexString(legs), nullToEmpty(coachType));
+    }
+
+    static WaitlistEntry fromFields(List<String> fields) {
+        return new WaitlistEntry(fields.get(0), emptyToNull(fields.get(1)), fields.get(2),
+                fields.get(3).isEmpty() ? null : LocalDate.parse(fields.get(3)), emptyToNull(fields.get(4)),
+                emptyToNull(fields.get(5)), Long.parseUnsignedLong(fields.get(6), 16),
+                fields.size() > 7 ? emptyToNull(fields.get(7)) : null);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public String toString() {
+        return "WaitlistEntry{" +
+                "entryId='" + entryId + '\'' +
+                ", userId='" + userId + '\'' +
+                ", trainId='" + trainId + '\'' +
+                ", date=" + date +
+                ", source='" + source + '\'' +
+                ", destination='" + destination + '\'' +
+                ", legs=" + Long.toHexString(legs) +
+                ", coachType='" + coachType + '\'' +
+                '}';
+    }
+}
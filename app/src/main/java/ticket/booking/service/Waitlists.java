@@ -0,0 +1,141 @@
+package ticket.booking.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * First-come first-served waitlists, one per train, date of travel and coach type.
+ * <p>
+ * Each queue is an insertion-ordered map guarded by its own monitor, so queues never contend
+ * with each other, and joining, leaving and promoting the head are all O(1) however long the queue is.
+ * Promotion looks at the head only: a seat freed on legs the head does not travel goes back on sale
+ * rather than to someone further back.
+ */
+final class Waitlists {
+
+    private final ConcurrentMap<String, LinkedHashMap<String, WaitlistEntry>> queues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> queueOfEntry = new ConcurrentHashMap<>();
+
+    /**
+     * @param coachType null for a train without coach details.
+     */
+    static String queueKey(String trainKey, LocalDate date, String coachType) {
+        return trainKey + '#' + date + '#' + (coachType == null ? "" : coachType.toLowerCase());
+    }
+
+    private static String queueKey(WaitlistEntry entry) {
+        return queueKey(StationIndex.key(entry.getTrainId()), entry.getDate(), entry.getCoachType());
+    }
+
+    /**
+     * Adds an entry at the back of its queue. Adding an entry that is already queued changes nothing.
+     */
+    void add(WaitlistEntry entry) {
+        String key = queueKey(entry);
+        LinkedHashMap<String, WaitlistEntry> queue = queues.computeIfAbsent(key, k -> new LinkedHashMap<>());
+        synchronized (queue) {
+            if (queue.putIfAbsent(entry.getEntryId(), entry) == null) {
+                queueOfEntry.put(entry.getEntryId(), key);
+            }
+        }
+    }
+
+    Optional<WaitlistEntry> find(String entryId) {
+        String key = queueOfEntry.get(entryId);
+        LinkedHashMap<String, WaitlistEntry> queue = key == null ? null : queues.get(key);
+        if (queue == null) {
+            return Optional.empty();
+        }
+        synchronized (queue) {
+            return Optional.ofNullable(queue.get(entryId));
+        }
+    }
+
+    Optional<WaitlistEntry> remove(String entryId) {
+        String key = queueOfEntry.remove(entryId);
+        LinkedHashMap<String, WaitlistEntry> queue = key == null ? null : queues.get(key);
+        if (queue == null) {
+            return Optional.empty();
+        }
+        synchronized (queue) {
+            return Optional.ofNullable(queue.remove(entryId));
+        }
+    }
+
+    /**
+     * Removes and returns the head of a queue if {@code seat} accepts it. {@code seat} runs under the
+     * queue's monitor, so two cancellations in one queue never offer the same head two seats.
+     */
+    Optional<WaitlistEntry> promoteHead(String trainKey, LocalDate date, String coachType, Predicate<WaitlistEntry> seat) {
+        LinkedHashMap<String, WaitlistEntry> queue = queues.get(queueKey(trainKey, date, coachType));
+        if (queue == null) {
+            return Optional.empty();
+        }
+        synchronized (queue) {
+            Iterator<WaitlistEntry> entries = queue.values().iterator();
+            if (!entries.hasNext()) {
+                return Optional.empty();
+            }
+            WaitlistEntry head = entries.next();
+            if (!seat.test(head)) {
+                return Optional.empty();
+            }
+            entries.remove();
+            queueOfEntry.remove(head.getEntryId());
+            return Optional.of(head);
+        }
+    }
+
+    /**
+     * Puts an entry taken by {@link #promoteHead} back at the head of its queue, for a promotion that could
+     * not be journaled. Costs a pass over the queue, which only a failed write pays.
+     */
+    void restoreHead(WaitlistEntry entry) {
+        String key = queueKey(entry);
+        LinkedHashMap<String, WaitlistEntry> queue = queues.computeIfAbsent(key, k -> new LinkedHashMap<>());
+        synchronized (queue) {
+            LinkedHashMap<String, WaitlistEntry> behind = new LinkedHashMap<>(queue);
+            queue.clear();
+            queue.put(entry.getEntryId(), entry);
+            queue.putAll(behind);
+            queueOfEntry.put(entry.getEntryId(), key);
+        }
+    }
+
+    /**
+     * The queue for a train, date and coach type, head first.
+     */
+    List<WaitlistEntry> entries(String trainKey, LocalDate date, String coachType) {
+        LinkedHashMap<String, WaitlistEntry> queue = queues.get(queueKey(trainKey, date, coachType));
+        if (queue == null) {
+            return new ArrayList<>();
+        }
+        synchronized (queue) {
+            return new ArrayList<>(queue.values());
+        }
+    }
+
+    /**
+     * Every queued entry, each queue head first.
+     */
+    List<WaitlistEntry> all() {
+        List<WaitlistEntry> all = new ArrayList<>();
+        for (LinkedHashMap<String, WaitlistEntry> queue : queues.values()) {
+            synchronized (queue) {
+                all.addAll(queue.values());
+            }
+        }
+        return all;
+    }
+
+    int size() {
+        return queueOfEntry.size();
+    }
+}
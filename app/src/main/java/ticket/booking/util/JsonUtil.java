@@ -0,0 +1,22 @@
+package ticket.booking.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+public class JsonUtil {
+
+    private JsonUtil() {
+        // Private constructor to prevent instantiation.  This is a utility class.
+    }
+
+    /**
+     * ObjectMapper configured for the local JSON database: java.time support, with dates written as
+     * "2023-12-08" the way users.json stores date_of_travel.
+     */
+    public static ObjectMapper newObjectMapper() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
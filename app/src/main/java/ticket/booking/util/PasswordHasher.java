@@ -0,0 +1,191 @@
+package ticket.booking.util;
+
+import ticket.booking.metrics.Metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs BCrypt off the request threads on a small dedicated pool.
+ * <p>
+ * BCrypt is deliberately CPU bound, so a burst of signups or logins would otherwise take every core.
+ * The pool has a fixed number of threads and a bounded queue; work beyond {@code maxQueued} is
+ * rejected with {@link RejectedExecutionException} instead of queueing without limit. Interactive
+ * work (a user waiting on a login) is taken before background work such as hash upgrades.
+ * <p>
+ * New hashes use the configured cost. {@link #needsRehash} tells callers when a stored hash is
+ * weaker than that, so hashes can be upgraded one successful login at a time.
+ */
+public class PasswordHasher {
+
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    public static final int DEFAULT_COST = 10;
+
+    private static PasswordHasher shared;
+
+    private final ThreadPoolExecutor executor;
+    private final int cost;
+    private final int maxQueued;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public PasswordHasher(int threads, int maxQueued, int cost) {
+        if (threads < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Hasher needs at least one thread and a non-negative queue limit.");
+        }
+        if (cost < 4 || cost > 31) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 31.");
+        }
+        this.cost = cost;
+        this.maxQueued = maxQueued;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "password-hasher-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The process-wide hasher: half the cores, 1000 queued requests, and the cost from the
+     * {@code booking.bcrypt.cost} system property (default {@value #DEFAULT_COST}). Its queue depth is
+     * published as the {@code passwords.queueDepth} gauge.
+     */
+    public static synchronized PasswordHasher shared() {
+        if (shared == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            shared = new PasswordHasher(threads, 1000, Integer.getInteger("booking.bcrypt.cost", DEFAULT_COST));
+            Metrics.shared().gauge("passwords.queueDepth", shared::getQueueDepth);
+            Metrics.shared().gauge("passwords.rejected", shared::getRejectedCount);
+        }
+        return shared;
+    }
+
+    public CompletableFuture<String> hash(String plainPassword, Priority priority) {
+        return submit(priority, () -> UserServiceUtil.hashPassword(plainPassword, cost));
+    }
+
+    public CompletableFuture<Boolean> verify(String plainPassword, String hashedPassword, Priority priority) {
+        return submit(priority, () -> UserServiceUtil.checkPassword(plainPassword, hashedPassword));
+    }
+
+    /**
+     * True if the hash was made with a lower cost than this hasher uses, or is not a BCrypt hash at all.
+     */
+    public boolean needsRehash(String hashedPassword) {
+        return UserServiceUtil.costOf(hashedPassword) < cost;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Mean time from submission to completion, queueing included.
+     */
+    public long getAverageLatencyMicros() {
+        long count = completed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.sum() / count);
+    }
+
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private <T> CompletableFuture<T> submit(Priority priority, Supplier<T> work) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Password hashing queue is full (" + maxQueued + " requests).");
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long submittedAt = System.nanoTime();
+        try {
+            executor.execute(new Task(priority, sequence.getAndIncrement(), () -> {
+                queued.decrementAndGet();
+                T result;
+                try {
+                    result = work.get();
+                } catch (RuntimeException e) {
+                    recordLatency(System.nanoTime() - submittedAt);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                recordLatency(System.nanoTime() - submittedAt); // before completing, so callers see it counted
+                future.complete(result);
+            }));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+        return future;
+    }
+
+    private void recordLatency(long nanos) {
+        completed.increment();
+        totalLatencyNanos.add(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Queue entry ordered by priority, then by arrival.
+     */
+    private static final class Task implements Runnable, Comparable<Task> {
+        private final Priority priority;
+        private final long sequence;
+        private final Runnable body;
+
+        private Task(Priority priority, long sequence, Runnable body) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -12,8 +12,37 @@ public class UserServiceUtil {
         return BCrypt.hashpw(plainPassword, BCrypt.gensalt());
     }
 
+    public static String hashPassword(String plainPassword, int cost) {
+        return BCrypt.hashpw(plainPassword, BCrypt.gensalt(cost));
+    }
+
+    /**
+     * Returns the cost factor of a BCrypt hash such as {@code $2a$10$...}, or 0 if it is not one.
+     */
+    public static int costOf(String hashedPassword) {
+        if (hashedPassword == null || !hashedPassword.startsWith("$2")) {
+            return 0;
+        }
+        int costStart = hashedPassword.indexOf('$', 1) + 1;
+        if (costStart == 0 || costStart + 2 > hashedPassword.length()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(hashedPassword.substring(costStart, costStart + 2));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public static boolean checkPassword(String plainPassword, String hashedPassword) {
-        return BCrypt.checkpw(plainPassword, hashedPassword);
+        if (plainPassword == null || hashedPassword == null) {
+            return false;
+        }
+        try {
+            return BCrypt.checkpw(plainPassword, hashedPassword);
+        } catch (IllegalArgumentException e) {
+            return false; // Not a BCrypt hash, e.g. a placeholder in seed data.
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,80 @@
+package ticket.booking.inventory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SeatInventoryTest {
+
+    @Test public void booksEachSeatOnlyOnce() {
+        SeatInventory inventory = new SeatInventory(2, 72);
+        assertTrue(inventory.tryBook(1, 70));
+        assertFalse(inventory.tryBook(1, 70));
+        assertTrue(inventory.isBooked(1, 70));
+        assertTrue(inventory.release(1, 70));
+        assertFalse(inventory.release(1, 70));
+        assertEquals(144, inventory.freeCount());
+    }
+
+    @Test public void findsFirstFreeSeatAcrossWordsAndRows() {
+        SeatInventory inventory = new SeatInventory(2, 70);
+        for (int seat = 0; seat < 70; seat++) {
+            inventory.tryBook(0, seat);
+        }
+        inventory.tryBook(1, 0);
+        assertEquals(-1, inventory.firstFreeInRow(0));
+        assertEquals(1, inventory.firstFreeInRow(1));
+        assertEquals(71, inventory.firstFree());
+        assertEquals(69, inventory.freeCount());
+        assertEquals(0, inventory.freeCountInRow(0));
+    }
+
+    @Test public void concurrentBookersNeverShareASeat() throws Exception {
+        SeatInventory inventory = new SeatInventory(4, 72);
+        int threads = 8;
+        AtomicInteger wins = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int row = 0; row < 4; row++) {
+                    for (int seat = 0; seat < 72; seat++) {
+                        if (inventory.tryBook(row, seat)) {
+                            wins.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(4 * 72, wins.get());
+        assertEquals(0, inventory.freeCount());
+    }
+
+    @Test public void roundTripsAsLegacyMatrix() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<List<Integer>> matrix = Arrays.asList(Arrays.asList(0, 1, 0), Arrays.asList(1, 0, 0));
+        SeatInventory inventory = mapper.readValue(mapper.writeValueAsString(matrix), SeatInventory.class);
+        assertTrue(inventory.isBooked(0, 1));
+        assertTrue(inventory.isBooked(1, 0));
+        assertEquals(4, inventory.freeCount());
+        assertEquals("[[0,1,0],[1,0,0]]", mapper.writeValueAsString(inventory));
+    }
+}
@@ -0,0 +1,99 @@
+package ticket.booking.inventory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SegmentSeatInventoryTest {
+
+    @Test public void sellsOneSeatOnNonOverlappingLegs() {
+        SegmentSeatInventory inventory = new SegmentSeatInventory(1, 4);
+        assertTrue(inventory.tryBook(0, 0, 0, 1));
+        assertTrue(inventory.tryBook(0, 0, 1, 3));
+        assertFalse(inventory.tryBook(0, 0, 2, 3));
+        assertTrue(inventory.isFree(0, 0, 3, 4));
+        assertFalse(inventory.tryBook(0, 0));
+        assertEquals(3, inventory.freeCount(0, 2));
+        assertEquals(4, inventory.freeCount(3, 4));
+    }
+
+    @Test public void releasesOnlyWhatWasBooked() {
+        SegmentSeatInventory inventory = new SegmentSeatInventory(1, 2);
+        assertTrue(inventory.tryBook(0, 1, 0, 2));
+        assertFalse(inventory.release(0, 1, 0, 3));
+        assertTrue(inventory.release(0, 1, 0, 2));
+        assertFalse(inventory.isBooked(0, 1));
+        assertEquals(2, inventory.freeCount());
+    }
+
+    @Test public void countersFollowEveryKindOfChange() {
+        SegmentSeatInventory inventory = new SegmentSeatInventory(2, 3);
+        assertTrue(inventory.tryBook(0, 0, 0, 2));
+        assertTrue(inventory.tryBook(0, 0, 2, 3));
+        inventory.markBooked(1, 2, SegmentSeatInventory.legMask(1, 2));
+        inventory.markBooked(1, 2, SegmentSeatInventory.legMask(1, 2)); // replayed twice, counted once
+        inventory.restoreLegMask(0, 1, SegmentSeatInventory.ALL_LEGS);
+        assertTrue(inventory.release(0, 0, 0, 2));
+        inventory.markReleased(1, 2, SegmentSeatInventory.ALL_LEGS);
+
+        for (int leg = 0; leg < 4; leg++) {
+            int scanned = 0;
+            for (int row = 0; row < 2; row++) {
+                for (int seat = 0; seat < 3; seat++) {
+                    scanned += inventory.isFree(row, seat, leg, leg + 1) ? 1 : 0;
+                }
+            }
+            assertEquals(scanned, inventory.freeSeatsOnLeg(leg));
+        }
+        assertEquals(4, inventory.freeSeatsOnLeg(2));
+        assertEquals(4, inventory.freeCount());
+        assertEquals(2, inventory.freeSeatsOnLeg(0, 0, 1));
+        assertEquals(3, inventory.freeSeatsOnLeg(1, 1, 2));
+        assertEquals(inventory.freeSeatsOnLeg(3), inventory.freeSeatsOnLeg(3, 0, 2));
+    }
+
+    @Test public void prefersFillingGapsInPartlySoldSeats() {
+        SegmentSeatInventory inventory = new SegmentSeatInventory(2, 3);
+        inventory.tryBook(0, 0);
+        inventory.tryBook(1, 2, 0, 2);
+        assertEquals(3 + 2, inventory.findFreeSeat(2, 4));
+        assertEquals(1, inventory.findFreeSeat(0, 1));
+        assertEquals(1, inventory.findFreeSeatInRow(0, 1, 3));
+    }
+
+    @Test public void writesPartialBookingsAsStationRanges() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        SegmentSeatInventory inventory = mapper.readValue("[[0,1,\"0-1,2-4\"]]", SegmentSeatInventory.class);
+        assertTrue(inventory.isBooked(0, 1));
+        assertFalse(inventory.isFree(0, 2, 3, 4));
+        assertTrue(inventory.isFree(0, 2, 1, 2));
+        assertEquals("[[0,1,\"0-1,2-4\"]]", mapper.writeValueAsString(inventory));
+    }
+
+    @Test public void seatsGroupsInTheTightestRunThatFits() {
+        SegmentSeatInventory inventory = new SegmentSeatInventory(3, 6);
+        for (int seat : new int[]{1, 4}) {
+            inventory.tryBook(0, seat);            // row 0 runs: 1, 2, 1
+        }
+        for (int seat : new int[]{0, 1}) {
+            inventory.tryBook(1, seat);            // row 1 runs: 4
+        }
+        assertArrayEquals(new int[]{2, 3}, inventory.findGroup(0, 2, 2, GroupSeating.ADJACENT));
+        assertArrayEquals(new int[]{8, 9, 10}, inventory.findGroup(0, 2, 3, GroupSeating.ADJACENT));
+        assertArrayEquals(new int[]{12, 13, 14, 15, 16}, inventory.findGroup(0, 2, 5, GroupSeating.ADJACENT));
+    }
+
+    @Test public void fallsBackToOneCoachThenAnySeats() {
+        SegmentSeatInventory inventory = new SegmentSeatInventory(2, 4);
+        inventory.tryBook(0, 1);
+        inventory.tryBook(1, 0);
+        inventory.tryBook(1, 2, 0, 1);             // free from station 1 onwards
+        assertEquals(0, inventory.findGroup(0, 3, 3, GroupSeating.ADJACENT).length);
+        assertArrayEquals(new int[]{0, 2, 3}, inventory.findGroup(0, 3, 3, GroupSeating.SAME_COACH));
+        assertArrayEquals(new int[]{5, 6, 7}, inventory.findGroup(1, 3, 3, GroupSeating.ADJACENT));
+        assertEquals(0, inventory.findGroup(0, 3, 5, GroupSeating.SAME_COACH).length);
+        assertArrayEquals(new int[]{0, 2, 3, 5, 7}, inventory.findGroup(0, 3, 5, GroupSeating.ANY));
+        assertEquals(0, inventory.findGroup(0, 3, 9, GroupSeating.ANY).length); // more than the train holds
+    }
+}
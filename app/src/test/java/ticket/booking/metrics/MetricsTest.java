@@ -0,0 +1,86 @@
+package ticket.booking.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test public void histogramPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.percentileMicros(0.5), 500 * 0.04);
+        assertEquals(990, histogram.percentileMicros(0.99), 990 * 0.04);
+        assertEquals(1000, histogram.percentileMicros(1.0));
+        assertEquals(1000, histogram.getMaxMicros());
+        assertEquals(0, new LatencyHistogram().percentileMicros(0.99));
+    }
+
+    @Test public void bucketsCoverEveryValueInOrder() {
+        long previous = -1;
+        for (long value : new long[]{0, 1, 63, 64, 65, 1_000, 1_000_000, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(index));
+            assertTrue(index >= previous);
+            previous = index;
+        }
+    }
+
+    @Test public void snapshotFlattensTimersAndGauges() {
+        Metrics metrics = new Metrics();
+        OperationTimer timer = metrics.timer("op");
+        timer.stop(timer.start(), true);
+        timer.stop(timer.start(), false);
+        metrics.counter("hits").add(3);
+        metrics.gauge("depth", () -> 7);
+        metrics.gaugeFamily("occupancy", () -> Collections.singletonMap("t1", 40L));
+
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(2L, (long) snapshot.get("op.calls"));
+        assertEquals(1L, (long) snapshot.get("op.failures"));
+        assertTrue(snapshot.containsKey("op.p999_us"));
+        assertEquals(3L, (long) snapshot.get("hits"));
+        assertEquals(7L, (long) snapshot.get("depth"));
+        assertEquals(40L, (long) snapshot.get("occupancy[t1]"));
+    }
+
+    @Test public void servesPlainTextAndJmx() throws Exception {
+        Metrics.shared().gauge("test.answer", () -> 42);
+        try (MetricsEndpoint endpoint = MetricsEndpoint.start(Metrics.shared(), 0)) {
+            HttpURLConnection connection = (HttpURLConnection) URI.create("http://127.0.0.1:" + endpoint.getPort() + "/metrics").toURL().openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(read(connection.getInputStream()).contains("test.answer 42\n"));
+        }
+
+        Metrics.shared().registerMBean();
+        Metrics.shared().registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(42L, server.getAttribute(new ObjectName(Metrics.OBJECT_NAME), "test.answer"));
+    }
+
+    private static String read(InputStream in) throws Exception {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = stream.read(buffer)) > 0; ) {
+                bytes.write(buffer, 0, n);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
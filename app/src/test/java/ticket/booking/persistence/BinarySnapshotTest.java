@@ -0,0 +1,107 @@
+package ticket.booking.persistence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.CoachDetail;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BinarySnapshotTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void trainsRoundTripWithTheirLegBookings() throws Exception {
+        Map<String, String> times = new LinkedHashMap<>();
+        times.put("pune", "14:30:00");
+        times.put("goa", "01:00:00");
+        SegmentSeatInventory seats = new SegmentSeatInventory(2, 3);
+        seats.tryBook(0, 1);
+        seats.tryBook(1, 2, 0, 1);
+        Train train = new Train("t108", "22345", seats, times, Arrays.asList("pune", "mumbai", "goa"), Arrays.asList("MON", "fri"),
+                Arrays.asList(new CoachDetail("AC2", 1), new CoachDetail("SL", 4)));
+        Path path = folder.getRoot().toPath().resolve("trains.bin");
+        BinarySnapshotWriter.writeTrains(Arrays.asList(train, new Train("t2", null, null, null, null)), path);
+
+        try (MappedTrainSnapshot snapshot = new MappedTrainSnapshot(path)) {
+            assertEquals(2, snapshot.size());
+            MappedTrainSnapshot.TrainRecord record = snapshot.find("T108").get();
+            assertEquals("22345", record.getTrainNo());
+            assertEquals(Arrays.asList("pune", "mumbai", "goa"), record.getStations());
+            assertEquals(times, record.getStationTimes());
+            assertEquals(SegmentSeatInventory.legMask(0, 1), record.getLegMask(1, 2));
+
+            Train loaded = snapshot.readAll().get(0);
+            assertEquals(Arrays.asList("MON", "FRI"), loaded.getDaysOfOperation());
+            assertNull(snapshot.readAll().get(1).getDaysOfOperation());
+            assertEquals(Arrays.asList("AC2", "SL"), loaded.coachTypes());
+            assertEquals(4, loaded.getCoachDetails().get(1).getCoaches());
+            assertNull(snapshot.readAll().get(1).getCoachDetails());
+            assertTrue(loaded.getSeats().isBooked(0, 1));
+            assertTrue(loaded.getSeats().isFree(1, 2, 1, 2));
+            assertFalse(loaded.getSeats().isFree(1, 2, 0, 1));
+            assertFalse(snapshot.find("t999").isPresent());
+        }
+    }
+
+    @Test public void trainSeatsDecodeOnFirstAccessAfterTheSnapshotIsClosed() throws Exception {
+        SegmentSeatInventory seats = new SegmentSeatInventory(2, 2);
+        seats.markBooked(1, 1, SegmentSeatInventory.legMask(0, 1));
+        Path path = folder.getRoot().toPath().resolve("trains.bin");
+        BinarySnapshotWriter.writeTrains(Collections.singletonList(new Train("t1", "1", seats, new LinkedHashMap<>(), Arrays.asList("a", "b"))), path);
+
+        List<Train> loaded;
+        try (MappedTrainSnapshot snapshot = new MappedTrainSnapshot(path)) {
+            loaded = snapshot.readAll();
+        }
+        BinarySnapshotWriter.writeTrains(Collections.emptyList(), path);
+
+        Train train = loaded.get(0);
+        assertEquals(new Train("t1", null, null, null, null), train);
+        assertTrue(train.getSeats().isBooked(1, 1));
+        assertSame(train.getSeats(), train.getSeats());
+        assertEquals(new ObjectMapper().writeValueAsString(new Train("t1", "1", seats, new LinkedHashMap<>(), Arrays.asList("a", "b"))),
+                new ObjectMapper().writeValueAsString(train));
+        SegmentSeatInventory replaced = new SegmentSeatInventory(1, 1);
+        train.setSeats(replaced);
+        assertSame(replaced, train.getSeats());
+    }
+
+    @Test public void usersDecodeTicketsOnlyWhenTouched() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Ticket ticket = new Ticket("ticket1", "u1", "pune", "goa", null, "t1", 0, 3);
+        List<User> users = Arrays.asList(
+                new User("Asha", null, "$2a$10$hash", new ArrayList<>(Collections.singletonList(ticket)), "u1"),
+                new User("Ravi", null, null, null, "u2"));
+        Path path = folder.getRoot().toPath().resolve("users.bin");
+        BinarySnapshotWriter.writeUsers(mapper, users, path);
+
+        try (MappedUserSnapshot snapshot = new MappedUserSnapshot(path, mapper)) {
+            List<User> loaded = snapshot.readAll();
+            assertEquals("$2a$10$hash", loaded.get(0).getHashedPassword());
+            LazyList<Ticket> tickets = (LazyList<Ticket>) loaded.get(0).getTicketsBooked();
+            assertFalse(tickets.isLoaded());
+            assertEquals("ticket1", tickets.get(0).getTicketId());
+            assertTrue(loaded.get(1).getTicketsBooked().isEmpty());
+        }
+    }
+
+    @Test(expected = java.io.IOException.class) public void rejectsFilesOfTheWrongKind() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("users.bin");
+        BinarySnapshotWriter.writeUsers(new ObjectMapper(), Collections.<User>emptyList(), path);
+        new MappedTrainSnapshot(path);
+    }
+}
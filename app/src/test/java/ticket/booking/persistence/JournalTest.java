@@ -0,0 +1,121 @@
+package ticket.booking.persistence;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JournalTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void replaysAppendedRecordsInOrder() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("users.journal");
+        Journal journal = new Journal(path);
+        journal.append(new JournalRecord(JournalRecord.Type.USER_SIGNUP, "u1", "Asha", "hash"));
+        journal.append(new JournalRecord(JournalRecord.Type.TICKET_CANCELLED, "u1", "ticket1"));
+
+        List<JournalRecord> replayed = new ArrayList<>();
+        assertEquals(2, new Journal(path).replay(replayed::add));
+        assertEquals(JournalRecord.Type.USER_SIGNUP, replayed.get(0).getType());
+        assertEquals("Asha", replayed.get(0).getField(1));
+        assertEquals("ticket1", replayed.get(1).getField(1));
+    }
+
+    @Test public void batchesAreReplayedWholeOrNotAtAll() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("trains.journal");
+        Journal journal = new Journal(path);
+        journal.appendAll(Arrays.asList(
+                new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "0", "1", "1"),
+                new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "0", "2", "1")));
+        assertEquals(2, journal.getPendingRecords());
+        long intact = Files.size(path);
+        journal.appendAll(Arrays.asList(
+                new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "1", "1", "1"),
+                new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "1", "2", "1")));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        List<JournalRecord> replayed = new ArrayList<>();
+        assertEquals(2, new Journal(path).replay(replayed::add));
+        assertEquals("2", replayed.get(1).getField(2));
+        assertEquals(intact, Files.size(path));
+    }
+
+    @Test public void concurrentAppendsShareCommits() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("trains.journal");
+        Journal journal = new Journal(path);
+        journal.setGroupCommit(64, 20, TimeUnit.MILLISECONDS);
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> appends = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String seat = String.valueOf(i);
+            appends.add(pool.submit(() -> {
+                start.await();
+                journal.append(new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "0", seat, "1"));
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> append : appends) {
+            append.get(); // returns only once durable
+        }
+        pool.shutdown();
+
+        assertEquals(threads, journal.getPendingRecords());
+        assertTrue(journal.getCommittedBatches() < threads);
+        assertTrue(journal.getMaxBatchSize() > 1);
+        assertEquals(threads, new Journal(path).replay(record -> { }));
+    }
+
+    @Test public void dropsATornTail() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("trains.journal");
+        Journal journal = new Journal(path);
+        journal.append(new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "0", "1", "ffffffffffffffff"));
+        long intact = Files.size(path);
+        journal.append(new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "0", "2", "ffffffffffffffff"));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        List<JournalRecord> replayed = new ArrayList<>();
+        assertEquals(1, new Journal(path).replay(replayed::add));
+        assertEquals("1", replayed.get(0).getField(2));
+        assertEquals(intact, Files.size(path));
+    }
+
+    @Test public void compactionHandsRotatedRecordsToTheSnapshotWriter() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("trains.journal");
+        Journal journal = new Journal(path);
+        journal.append(new JournalRecord(JournalRecord.Type.SEAT_BOOKED, "t1", "0", "1", "1"));
+
+        List<JournalRecord> folded = new ArrayList<>();
+        journal.compact(() -> {
+            journal.append(new JournalRecord(JournalRecord.Type.SEAT_RELEASED, "t1", "0", "1", "1"));
+            journal.replayRotated(folded::add);
+        });
+
+        assertEquals(1, folded.size());
+        assertEquals(JournalRecord.Type.SEAT_BOOKED, folded.get(0).getType());
+        List<JournalRecord> remaining = new ArrayList<>();
+        new Journal(path).replay(remaining::add);
+        assertEquals(1, remaining.size());
+        assertEquals(JournalRecord.Type.SEAT_RELEASED, remaining.get(0).getType());
+    }
+}
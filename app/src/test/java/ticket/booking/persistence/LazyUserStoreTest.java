@@ -0,0 +1,85 @@
+package ticket.booking.persistence;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.User;
+import ticket.booking.util.JsonUtil;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class LazyUserStoreTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String USERS = "[\n" +
+            "  {\"user_id\": \"abcdef\", \"name\": \"Arpreet Mahala\", \"tickets_booked\": [\n" +
+            "    {\"ticket_id\": \"ticket101\", \"source\": \"Bangalore\", \"destination\": \"Delhi\", \"date_of_travel\": \"2023-12-08\",\n" +
+            "     \"train\": {\"train_id\": \"t101\", \"seats\": [[0, 1], [1, 0]], \"stations\": [\"bangalore\", \"delhi\"]}}]},\n" +
+            "  {\"name\": \"Rahul Verma\", \"user_id\": \"lmnopq\", \"tickets_booked\": []},\n" +
+            "  {\"user_id\": \"zzz\", \"name\": \"Rahul Verma\"}\n" +
+            "]";
+
+    @Test public void indexesUsersWithoutParsingTheirTickets() throws Exception {
+        File file = folder.newFile("users.json");
+        Files.write(file.toPath(), USERS.getBytes(StandardCharsets.UTF_8));
+
+        try (LazyUserStore store = new LazyUserStore(file.toPath(), JsonUtil.newObjectMapper(), 1)) {
+            assertEquals(3, store.size());
+            assertEquals(0, store.getCachedUserCount());
+
+            User user = store.findById("abcdef").get();
+            assertEquals(LocalDate.of(2023, 12, 8), user.getTicketsBooked().get(0).getDateOfTravel());
+            assertEquals("t101", user.getTicketsBooked().get(0).getTrainId());
+            assertFalse(JsonUtil.newObjectMapper().writeValueAsString(user).contains("\"train\""));
+            assertSame(user, store.findById("abcdef").get());
+            assertEquals(2, store.findByName("Rahul Verma").size());
+            assertEquals(1, store.getCachedUserCount());
+            assertFalse(store.findById("nobody").isPresent());
+        }
+    }
+
+    @Test public void pinnedUsersShadowTheFile() throws Exception {
+        File file = folder.newFile("users.json");
+        Files.write(file.toPath(), USERS.getBytes(StandardCharsets.UTF_8));
+
+        try (LazyUserStore store = new LazyUserStore(file.toPath(), JsonUtil.newObjectMapper(), 10)) {
+            store.put(new User("Asha", null, "hash", new ArrayList<>(), "new1"));
+            User changed = store.findById("lmnopq").get();
+            changed.setName("Rahul V");
+            store.put(changed);
+
+            assertTrue(store.contains("new1"));
+            assertEquals("Asha", store.findByName("Asha").get(0).getName());
+            assertSame(changed, store.findById("lmnopq").get());
+        }
+    }
+
+    @Test public void reopenUnpinsUsersTheNewFileHolds() throws Exception {
+        File file = folder.newFile("users.json");
+        Files.write(file.toPath(), USERS.getBytes(StandardCharsets.UTF_8));
+
+        try (LazyUserStore store = new LazyUserStore(file.toPath(), JsonUtil.newObjectMapper(), 10)) {
+            store.put(new User("Asha", null, "hash", new ArrayList<>(), "new1"));
+            long mark = store.pinMark();
+            store.put(new User("Ravi", null, "hash", new ArrayList<>(), "new2"));
+            Files.write(file.toPath(), USERS.replace("\"zzz\", \"name\": \"Rahul Verma\"}",
+                    "\"zzz\", \"name\": \"Rahul Verma\"},\n  {\"user_id\": \"new1\", \"name\": \"Asha\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+
+            store.reopen(mark);
+
+            assertEquals(4, store.size());
+            assertEquals(1, store.getPinnedUserCount());
+            assertEquals("Asha", store.findById("new1").get().getName());
+            assertEquals("Ravi", store.findByName("Ravi").get(0).getName());
+            assertEquals(2, store.findByName("Rahul Verma").size());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ticket.booking.planner;
+
+import org.junit.Test;
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TimetableTest {
+
+    /**
+     * A train calling at {@code stopsAndTimes}: station, time, station, time, ...
+     */
+    static Train train(String id, String... stopsAndTimes) {
+        List<String> stations = new ArrayList<>();
+        Map<String, String> times = new LinkedHashMap<>();
+        for (int i = 0; i < stopsAndTimes.length; i += 2) {
+            stations.add(stopsAndTimes[i]);
+            times.put(stopsAndTimes[i], stopsAndTimes[i + 1]);
+        }
+        return new Train(id, id, new SegmentSeatInventory(1, 1), times, stations);
+    }
+
+    private static List<String> trainsOf(Itinerary itinerary) {
+        return itinerary.getLegs().stream().map(Leg::getTrainId).collect(Collectors.toList());
+    }
+
+    private final Timetable timetable = Timetable.of(Arrays.asList(
+            train("a", "pune", "08:00:00", "mumbai", "11:00:00"),
+            train("b", "mumbai", "11:10:00", "goa", "17:00:00"),
+            train("c", "mumbai", "12:00:00", "goa", "17:30:00"),
+            train("d", "pune", "07:00:00", "goa", "20:00:00")));
+
+    @Test public void changesTrainsWhenThatArrivesSooner() {
+        List<Itinerary> plans = timetable.plan("pune", "goa", LocalTime.of(6, 0), 1, 15, 3);
+        assertEquals(Arrays.asList("a", "c"), trainsOf(plans.get(0)));
+        assertEquals(17 * 60 + 30, plans.get(0).getArrivalMinute());
+        assertEquals(1, plans.get(0).getTransfers());
+        assertEquals(Arrays.asList("d"), trainsOf(plans.get(1)));
+        assertEquals(2, plans.size());
+    }
+
+    @Test public void respectsMinimumConnectionTimeAndTransferLimit() {
+        List<Itinerary> tight = timetable.plan("pune", "goa", LocalTime.of(6, 0), 1, 5, 3);
+        assertEquals(Arrays.asList("a", "b"), trainsOf(tight.get(0)));
+        assertEquals(Arrays.asList("d"), trainsOf(tight.get(1))); // a then c is no better than a then b
+        assertEquals(2, tight.size());
+
+        List<Itinerary> direct = timetable.plan("pune", "goa", LocalTime.of(6, 0), 0, 5, 3);
+        assertEquals(1, direct.size());
+        assertEquals(Arrays.asList("d"), trainsOf(direct.get(0)));
+        assertTrue(timetable.plan("goa", "pune", LocalTime.MIDNIGHT, 2, 0, 3).isEmpty());
+    }
+
+    @Test public void waitsForTomorrowAndRunsPastMidnight() {
+        Timetable overnight = Timetable.of(Arrays.asList(
+                train("n", "delhi", "22:00:00", "agra", "01:30:00", "jhansi", "04:00:00"),
+                train("m", "jhansi", "05:00:00", "bhopal", "09:00:00")));
+        Itinerary plan = overnight.plan("delhi", "bhopal", LocalTime.of(23, 0), 1, 30, 1).get(0);
+        Leg first = plan.getLegs().get(0);
+        assertEquals(1, first.getDepartureDay()); // missed tonight's train
+        assertEquals(LocalTime.of(22, 0), first.getDepartureTime());
+        assertEquals(2, plan.getLegs().get(1).getArrivalDay());
+        assertEquals(LocalTime.of(9, 0), plan.getLegs().get(1).getArrivalTime());
+    }
+
+    @Test public void incrementalUpdateMatchesARebuild() {
+        Train faster = train("b", "mumbai", "11:10:00", "goa", "15:00:00");
+        Timetable updated = timetable.withTrain(faster).withTrain(train("e", "goa", "19:00:00", "kochi", "23:00:00"));
+        Timetable rebuilt = Timetable.of(Arrays.asList(
+                train("a", "pune", "08:00:00", "mumbai", "11:00:00"), faster,
+                train("c", "mumbai", "12:00:00", "goa", "17:30:00"),
+                train("d", "pune", "07:00:00", "goa", "20:00:00"),
+                train("e", "goa", "19:00:00", "kochi", "23:00:00")));
+        assertEquals(rebuilt.getConnectionCount(), updated.getConnectionCount());
+        for (Timetable t : Arrays.asList(updated, rebuilt)) {
+            List<Itinerary> plans = t.plan("pune", "kochi", LocalTime.of(6, 0), 2, 5, 2);
+            assertEquals(Arrays.asList("a", "b", "e"), trainsOf(plans.get(0)));
+        }
+        assertEquals(2, updated.plan("pune", "goa", LocalTime.of(6, 0), 1, 5, 5).size());
+    }
+
+    @Test public void plansAcrossThousandsOfTrains() {
+        Random random = new Random(1);
+        List<Train> trains = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String[] stops = new String[20];
+            int clock = random.nextInt(24 * 60);
+            for (int stop = 0; stop < stops.length; stop += 2) {
+                stops[stop] = "s" + random.nextInt(500);
+                stops[stop + 1] = LocalTime.ofSecondOfDay((clock % (24 * 60)) * 60L).toString() + ":00";
+                clock += 20 + random.nextInt(60);
+            }
+            trains.add(train("t" + i, stops));
+        }
+        Timetable large = Timetable.of(trains);
+        for (int query = 0; query < 50; query++) {
+            List<Itinerary> plans = large.plan("s" + random.nextInt(500), "s" + random.nextInt(500), LocalTime.of(8, 0), 3, 10, 5);
+            for (Itinerary plan : plans) {
+                assertTrue(plan.getTransfers() <= 3);
+                for (int leg = 1; leg < plan.getLegs().size(); leg++) {
+                    assertTrue(plan.getLegs().get(leg).getDepartureMinute() >= plan.getLegs().get(leg - 1).getArrivalMinute() + 10);
+                }
+            }
+        }
+    }
+}
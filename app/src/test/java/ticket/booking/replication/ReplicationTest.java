@@ -0,0 +1,109 @@
+package ticket.booking.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.service.TrainSearchResult;
+import ticket.booking.service.TrainService;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplicationTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private TrainService primaryTrains;
+    private ReplicationPrimary primary;
+
+    @Before public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        File trains = folder.newFile("trains.json");
+        mapper.writeValue(trains, Arrays.asList(
+                train("t1", "bangalore", "chennai", "delhi"),
+                train("t2", "mumbai", "pune")));
+        primaryTrains = new TrainService(mapper, trains.getPath());
+        primary = ReplicationPrimary.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), primaryTrains, 4);
+    }
+
+    @After public void tearDown() throws IOException {
+        primary.close();
+    }
+
+    @Test public void followersServeThePrimarysBookingsAndRefuseChanges() throws Exception {
+        Train t1 = primaryTrains.getTrain("t1").get();
+        assertTrue(primaryTrains.bookSeat(t1, 0, 0, SegmentSeatInventory.ALL_LEGS)); // before anyone follows
+        try (ReplicationFollower first = follow(); ReplicationFollower second = follow()) {
+            assertTrue(primaryTrains.bookSeat(t1, 0, 1, SegmentSeatInventory.legMask(0, 1)));
+            primaryTrains.addTrain(train("t3", "bangalore", "delhi"));
+
+            for (ReplicationFollower follower : Arrays.asList(first, second)) {
+                assertTrue(follower.awaitSequence(primary.getHeadSequence(), 10, TimeUnit.SECONDS));
+                TrainService replica = follower.getReplica();
+                List<TrainSearchResult> found = replica.searchTrainsWithAvailability("bangalore", "delhi", null);
+                assertEquals(2, found.size());
+                TrainSearchResult onT1 = found.stream().filter(result -> result.getTrain().getTrainId().equals("t1")).findFirst().get();
+                assertEquals(6, onT1.getFreeSeats(0));
+                assertEquals(7, onT1.getFreeSeats(1));
+                assertEquals(6, replica.getAvailability(t1, null).getUnbookedSeats());
+                assertEquals(0, follower.getLagFrames());
+                try {
+                    replica.bookSeat(t1, 1, 1, SegmentSeatInventory.ALL_LEGS);
+                    fail("A replica must not take bookings.");
+                } catch (IllegalStateException expected) {
+                    // changes go to the primary
+                }
+            }
+            assertEquals(2, primary.getFollowerCount());
+        }
+    }
+
+    @Test public void reconnectingFollowersCatchUpFromTheTailOrASnapshot() throws Exception {
+        Train t2 = primaryTrains.getTrain("t2").get();
+        try (ReplicationFollower follower = follow()) {
+            assertTrue(follower.awaitSequence(0, 10, TimeUnit.SECONDS));
+            long snapshots = Metrics.shared().counter("replication.snapshotsSent").sum();
+
+            primary.disconnectFollowers();
+            assertTrue(primaryTrains.bookSeat(t2, 0, 0, SegmentSeatInventory.ALL_LEGS));
+            assertTrue(primaryTrains.bookSeat(t2, 0, 1, SegmentSeatInventory.ALL_LEGS));
+            assertTrue(follower.awaitSequence(primary.getHeadSequence(), 10, TimeUnit.SECONDS));
+            assertEquals(6, follower.getReplica().getAvailability(t2, null).getUnbookedSeats());
+            assertEquals(snapshots, Metrics.shared().counter("replication.snapshotsSent").sum()); // the tail was enough
+
+            primary.disconnectFollowers();
+            for (int seat = 0; seat < 4; seat++) { // more frames than the primary retains
+                assertTrue(primaryTrains.bookSeat(t2, 1, seat, SegmentSeatInventory.ALL_LEGS));
+            }
+            assertTrue(primaryTrains.releaseSeat(t2, 0, 0, SegmentSeatInventory.ALL_LEGS));
+            assertTrue(follower.awaitSequence(primary.getHeadSequence(), 10, TimeUnit.SECONDS));
+            assertEquals(3, follower.getReplica().getAvailability(t2, null).getUnbookedSeats());
+            assertEquals(0, (int) follower.getReplica().getAvailability(t2, null).getSeatMap().get(0).get(0));
+            assertEquals(snapshots + 1, Metrics.shared().counter("replication.snapshotsSent").sum());
+        }
+    }
+
+    private ReplicationFollower follow() {
+        return ReplicationFollower.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), primary.getPort()),
+                TrainService.replica(new ObjectMapper(), Clock.systemUTC()));
+    }
+
+    private static Train train(String id, String... stations) {
+        return new Train(id, id, new SegmentSeatInventory(2, 4), new HashMap<>(), Arrays.asList(stations));
+    }
+}
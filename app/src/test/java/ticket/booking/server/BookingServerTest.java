@@ -0,0 +1,116 @@
+package ticket.booking.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+import ticket.booking.service.SessionManager;
+import ticket.booking.service.TrainService;
+import ticket.booking.service.UserBookingService;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.PasswordHasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class BookingServerTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PasswordHasher hasher = new PasswordHasher(2, 1000, 4);
+    private BookingServer server;
+    private URI uri;
+
+    @Before public void setUp() throws IOException {
+        File trains = new File(folder.getRoot(), "trains.json");
+        JsonUtil.newObjectMapper().writeValue(trains, Collections.singletonList(
+                new Train("t1", "101", new SegmentSeatInventory(10, 10), new HashMap<>(), Arrays.asList("pune", "goa", "kochi"))));
+        TrainService trainService = new TrainService(JsonUtil.newObjectMapper(), trains.getPath());
+        UserBookingService users = new UserBookingService(null, JsonUtil.newObjectMapper(), new File(folder.getRoot(), "users.json").getPath(),
+                false, new SessionManager(Duration.ofMinutes(30)), hasher, trainService);
+        server = BookingServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1000, users, trainService,
+                hasher, JsonUtil.newObjectMapper());
+        uri = URI.create("http://127.0.0.1:" + server.getPort());
+    }
+
+    @After public void tearDown() {
+        server.close();
+        hasher.shutdown();
+    }
+
+    @Test public void signUpLoginBookAndCancel() throws IOException {
+        BookingClient client = new BookingClient(uri, JsonUtil.newObjectMapper());
+        assertTrue(client.signUp("asha", "secret"));
+        assertFalse(client.login("asha", "wrong"));
+        assertTrue(client.login("asha", "secret"));
+
+        List<Train> found = client.searchTrains("pune", "goa");
+        assertEquals("t1", found.get(0).getTrainId());
+        assertTrue(client.searchTrains("kochi", "pune").isEmpty());
+
+        Optional<Ticket> ticket = client.book("t1", "pune", "goa", 0, 1);
+        assertTrue(ticket.isPresent());
+        assertFalse(client.book("t1", "pune", "kochi", 0, 1).isPresent());
+        assertTrue(client.book("t1", "goa", "kochi", 0, 1).isPresent());
+        assertEquals(1, (int) client.fetchSeats("t1").get(0).get(1));
+        assertEquals(2, client.fetchBookings().size());
+        BookingClient anonymous = new BookingClient(uri, JsonUtil.newObjectMapper());
+        assertEquals(ticket.get().getTicketId(), anonymous.findTicket(ticket.get().getTicketId()).get().getTicketId());
+
+        assertTrue(client.cancelBooking(ticket.get().getTicketId()));
+        assertFalse(client.cancelBooking(ticket.get().getTicketId()));
+        assertFalse(anonymous.findTicket(ticket.get().getTicketId()).isPresent());
+        assertEquals(1, client.fetchBookings().size());
+    }
+
+    @Test public void bookingsNeedASession() throws IOException {
+        BookingClient anonymous = new BookingClient(uri, JsonUtil.newObjectMapper());
+        try {
+            anonymous.fetchBookings();
+            fail("expected 401");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("401"));
+        }
+        assertFalse(anonymous.cancelBooking("nope"));
+    }
+
+    @Test public void servesManyClientsAtOnce() throws Exception {
+        int clients = 100;
+        BookingClient owner = new BookingClient(uri, JsonUtil.newObjectMapper());
+        owner.signUp("asha", "secret");
+        ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int seat = i;
+            results.add(pool.submit(() -> {
+                BookingClient client = new BookingClient(uri, JsonUtil.newObjectMapper());
+                return client.login("asha", "secret") && client.book("t1", "pune", "kochi", seat / 10, seat % 10).isPresent();
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        pool.shutdown();
+        assertTrue(owner.login("asha", "secret"));
+        assertEquals(clients, owner.fetchBookings().size());
+    }
+}
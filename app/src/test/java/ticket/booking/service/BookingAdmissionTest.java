@@ -0,0 +1,98 @@
+package ticket.booking.service;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BookingAdmissionTest {
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test public void usersOverTheirRateAreToldWhenToComeBack() throws Exception {
+        BookingAdmission admission = new BookingAdmission(2, 2, 1000, 1000, 4, 4, 1, TimeUnit.SECONDS, ticker);
+        admission.admit("alice", "t1").close();
+        admission.admit("alice", "t1").close();
+        try {
+            admission.admit("alice", "t1");
+            fail("A third booking in a burst of two must be turned away.");
+        } catch (AdmissionRejectedException e) {
+            assertTrue(e.isUserLimited());
+            assertEquals(500, e.getRetryAfterMillis());
+        }
+        admission.admit("bob", "t1").close(); // other users are not held back
+
+        ticker.advance(500, TimeUnit.MILLISECONDS);
+        admission.admit("alice", "t1").close();
+    }
+
+    @Test public void theGlobalRateCapsAllUsersTogether() throws Exception {
+        BookingAdmission admission = new BookingAdmission(10, 10, 1, 2, 4, 4, 1, TimeUnit.SECONDS, ticker);
+        admission.admit("alice", "t1").close();
+        admission.admit("bob", "t2").close();
+        try {
+            admission.admit("carol", "t3");
+            fail("The global burst is spent.");
+        } catch (AdmissionRejectedException e) {
+            assertFalse(e.isUserLimited());
+            assertEquals(1000, e.getRetryAfterMillis());
+        }
+    }
+
+    @Test public void eachTrainQueuesInOrderAndTurnsAwayWhatItCannotHold() throws Exception {
+        BookingAdmission admission = new BookingAdmission(100, 100, 1000, 1000, 1, 1, 10, TimeUnit.SECONDS, ticker);
+        BookingAdmission.Permit first = admission.admit("alice", "T1");
+        CompletableFuture<BookingAdmission.Permit> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admission.admit("bob", "t1");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (admission.getQueued("t1") == 0) {
+            Thread.sleep(1);
+        }
+        try {
+            admission.admit("carol", "t1");
+            fail("The queue holds one booking.");
+        } catch (AdmissionRejectedException e) {
+            assertFalse(e.isUserLimited());
+        }
+        admission.admit("carol", "t2").close(); // a busy train holds up no other
+        assertFalse(second.isDone());
+
+        first.close();
+        second.get(10, TimeUnit.SECONDS).close();
+        assertEquals(0, admission.getQueuedTotal());
+    }
+
+    @Test public void bookingsWaitOnlyAsLongAsAllowed() throws Exception {
+        BookingAdmission admission = new BookingAdmission(100, 100, 1000, 1000, 1, 8, 20, TimeUnit.MILLISECONDS, ticker);
+        BookingAdmission.Permit held = admission.admit("alice", "t1");
+        try {
+            admission.admit("bob", "t1");
+            fail("The turn is never freed.");
+        } catch (AdmissionRejectedException e) {
+            assertTrue(e.getMessage().startsWith("Timed out"));
+        } finally {
+            held.close();
+        }
+        assertEquals(0, admission.getQueued("t1"));
+    }
+
+    private static final class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public synchronized long read() {
+            return nanos;
+        }
+
+        synchronized void advance(long amount, TimeUnit unit) {
+            nanos += unit.toNanos(amount);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ticket.booking.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.inventory.SegmentSeatInventory;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.PasswordHasher;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.*;
+
+/**
+ * Many users booking and cancelling on a few small trains at once. Afterwards every seat's legs must be
+ * exactly the union of the tickets still held on it, with no two tickets sharing a leg, both in memory
+ * and after replaying the journals.
+ */
+public class BookingStressTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 100;
+    private static final List<String> STATIONS = Arrays.asList("pune", "goa", "kochi", "madurai");
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void concurrentBookingsAndCancellationsNeverDoubleBookOrLoseUpdates() throws Exception {
+        File trainsFile = new File(folder.getRoot(), "trains.json");
+        List<Train> trains = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            trains.add(new Train("t" + i, "t" + i, new SegmentSeatInventory(2, 4), new HashMap<>(), STATIONS));
+        }
+        JsonUtil.newObjectMapper().writeValue(trainsFile, trains);
+        TrainService trainService = new TrainService(JsonUtil.newObjectMapper(), trainsFile.getPath());
+        String usersPath = new File(folder.getRoot(), "users.json").getPath();
+        SessionManager sessions = new SessionManager(Duration.ofHours(1));
+
+        List<User> users = new ArrayList<>();
+        UserBookingService signUps = service(null, usersPath, sessions, trainService);
+        for (int i = 0; i < THREADS; i++) {
+            User user = new User("user" + i, "secret", UserServiceUtil.hashPassword("secret", 4), new ArrayList<>(), "u" + i);
+            signUps.signUp(user);
+            users.add(new User(user.getName(), "secret", null, new ArrayList<>(), null));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (User user : users) {
+            UserBookingService service = service(user, usersPath, sessions, trainService);
+            results.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int op = 0; op < OPERATIONS_PER_THREAD; op++) {
+                    if (random.nextInt(10) < 6 || user.getTicketsBooked().isEmpty()) {
+                        Train train = trainService.getTrain("t" + random.nextInt(3)).get();
+                        int from = random.nextInt(STATIONS.size() - 1);
+                        int to = from + 1 + random.nextInt(STATIONS.size() - 1 - from);
+                        service.bookTrainSeat(train, STATIONS.get(from), STATIONS.get(to), random.nextInt(2), random.nextInt(4));
+                    } else {
+                        Ticket ticket = user.getTicketsBooked().get(random.nextInt(user.getTicketsBooked().size()));
+                        assertTrue(service.cancelBooking(ticket.getTicketId()));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        pool.shutdown();
+
+        Map<String, Long> expected = new HashMap<>();
+        UserBookingService reloadedUsers = service(null, usersPath, sessions, trainService);
+        for (User user : users) {
+            User stored = reloadedUsers.findUserBySession(reloadedUsers.login(user.getName(), "secret").get()).get();
+            assertEquals(user.getTicketsBooked().size(), stored.getTicketsBooked().size());
+            for (Ticket ticket : stored.getTicketsBooked()) {
+                long legs = SegmentSeatInventory.legMask(STATIONS.indexOf(ticket.getSource()), STATIONS.indexOf(ticket.getDestination()));
+                String seat = ticket.getTrainId() + "/" + ticket.getRow() + "/" + ticket.getSeat();
+                long held = expected.getOrDefault(seat, 0L);
+                assertEquals("double booking on " + seat, 0, held & legs);
+                expected.put(seat, held | legs);
+            }
+        }
+
+        TrainService reloadedTrains = new TrainService(JsonUtil.newObjectMapper(), trainsFile.getPath());
+        for (TrainService repository : Arrays.asList(trainService, reloadedTrains)) {
+            for (Train train : repository.getTrains()) {
+                for (int row = 0; row < 2; row++) {
+                    for (int seat = 0; seat < 4; seat++) {
+                        String key = train.getTrainId() + "/" + row + "/" + seat;
+                        assertEquals(key, (long) expected.getOrDefault(key, 0L), train.getSeats().getLegMask(row, seat));
+                    }
+                }
+            }
+        }
+    }
+
+    private static UserBookingService service(User user, String path, SessionManager sessions, TrainService trainService) throws Exception {
+        return new UserBookingService(user, JsonUtil.newObjectMapper(), path, false, sessions, PasswordHasher.shared(), trainService);
+    }
+}
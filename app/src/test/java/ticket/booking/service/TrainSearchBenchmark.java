@@ -0,0 +1,87 @@
+package ticket.booking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Compares {@link TrainService#searchTrains} against the linear scan it replaced, with the query cache sized to 0.
+ * Run with {@code ./gradlew :app:searchBenchmark}; pass the train count as the first argument.
+ */
+public class TrainSearchBenchmark {
+
+    private static final int STATIONS = 2_000;
+    private static final int STOPS_PER_TRAIN = 20;
+    private static final int QUERIES = 20_000;
+
+    public static void main(String[] args) throws IOException {
+        int trainCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        Random random = new Random(42);
+        List<Train> trains = new ArrayList<>(trainCount);
+        for (int i = 0; i < trainCount; i++) {
+            List<String> stops = new ArrayList<>(STOPS_PER_TRAIN);
+            while (stops.size() < STOPS_PER_TRAIN) {
+                String station = "s" + random.nextInt(STATIONS);
+                if (!stops.contains(station)) {
+                    stops.add(station);
+                }
+            }
+            trains.add(new Train("t" + i, String.valueOf(i), new SegmentSeatInventory(1, 1), new HashMap<>(), stops));
+        }
+        File file = File.createTempFile("trains", ".json");
+        file.deleteOnExit();
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.writeValue(file, trains);
+        // Both sides must do the search: with the query cache on, every round after the first would only time hits.
+        System.setProperty("booking.cache.maxEntries", "0");
+        TrainService trainService = new TrainService(mapper, file.getPath());
+
+        String[][] queries = new String[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            Train train = trains.get(random.nextInt(trainCount));
+            int from = random.nextInt(STOPS_PER_TRAIN - 1);
+            int to = from + 1 + random.nextInt(STOPS_PER_TRAIN - from - 1);
+            queries[i] = new String[]{train.getStations().get(from), train.getStations().get(to)};
+        }
+
+        long matches = 0;
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            long start = System.nanoTime();
+            for (String[] query : queries) {
+                matches += linearScan(trains, query[0], query[1]).size();
+            }
+            long linear = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String[] query : queries) {
+                matches -= trainService.searchTrains(query[0], query[1]).size();
+            }
+            long indexed = System.nanoTime() - start;
+
+            System.out.printf("round %d: linear scan %.2f us/search, station index %.2f us/search, speedup %.1fx%n",
+                    round, linear / 1000.0 / QUERIES, indexed / 1000.0 / QUERIES, (double) linear / indexed);
+        }
+        if (matches != 0) {
+            throw new IllegalStateException("Indexed search returned different results from the linear scan.");
+        }
+    }
+
+    /**
+     * The search as it was before the station index: every train, two indexOf calls each.
+     */
+    private static List<Train> linearScan(List<Train> trains, String source, String destination) {
+        return trains.stream().filter(train -> {
+            int sourceIndex = train.getStations().indexOf(source);
+            int destinationIndex = train.getStations().indexOf(destination);
+            return sourceIndex != -1 && destinationIndex != -1 && sourceIndex < destinationIndex;
+        }).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,271 @@
+package ticket.booking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.CoachDetail;
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TrainServiceTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private TrainService trainService;
+
+    @Before public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        File trains = folder.newFile("trains.json");
+        mapper.writeValue(trains, Arrays.asList(
+                train("t1", "bangalore", "chennai", "delhi"),
+                train("t2", "delhi", "chennai", "bangalore"),
+                train("t3", "mumbai", "pune")));
+        trainService = new TrainService(mapper, trains.getPath());
+    }
+
+    @Test public void findsOnlyTrainsRunningInTheRequestedDirection() throws IOException {
+        assertEquals(Arrays.asList("t1"), ids(trainService.searchTrains("Bangalore", "Delhi")));
+        assertEquals(Arrays.asList("t2"), ids(trainService.searchTrains("delhi", "chennai")));
+    }
+
+    @Test(expected = IOException.class) public void throwsWhenNoTrainConnectsTheStations() throws IOException {
+        trainService.searchTrains("pune", "mumbai");
+    }
+
+    @Test public void keepsTheIndexInStepWithUpdates() throws IOException {
+        trainService.updateTrain(train("t3", "pune", "mumbai"));
+        assertEquals(Arrays.asList("t3"), ids(trainService.searchTrains("pune", "mumbai")));
+
+        trainService.addTrain(train("t4", "bangalore", "delhi"));
+        assertEquals(Arrays.asList("t1", "t4"), ids(trainService.searchTrains("bangalore", "delhi")).stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test public void journaledBookingsSurviveReloadAndCompaction() throws IOException {
+        Train train = trainService.getTrain("t1").get();
+        assertTrue(trainService.bookSeat(train, 1, 2, SegmentSeatInventory.legMask(0, 1)));
+        assertFalse(trainService.bookSeat(train, 1, 2, SegmentSeatInventory.ALL_LEGS));
+
+        File trains = new File(folder.getRoot(), "trains.json");
+        TrainService reloaded = new TrainService(new ObjectMapper(), trains.getPath());
+        assertFalse(reloaded.getTrain("t1").get().getSeats().isFree(1, 2, 0, 1));
+        assertTrue(reloaded.getTrain("t1").get().getSeats().isFree(1, 2, 1, 2));
+
+        reloaded.compact();
+        assertEquals(0, new File(folder.getRoot(), "trains.journal").length());
+        assertFalse(new TrainService(new ObjectMapper(), trains.getPath()).getTrain("t1").get().getSeats().isFree(1, 2, 0, 1));
+    }
+
+    @Test public void publishesANewVersionOnUpdatesAndFileChanges() throws IOException {
+        List<Train> before = trainService.getTrains();
+        long version = trainService.getVersion();
+        assertFalse(trainService.reloadIfChanged());
+
+        trainService.addTrain(train("t4", "goa", "pune"));
+        assertEquals(3, before.size()); // readers holding the old version are unaffected
+        assertEquals(version + 1, trainService.getVersion());
+
+        new ObjectMapper().writeValue(new File(folder.getRoot(), "trains.json"), Arrays.asList(
+                train("t1", "bangalore", "chennai", "delhi"), train("t5", "mumbai", "goa", "kochi")));
+        assertTrue(trainService.reloadIfChanged());
+        assertEquals(Arrays.asList("t5"), ids(trainService.searchTrains("goa", "kochi")));
+        assertTrue(trainService.getTrain("t4").isPresent()); // still in the journal
+    }
+
+    @Test public void searchResultsAreTheRepositoryInstances() throws IOException {
+        Train found = trainService.searchTrains("mumbai", "pune").get(0);
+        assertTrue(trainService.bookSeat(found, 0, 0, SegmentSeatInventory.ALL_LEGS));
+        assertSame(found, trainService.getTrain("t3").get());
+        assertTrue(found.getSeats().isBooked(0, 0));
+    }
+
+    @Test public void datedBookingsGetTheirOwnSeatMapOnRunningDaysOnly() throws IOException {
+        File trains = new File(folder.getRoot(), "trains.json");
+        Train mondays = train("t4", "pune", "goa");
+        mondays.setDaysOfOperation(Arrays.asList("MON"));
+        trainService.addTrain(mondays);
+        TrainService service = new TrainService(new ObjectMapper(), trains.getPath(), clockAt("2024-01-01")); // a Monday
+        Train train = service.getTrain("t4").get();
+
+        assertTrue(service.bookSeat(train, LocalDate.parse("2024-01-08"), 0, 0, SegmentSeatInventory.ALL_LEGS));
+        assertTrue(service.bookSeat(train, LocalDate.parse("2024-01-15"), 0, 0, SegmentSeatInventory.ALL_LEGS));
+        assertFalse(service.bookSeat(train, LocalDate.parse("2024-01-08"), 0, 0, SegmentSeatInventory.ALL_LEGS));
+        assertTrue(train.getSeats().isFree(0, 0, 0, 1)); // the undated seat map is untouched
+        assertFalse(service.findSeats(train, LocalDate.parse("2024-01-22")).isPresent()); // never created
+        assertEquals(Arrays.asList("t4"), ids(service.searchTrains("pune", "goa", LocalDate.parse("2024-01-22"))));
+
+        for (String invalid : Arrays.asList("2024-01-09", "2023-12-25", "2024-05-06")) { // a Tuesday, past, beyond 120 days
+            try {
+                service.bookSeat(train, LocalDate.parse(invalid), 0, 1, SegmentSeatInventory.ALL_LEGS);
+                fail("Booked " + invalid);
+            } catch (IllegalArgumentException expected) {
+                // not bookable
+            }
+        }
+        assertFalse(service.findSeats(train, LocalDate.parse("2024-01-09")).isPresent());
+        try {
+            service.searchTrains("pune", "goa", LocalDate.parse("2024-01-09"));
+            fail("Found a train on a Tuesday");
+        } catch (IOException expected) {
+            // no train runs
+        }
+
+        TrainService reloaded = new TrainService(new ObjectMapper(), trains.getPath(), clockAt("2024-01-01"));
+        assertFalse(reloaded.findSeats(train, LocalDate.parse("2024-01-08")).get().isFree(0, 0, 0, 1));
+        assertTrue(reloaded.releaseSeat(train, LocalDate.parse("2024-01-08"), 0, 0, SegmentSeatInventory.ALL_LEGS));
+        reloaded.compact();
+        TrainService compacted = new TrainService(new ObjectMapper(), trains.getPath(), clockAt("2024-01-01"));
+        assertTrue(compacted.findSeats(train, LocalDate.parse("2024-01-08")).get().isFree(0, 0, 0, 1));
+        assertFalse(compacted.findSeats(train, LocalDate.parse("2024-01-15")).get().isFree(0, 0, 0, 1));
+    }
+
+    @Test public void searchResultsCarryFreeSeatsPerLegOfTheJourney() throws IOException {
+        Train train = trainService.getTrain("t1").get();
+        assertTrue(trainService.bookSeat(train, 0, 0, SegmentSeatInventory.legMask(0, 1)));
+        assertTrue(trainService.bookSeat(train, 1, 3, SegmentSeatInventory.legMask(0, 2)));
+
+        TrainSearchResult whole = trainService.searchTrainsWithAvailability("bangalore", "delhi", null).get(0);
+        assertEquals(8, whole.getCapacity());
+        assertEquals(2, whole.getLegCount());
+        assertEquals(6, whole.getFreeSeats(0));
+        assertEquals(7, whole.getFreeSeats(1));
+        assertEquals(6, whole.getFreeSeatsOnBusiestLeg());
+        TrainSearchResult secondLeg = trainService.searchTrainsWithAvailability("chennai", "delhi", null).get(0);
+        assertEquals(1, secondLeg.getFromStation());
+        assertEquals(7, secondLeg.getFreeSeatsOnBusiestLeg());
+
+        assertTrue(trainService.releaseSeat(train, 1, 3, SegmentSeatInventory.legMask(0, 2)));
+        assertEquals(8, trainService.searchTrainsWithAvailability("chennai", "delhi", null).get(0).getFreeSeats(0));
+    }
+
+    @Test public void searchResultsCountFreeSeatsPerCoachType() throws IOException {
+        Train coached = train("t1", "bangalore", "chennai", "delhi");
+        coached.setCoachDetails(Arrays.asList(new CoachDetail("AC1", 1), new CoachDetail("SL", 2)));
+        trainService.updateTrain(coached);
+        Train train = trainService.getTrain("t1").get();
+        assertEquals("AC1", train.coachTypeOfRow(0));
+        assertEquals("SL", train.coachTypeOfRow(1));
+        assertNull(train.coachTypeOfRow(3));
+        assertTrue(trainService.bookSeat(train, 0, 2, SegmentSeatInventory.legMask(1, 2)));
+        assertTrue(trainService.bookSeat(train, 1, 0, SegmentSeatInventory.ALL_LEGS));
+
+        TrainSearchResult result = trainService.searchTrainsWithAvailability("bangalore", "delhi", null).get(0);
+        assertEquals(Arrays.asList("AC1", "SL"), result.getCoachTypes());
+        assertEquals(4, result.getCapacity("AC1"));
+        assertEquals(4, result.getCapacity("SL")); // the second SL coach has no row in the seat map
+        assertEquals(4, result.getFreeSeats("AC1", 0));
+        assertEquals(3, result.getFreeSeats("AC1", 1));
+        assertEquals(3, result.getFreeSeatsOnBusiestLeg("SL"));
+        assertEquals(0, result.getCapacity("AC3"));
+
+        TrainService reloaded = new TrainService(new ObjectMapper(), new File(folder.getRoot(), "trains.json").getPath());
+        TrainSearchResult unbooked = reloaded.searchTrainsWithAvailability("bangalore", "delhi", LocalDate.parse("2024-01-01")).get(0);
+        assertEquals(4, unbooked.getFreeSeats("SL", 1));
+    }
+
+    @Test public void waitlistsAreKeptPerCoachType() throws IOException {
+        Train coached = train("t1", "bangalore", "chennai", "delhi");
+        coached.setCoachDetails(Arrays.asList(new CoachDetail("AC1", 1), new CoachDetail("SL", 1)));
+        trainService.updateTrain(coached);
+        Train train = trainService.getTrain("t1").get();
+        for (int seat = 0; seat < 4; seat++) {
+            assertTrue(trainService.bookSeat(train, 1, seat, SegmentSeatInventory.ALL_LEGS));
+        }
+        for (String type : new String[]{"AC1", null, "GEN"}) {
+            try {
+                trainService.joinWaitlist(train, null, "u1", "bangalore", "delhi", type);
+                fail("Joined the " + type + " waitlist");
+            } catch (IllegalArgumentException expected) {
+                // AC1 still has seats; the others are not coach types of the train
+            }
+        }
+        for (int seat = 0; seat < 4; seat++) {
+            assertTrue(trainService.bookSeat(train, 0, seat, SegmentSeatInventory.ALL_LEGS));
+        }
+        WaitlistEntry ac1 = trainService.joinWaitlist(train, null, "u1", "bangalore", "delhi", "ac1");
+        WaitlistEntry sleeper = trainService.joinWaitlist(train, null, "u2", "bangalore", "delhi", "SL");
+        assertEquals("AC1", ac1.getCoachType());
+
+        assertEquals(sleeper.getEntryId(), trainService.releaseSeatAndPromote(train, null, 1, 2, SegmentSeatInventory.ALL_LEGS)
+                .get().getEntryId());
+        assertTrue(trainService.getWaitlist(train, null, "SL").isEmpty());
+        TrainService reloaded = new TrainService(new ObjectMapper(), new File(folder.getRoot(), "trains.json").getPath());
+        assertEquals(ac1.getEntryId(), reloaded.getWaitlist(train, null, "AC1").get(0).getEntryId());
+        assertEquals("AC1", reloaded.getWaitlist(train, null, "AC1").get(0).getCoachType());
+    }
+
+    @Test public void pastSeatMapsAreArchivedAndStayEvictedAfterReload() throws IOException {
+        File trains = new File(folder.getRoot(), "trains.json");
+        Train train = trainService.getTrain("t3").get();
+        TrainService monday = new TrainService(new ObjectMapper(), trains.getPath(), clockAt("2024-01-01"));
+        assertTrue(monday.bookSeat(train, LocalDate.parse("2024-01-01"), 1, 1, SegmentSeatInventory.ALL_LEGS));
+        assertTrue(monday.bookSeat(train, LocalDate.parse("2024-01-02"), 1, 1, SegmentSeatInventory.ALL_LEGS));
+        assertEquals(0, monday.evictPastInventories());
+
+        TrainService tuesday = new TrainService(new ObjectMapper(), trains.getPath(), clockAt("2024-01-02"));
+        assertEquals(1, tuesday.evictPastInventories());
+        assertFalse(tuesday.findSeats(train, LocalDate.parse("2024-01-01")).isPresent());
+        assertTrue(tuesday.findSeats(train, LocalDate.parse("2024-01-02")).isPresent());
+        List<String> archive = Files.readAllLines(new File(folder.getRoot(), "trains.archive.jsonl").toPath());
+        assertEquals(1, archive.size());
+        assertTrue(archive.get(0).contains("\"2024-01-01\""));
+
+        tuesday.compact();
+        TrainService reloaded = new TrainService(new ObjectMapper(), trains.getPath(), clockAt("2024-01-02"));
+        assertFalse(reloaded.findSeats(train, LocalDate.parse("2024-01-01")).isPresent());
+        assertFalse(reloaded.findSeats(train, LocalDate.parse("2024-01-02")).get().isFree(1, 1, 0, 1));
+    }
+
+    @Test public void cachedResultsAreInvalidatedOnlyByChangesThatAffectThem() throws IOException {
+        List<Train> bangaloreDelhi = trainService.searchTrains("bangalore", "delhi");
+        List<Train> mumbaiPune = trainService.searchTrains("mumbai", "pune");
+        assertSame(bangaloreDelhi, trainService.searchTrains("Bangalore", "Delhi"));
+
+        trainService.updateTrain(train("t3", "mumbai", "pune", "goa"));
+        assertSame(bangaloreDelhi, trainService.searchTrains("bangalore", "delhi"));
+        assertNotSame(mumbaiPune, trainService.searchTrains("mumbai", "pune"));
+        assertEquals(Arrays.asList("t3"), ids(trainService.searchTrains("pune", "goa")));
+
+        Train t1 = trainService.getTrain("t1").get();
+        Train t2 = trainService.getTrain("t2").get();
+        SeatAvailability before = trainService.getAvailability(t1, null);
+        SeatAvailability other = trainService.getAvailability(t2, null);
+        assertSame(before, trainService.getAvailability(t1, null));
+        assertTrue(trainService.bookSeat(t1, 0, 1, SegmentSeatInventory.legMask(1, 2)));
+        SeatAvailability after = trainService.getAvailability(t1, null);
+        assertEquals(8, before.getFreeSeats(1));
+        assertEquals(7, after.getFreeSeats(1));
+        assertEquals(8, after.getFreeSeats(0));
+        assertEquals(Integer.valueOf(1), after.getSeatMap().get(0).get(1));
+        assertSame(other, trainService.getAvailability(t2, null));
+
+        assertTrue(trainService.releaseSeat(t1, 0, 1, SegmentSeatInventory.legMask(1, 2)));
+        assertEquals(8, trainService.getAvailability(t1, null).getFreeSeats(1));
+    }
+
+    private static Clock clockAt(String date) {
+        return Clock.fixed(LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+    }
+
+    static Train train(String id, String... stations) {
+        return new Train(id, id, new SegmentSeatInventory(2, 4), new HashMap<>(), Arrays.asList(stations));
+    }
+
+    private static List<String> ids(List<Train> trains) {
+        return trains.stream().map(Train::getTrainId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,288 @@
+package ticket.booking.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.inventory.GroupSeating;
+import ticket.booking.persistence.UserShards;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.PasswordHasher;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class UserBookingServiceTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ManualClock clock = new ManualClock();
+    private final SessionManager sessions = new SessionManager(Duration.ofMinutes(30), clock);
+
+    private UserBookingService service(User user, String path) throws IOException {
+        return new UserBookingService(user, JsonUtil.newObjectMapper(), path, false, sessions);
+    }
+
+    @Test public void loginOpensASessionThatSurvivesCompactionAndReload() throws IOException {
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        UserBookingService signUps = service(null, path);
+        assertTrue(signUps.signUp(new User("asha", null, UserServiceUtil.hashPassword("secret"), new ArrayList<>(), "u1")));
+        assertFalse(signUps.signUp(new User("asha", null, "other", new ArrayList<>(), "u1")));
+        signUps.compact();
+
+        UserBookingService reloaded = service(null, path);
+        assertFalse(reloaded.login("asha", "wrong").isPresent());
+        Optional<String> token = reloaded.login("asha", "secret");
+        assertTrue(token.isPresent());
+        assertEquals("u1", reloaded.findUserBySession(token.get()).get().getUserId());
+    }
+
+    @Test public void lazyCompactionStreamsTheShardAndKeepsEveryUser() throws IOException {
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        service(null, path).signUp(new User("asha", null, UserServiceUtil.hashPassword("secret"), new ArrayList<>(), "u1"));
+
+        UserBookingService lazy = new UserBookingService(null, JsonUtil.newObjectMapper(), path, true, sessions);
+        assertTrue(lazy.signUp(new User("ravi", null, UserServiceUtil.hashPassword("secret"), new ArrayList<>(), "u2")));
+        lazy.compact();
+        assertTrue(lazy.login("asha", "secret").isPresent());
+        assertTrue(lazy.login("ravi", "secret").isPresent());
+        assertEquals(0, new File(folder.getRoot(), "users.journal").length());
+
+        UserBookingService reloaded = service(null, path);
+        assertEquals(2, reloaded.allUsers().size());
+        assertTrue(reloaded.login("ravi", "secret").isPresent());
+    }
+
+    @Test public void sessionsExpire() throws IOException {
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        User asha = new User("asha", "secret", UserServiceUtil.hashPassword("secret"), new ArrayList<>(), "u1");
+        service(null, path).signUp(asha);
+
+        UserBookingService loggedIn = service(asha, path);
+        assertTrue(loggedIn.loginUser());
+        String token = loggedIn.getSessionToken();
+        clock.advance(Duration.ofMinutes(29));
+        assertTrue(loggedIn.findUserBySession(token).isPresent());
+
+        clock.advance(Duration.ofMinutes(2));
+        assertFalse(loggedIn.findUserBySession(token).isPresent());
+        assertEquals(0, sessions.size());
+
+        loggedIn.loginUser();
+        loggedIn.logout();
+        assertNull(loggedIn.getSessionToken());
+        assertEquals(0, sessions.size());
+    }
+
+    @Test public void upgradesWeakHashesAfterASuccessfulLogin() throws Exception {
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        PasswordHasher hasher = new PasswordHasher(1, 10, 5);
+        UserBookingService service = new UserBookingService(null, JsonUtil.newObjectMapper(), path, false, sessions, hasher);
+        service.signUp(new User("asha", null, UserServiceUtil.hashPassword("secret", 4), new ArrayList<>(), "u1"));
+
+        assertTrue(service.login("asha", "secret").isPresent());
+        hasher.shutdown(); // lets the queued upgrade finish
+        assertTrue(hasher.awaitTermination(10, TimeUnit.SECONDS));
+
+        UserBookingService reloaded = service(null, path);
+        String token = reloaded.login("asha", "secret").get();
+        assertEquals(5, UserServiceUtil.costOf(reloaded.findUserBySession(token).get().getHashedPassword()));
+    }
+
+    @Test public void bookingIssuesATicketAndCancellingFreesTheSeat() throws IOException {
+        File trains = new File(folder.getRoot(), "trains.json");
+        JsonUtil.newObjectMapper().writeValue(trains, Collections.singletonList(TrainServiceTest.train("t1", "pune", "goa", "kochi")));
+        TrainService trainService = new TrainService(JsonUtil.newObjectMapper(), trains.getPath());
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        User asha = new User("asha", "secret", UserServiceUtil.hashPassword("secret", 4), new ArrayList<>(), "u1");
+        UserBookingService service = new UserBookingService(asha, JsonUtil.newObjectMapper(), path, false, sessions,
+                PasswordHasher.shared(), trainService);
+        service.signUp(asha);
+
+        Train train = service.getTrains("pune", "goa").get(0);
+        assertTrue(service.bookTrainSeat(train, "pune", "goa", 1, 2));
+        Ticket ticket = asha.getTicketsBooked().get(0);
+        assertEquals("t1", ticket.getTrainId());
+        assertSame(train, service.findTrain(ticket).get());
+        assertTrue(train.getSeats().isFree(1, 2, 1, 2));
+
+        UserBookingService reloaded = new UserBookingService(new User("asha", "secret", null, new ArrayList<>(), null),
+                JsonUtil.newObjectMapper(), path, false, sessions, PasswordHasher.shared(), trainService);
+        assertTrue(reloaded.cancelBooking(ticket.getTicketId()));
+        assertTrue(train.getSeats().isFree(1, 2, 0, 2));
+    }
+
+    @Test public void ticketsAreFoundByIdAndOnlyTheirOwnerCanCancelThem() throws IOException {
+        File trains = new File(folder.getRoot(), "trains.json");
+        JsonUtil.newObjectMapper().writeValue(trains, Collections.singletonList(TrainServiceTest.train("t1", "pune", "goa", "kochi")));
+        TrainService trainService = new TrainService(JsonUtil.newObjectMapper(), trains.getPath());
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        User asha = new User("asha", "secret", UserServiceUtil.hashPassword("secret", 4), new ArrayList<>(), "u1");
+        User ravi = new User("ravi", "secret", UserServiceUtil.hashPassword("secret", 4), new ArrayList<>(), "u2");
+        UserBookingService service = new UserBookingService(asha, JsonUtil.newObjectMapper(), path, false, sessions,
+                PasswordHasher.shared(), trainService);
+        service.signUp(asha);
+        service.signUp(ravi);
+        Ticket ticket = service.bookTicket(trainService.getTrain("t1").get(), "pune", "kochi", 0, 3).get();
+        assertEquals(3, (int) service.findTicket(ticket.getTicketId()).get().getSeat());
+        service.compact();
+
+        UserBookingService lazy = new UserBookingService(null, JsonUtil.newObjectMapper(), path, true, sessions,
+                PasswordHasher.shared(), trainService);
+        assertEquals("u1", lazy.findTicket(ticket.getTicketId()).get().getUserId());
+        assertFalse(lazy.findTicket("nope").isPresent());
+        UserBookingService raviSession = lazy.forSession(lazy.login("ravi", "secret").get()).get();
+        assertFalse(raviSession.cancelBooking(ticket.getTicketId()));
+        UserBookingService ashaSession = lazy.forSession(lazy.login("asha", "secret").get()).get();
+        assertTrue(ashaSession.cancelBooking(ticket.getTicketId()));
+        assertFalse(lazy.findTicket(ticket.getTicketId()).isPresent());
+        assertTrue(trainService.getTrain("t1").get().getSeats().isFree(0, 3, 0, 2));
+    }
+
+    @Test public void groupBookingsAreAllOrNothing() throws IOException {
+        File trains = new File(folder.getRoot(), "trains.json");
+        JsonUtil.newObjectMapper().writeValue(trains, Collections.singletonList(TrainServiceTest.train("t1", "pune", "goa", "kochi")));
+        TrainService trainService = new TrainService(JsonUtil.newObjectMapper(), trains.getPath());
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        User asha = new User("asha", "secret", UserServiceUtil.hashPassword("secret", 4), new ArrayList<>(), "u1");
+        UserBookingService service = new UserBookingService(asha, JsonUtil.newObjectMapper(), path, false, sessions,
+                PasswordHasher.shared(), trainService);
+        service.signUp(asha);
+        Train train = trainService.getTrain("t1").get();
+
+        List<Ticket> family = service.bookGroup(train, "pune", "kochi", 3, GroupSeating.ADJACENT);
+        assertEquals(3, family.size());
+        assertEquals(family.get(0).getRow(), family.get(2).getRow());
+        assertEquals(family.get(0).getSeat() + 2, (int) family.get(2).getSeat());
+        assertEquals(3, service.bookGroup(train, "pune", "kochi", 3, GroupSeating.ADJACENT).size());
+        assertTrue(service.bookGroup(train, "pune", "kochi", 2, GroupSeating.ADJACENT).isEmpty());
+        assertTrue(service.bookGroup(train, "pune", "kochi", 2, GroupSeating.SAME_COACH).isEmpty());
+        assertTrue(service.bookGroup(train, "pune", "goa", 3, GroupSeating.ANY).isEmpty());
+        assertEquals(2, train.getSeats().freeCount(0, 1));
+        assertEquals(2, service.bookGroup(train, "goa", "kochi", 2, GroupSeating.ANY).size());
+
+        UserBookingService reloaded = new UserBookingService(null, JsonUtil.newObjectMapper(), path, false, sessions,
+                PasswordHasher.shared(), trainService);
+        assertEquals(8, reloaded.findUserBySession(reloaded.login("asha", "secret").get()).get().getTicketsBooked().size());
+    }
+
+    @Test public void cancellingHandsTheSeatToTheHeadOfTheWaitlist() throws IOException {
+        File trains = new File(folder.getRoot(), "trains.json");
+        JsonUtil.newObjectMapper().writeValue(trains, Collections.singletonList(TrainServiceTest.train("t1", "pune", "goa", "kochi")));
+        TrainService trainService = new TrainService(JsonUtil.newObjectMapper(), trains.getPath());
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        UserBookingService shared = new UserBookingService(null, JsonUtil.newObjectMapper(), path, false, sessions,
+                PasswordHasher.shared(), trainService);
+        for (String name : new String[]{"asha", "ravi", "meera"}) {
+            shared.signUp(new User(name, null, UserServiceUtil.hashPassword("secret", 4), new ArrayList<>(), name));
+        }
+        UserBookingService asha = shared.forSession(shared.login("asha", "secret").get()).get();
+        UserBookingService ravi = shared.forSession(shared.login("ravi", "secret").get()).get();
+        UserBookingService meera = shared.forSession(shared.login("meera", "secret").get()).get();
+        Train train = trainService.getTrain("t1").get();
+
+        try {
+            ravi.joinWaitlist(train, null, "pune", "kochi");
+            fail("Joined the waitlist of a train with free seats");
+        } catch (IllegalArgumentException expected) {
+            // book instead
+        }
+        List<Ticket> everySeat = asha.bookGroup(train, "pune", "kochi", 8, GroupSeating.ANY);
+        assertEquals(8, everySeat.size());
+        WaitlistEntry first = ravi.joinWaitlist(train, null, "pune", "goa").get();
+        WaitlistEntry second = meera.joinWaitlist(train, null, "pune", "kochi").get();
+        assertEquals(Arrays.asList(first.getEntryId(), second.getEntryId()),
+                trainService.getWaitlist(train, null).stream().map(WaitlistEntry::getEntryId).collect(Collectors.toList()));
+
+        Ticket cancelled = everySeat.get(3);
+        assertTrue(asha.cancelBooking(cancelled.getTicketId()));
+        Ticket promoted = ravi.getBookings().get(0);
+        assertEquals(first.getEntryId(), promoted.getTicketId());
+        assertEquals(cancelled.getRow(), promoted.getRow());
+        assertEquals(cancelled.getSeat(), promoted.getSeat());
+        assertFalse(train.getSeats().isFree(cancelled.getRow(), cancelled.getSeat(), 0, 1));
+        assertTrue(train.getSeats().isFree(cancelled.getRow(), cancelled.getSeat(), 1, 2)); // ravi only goes to goa
+        assertEquals(1, trainService.getWaitlist(train, null).size());
+
+        TrainService restartedTrains = new TrainService(JsonUtil.newObjectMapper(), trains.getPath());
+        assertEquals(second.getEntryId(), restartedTrains.getWaitlist(train, null).get(0).getEntryId());
+        UserBookingService restarted = new UserBookingService(null, JsonUtil.newObjectMapper(), path, false, sessions,
+                PasswordHasher.shared(), restartedTrains);
+        assertEquals(first.getEntryId(), restarted.findUserBySession(restarted.login("ravi", "secret").get()).get()
+                .getTicketsBooked().get(0).getTicketId());
+        assertTrue(meera.leaveWaitlist(second.getEntryId()));
+        assertTrue(trainService.getWaitlist(train, null).isEmpty());
+    }
+
+    @Test public void reshardingKeepsEveryUserAndWritesOnlyTheAffectedShard() throws IOException {
+        String path = new File(folder.getRoot(), "users.json").getPath();
+        UserBookingService single = service(null, path);
+        assertTrue(single.signUp(new User("asha", null, UserServiceUtil.hashPassword("secret"), new ArrayList<>(), "u0")));
+        for (int i = 1; i < 40; i++) {
+            assertTrue(single.signUp(new User("user" + i, null, "hash" + i, new ArrayList<>(), "u" + i)));
+        }
+
+        assertEquals(40, UserResharder.reshard(JsonUtil.newObjectMapper(), path, 4));
+        assertFalse(new File(path).exists());
+        assertEquals(4, UserShards.snapshotPaths(path).size());
+
+        UserBookingService sharded = service(null, path);
+        for (int i = 0; i < 40; i++) {
+            assertFalse(sharded.signUp(new User("again", null, "hash", new ArrayList<>(), "u" + i)));
+        }
+        assertTrue(sharded.login("asha", "secret").isPresent());
+
+        assertTrue(sharded.signUp(new User("ravi", null, "hash", new ArrayList<>(), "u40")));
+        File shards = new File(folder.getRoot(), "users.shards");
+        int written = UserShards.shardOf("u40", 4);
+        for (int shard = 0; shard < 4; shard++) {
+            assertEquals(shard == written, new File(shards, "shard-" + shard + ".journal").length() > 0);
+        }
+
+        UserBookingService lazy = new UserBookingService(null, JsonUtil.newObjectMapper(), path, true, sessions);
+        assertFalse(lazy.signUp(new User("again", null, "hash", new ArrayList<>(), "u40")));
+        assertTrue(lazy.login("asha", "secret").isPresent());
+    }
+
+    @Test public void seedDataWithoutBCryptHashesDoesNotBreakLogin() {
+        assertFalse(UserServiceUtil.checkPassword("secret", "hashed_password_1"));
+        assertFalse(UserServiceUtil.checkPassword("secret", null));
+    }
+
+    private static final class ManualClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override public Instant instant() {
+            return now;
+        }
+    }
+}
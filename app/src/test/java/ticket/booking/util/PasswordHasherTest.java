@@ -0,0 +1,47 @@
+package ticket.booking.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(1, 2, 6);
+
+    @After public void tearDown() {
+        hasher.shutdown();
+    }
+
+    @Test public void hashesAndVerifiesOffTheCallingThread() {
+        String hash = hasher.hash("secret", PasswordHasher.Priority.INTERACTIVE).join();
+        assertEquals(6, UserServiceUtil.costOf(hash));
+        assertTrue(hasher.verify("secret", hash, PasswordHasher.Priority.INTERACTIVE).join());
+        assertFalse(hasher.verify("wrong", hash, PasswordHasher.Priority.INTERACTIVE).join());
+        assertEquals(3, hasher.getCompletedCount());
+        assertEquals(0, hasher.getQueueDepth());
+    }
+
+    @Test public void rejectsOnceTheQueueIsFull() {
+        CompletableFuture<?> first = hasher.hash("a", PasswordHasher.Priority.BACKGROUND);
+        CompletableFuture<?> second = hasher.hash("b", PasswordHasher.Priority.BACKGROUND);
+        try {
+            for (int i = 0; i < 10; i++) {
+                hasher.hash("c", PasswordHasher.Priority.INTERACTIVE);
+            }
+            fail("expected the hasher to push back");
+        } catch (RejectedExecutionException expected) {
+            assertTrue(hasher.getRejectedCount() > 0);
+        }
+        CompletableFuture.allOf(first, second).join();
+    }
+
+    @Test public void weakerHashesNeedRehashing() {
+        assertTrue(hasher.needsRehash(UserServiceUtil.hashPassword("secret", 4)));
+        assertFalse(hasher.needsRehash(UserServiceUtil.hashPassword("secret", 6)));
+        assertTrue(hasher.needsRehash("hashed_password_1"));
+    }
+}
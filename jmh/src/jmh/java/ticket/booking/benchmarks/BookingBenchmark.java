@@ -0,0 +1,93 @@
+package ticket.booking.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import ticket.booking.entities.Train;
+import ticket.booking.inventory.SegmentSeatInventory;
+import ticket.booking.service.SessionManager;
+import ticket.booking.service.TrainService;
+import ticket.booking.service.UserBookingService;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.PasswordHasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Books a whole-run seat and releases it again, so the inventory never fills up. Both halves are
+ * journaled and forced to disk, so this measures the durable booking path end to end.
+ * <p>
+ * The threaded variant shows how well bookings on different coaches proceed in parallel and how
+ * much the journal's group commit saves under concurrency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class BookingBenchmark {
+
+    private static final int ROWS = 8;
+    private static final int SEATS_PER_ROW = 16;
+
+    @Param({"1000"})
+    public int trains;
+
+    private Path directory;
+    private TrainService trainService;
+    private UserBookingService bookings;
+    private Train[] catalog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = SyntheticData.tempDirectory();
+        File file = SyntheticData.writeTrains(JsonUtil.newObjectMapper(), directory,
+                SyntheticData.trains(trains, ROWS, SEATS_PER_ROW, 42));
+        trainService = new TrainService(JsonUtil.newObjectMapper(), file.getPath());
+        bookings = new UserBookingService(null, JsonUtil.newObjectMapper(), directory.resolve("users.json").toString(),
+                false, new SessionManager(Duration.ofMinutes(30)), PasswordHasher.shared(), trainService);
+        List<Train> trainList = trainService.getTrains();
+        catalog = trainList.toArray(new Train[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticData.delete(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean bookAndRelease() throws IOException {
+        return bookAndReleaseRandomSeat();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean bookAndReleaseConcurrently() throws IOException {
+        return bookAndReleaseRandomSeat();
+    }
+
+    private boolean bookAndReleaseRandomSeat() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Train train = catalog[random.nextInt(catalog.length)];
+        int row = random.nextInt(ROWS);
+        int seat = random.nextInt(SEATS_PER_ROW);
+        if (!bookings.bookTrainSeat(train, row, seat)) {
+            return false; // another thread holds it right now
+        }
+        long legs = SegmentSeatInventory.legMask(0, train.getStations().size() - 1);
+        return trainService.releaseSeat(train, row, seat, legs);
+    }
+}
@@ -0,0 +1,55 @@
+package ticket.booking.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ticket.booking.entities.Train;
+import ticket.booking.planner.Itinerary;
+import ticket.booking.planner.Timetable;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-hop journey planning and incremental timetable updates on networks of increasing size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class JourneyPlannerBenchmark {
+
+    @Param({"1000", "5000"})
+    public int trains;
+
+    @Param({"2"})
+    public int maxTransfers;
+
+    private List<Train> catalog;
+    private Timetable timetable;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = SyntheticData.trains(trains, 4, 16, 42);
+        timetable = Timetable.of(catalog);
+    }
+
+    @Benchmark
+    public List<Itinerary> plan() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return timetable.plan(SyntheticData.station(random.nextInt(SyntheticData.STATION_POOL)),
+                SyntheticData.station(random.nextInt(SyntheticData.STATION_POOL)), LocalTime.of(8, 0), maxTransfers, 10, 5);
+    }
+
+    @Benchmark
+    public Timetable updateOneTrain() {
+        return timetable.withTrain(catalog.get(ThreadLocalRandom.current().nextInt(trains)));
+    }
+}
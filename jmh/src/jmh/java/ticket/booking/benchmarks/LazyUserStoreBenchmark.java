@@ -0,0 +1,70 @@
+package ticket.booking.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ticket.booking.entities.User;
+import ticket.booking.persistence.LazyUserStore;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup indexing and random lookups on a users.json with a million users, the case where an
+ * eager load stops being practical.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class LazyUserStoreBenchmark {
+
+    @Param({"1000000"})
+    public int users;
+
+    @Param({"10000"})
+    public long cachedUsers;
+
+    private Path directory;
+    private Path usersFile;
+    private LazyUserStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = SyntheticData.tempDirectory();
+        usersFile = SyntheticData.writeUsers(JsonUtil.newObjectMapper(), directory, users, 1,
+                UserServiceUtil.hashPassword(SyntheticData.PASSWORD, 4), 42).toPath();
+        store = new LazyUserStore(usersFile, JsonUtil.newObjectMapper(), cachedUsers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        SyntheticData.delete(directory);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int buildIndex() throws IOException {
+        try (LazyUserStore fresh = new LazyUserStore(usersFile, JsonUtil.newObjectMapper(), cachedUsers)) {
+            return fresh.size();
+        }
+    }
+
+    @Benchmark
+    public Optional<User> findById() {
+        return store.findById("u" + ThreadLocalRandom.current().nextInt(users));
+    }
+}
@@ -0,0 +1,77 @@
+package ticket.booking.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ticket.booking.entities.User;
+import ticket.booking.service.SessionManager;
+import ticket.booking.service.UserBookingService;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.PasswordHasher;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password logins at different BCrypt costs, next to the session lookup that later calls use instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class LoginBenchmark {
+
+    @Param({"4", "8", "10"})
+    public int cost;
+
+    @Param({"10000"})
+    public int users;
+
+    private Path directory;
+    private PasswordHasher hasher;
+    private SessionManager sessions;
+    private UserBookingService service;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = SyntheticData.tempDirectory();
+        // The hasher's own cost matches the stored hashes, so no login queues a background upgrade.
+        hasher = new PasswordHasher(Runtime.getRuntime().availableProcessors(), 1_000, cost);
+        sessions = new SessionManager(Duration.ofHours(1));
+        SyntheticData.writeUsers(JsonUtil.newObjectMapper(), directory, users, 0,
+                UserServiceUtil.hashPassword(SyntheticData.PASSWORD, cost), 42);
+        service = new UserBookingService(null, JsonUtil.newObjectMapper(), directory.resolve("users.json").toString(),
+                false, sessions, hasher);
+        token = service.login(SyntheticData.userName(0), SyntheticData.PASSWORD).get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        hasher.shutdown();
+        SyntheticData.delete(directory);
+    }
+
+    @Benchmark
+    public boolean login() {
+        Optional<String> session = service.login(SyntheticData.userName(ThreadLocalRandom.current().nextInt(users)), SyntheticData.PASSWORD);
+        session.ifPresent(sessions::close); // keeps the session map at a steady size
+        return session.isPresent();
+    }
+
+    @Benchmark
+    public Optional<User> sessionLookup() {
+        return service.findUserBySession(token);
+    }
+}
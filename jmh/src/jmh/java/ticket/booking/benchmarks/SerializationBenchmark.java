@@ -0,0 +1,89 @@
+package ticket.booking.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.util.JsonUtil;
+import ticket.booking.util.UserServiceUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full reads and writes of trains.json and users.json, the cost every eager load and every
+ * compaction pays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"1000"})
+    public int trains;
+
+    @Param({"10000", "100000"})
+    public int users;
+
+    @Param({"2"})
+    public int ticketsPerUser;
+
+    private final ObjectMapper objectMapper = JsonUtil.newObjectMapper();
+    private Path directory;
+    private File trainsFile;
+    private File usersFile;
+    private File scratchFile;
+    private List<Train> trainList;
+    private List<User> userList;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = SyntheticData.tempDirectory();
+        trainsFile = SyntheticData.writeTrains(objectMapper, directory, SyntheticData.trains(trains, 8, 16, 42));
+        usersFile = SyntheticData.writeUsers(objectMapper, directory, users, ticketsPerUser,
+                UserServiceUtil.hashPassword(SyntheticData.PASSWORD, 4), 42);
+        scratchFile = directory.resolve("scratch.json").toFile();
+        trainList = readTrains();
+        userList = readUsers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticData.delete(directory);
+    }
+
+    @Benchmark
+    public List<Train> readTrains() throws IOException {
+        return objectMapper.readValue(trainsFile, new TypeReference<List<Train>>() {});
+    }
+
+    @Benchmark
+    public long writeTrains() throws IOException {
+        objectMapper.writeValue(scratchFile, trainList);
+        return scratchFile.length();
+    }
+
+    @Benchmark
+    public List<User> readUsers() throws IOException {
+        return objectMapper.readValue(usersFile, new TypeReference<List<User>>() {});
+    }
+
+    @Benchmark
+    public long writeUsers() throws IOException {
+        objectMapper.writeValue(scratchFile, userList);
+        return scratchFile.length();
+    }
+}
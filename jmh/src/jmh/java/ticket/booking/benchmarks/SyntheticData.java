@@ -0,0 +1,113 @@
+package ticket.booking.benchmarks;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.inventory.SegmentSeatInventory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates reproducible trains.json and users.json files of any size for the benchmarks.
+ */
+public final class SyntheticData {
+
+    public static final String PASSWORD = "secret";
+    public static final int STATION_POOL = 2_000;
+    public static final int STOPS_PER_TRAIN = 20;
+
+    private SyntheticData() {
+        // Utility class.
+    }
+
+    public static String station(int index) {
+        return "s" + index;
+    }
+
+    public static String userName(int index) {
+        return "user" + index;
+    }
+
+    /**
+     * Trains with {@link #STOPS_PER_TRAIN} distinct stops drawn from {@link #STATION_POOL} stations.
+     */
+    public static List<Train> trains(int count, int rows, int seatsPerRow, long seed) {
+        Random random = new Random(seed);
+        List<Train> trains = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<String> stops = new ArrayList<>(STOPS_PER_TRAIN);
+            Map<String, String> times = new HashMap<>();
+            while (stops.size() < STOPS_PER_TRAIN) {
+                String station = station(random.nextInt(STATION_POOL));
+                if (!stops.contains(station)) {
+                    stops.add(station);
+                    times.put(station, String.format("%02d:%02d:00", stops.size() % 24, random.nextInt(60)));
+                }
+            }
+            trains.add(new Train("t" + i, String.valueOf(10_000 + i), new SegmentSeatInventory(rows, seatsPerRow), times, stops));
+        }
+        return trains;
+    }
+
+    public static File writeTrains(ObjectMapper mapper, Path directory, List<Train> trains) throws IOException {
+        File file = directory.resolve("trains.json").toFile();
+        mapper.writeValue(file, trains);
+        return file;
+    }
+
+    /**
+     * Streams users straight to disk one at a time, so files with millions of users never sit in memory.
+     * Every user shares one precomputed hash; hashing millions of passwords would dominate setup.
+     */
+    public static File writeUsers(ObjectMapper mapper, Path directory, int count, int ticketsPerUser,
+                                  String hashedPassword, long seed) throws IOException {
+        File file = directory.resolve("users.json").toFile();
+        Random random = new Random(seed);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int i = 0; i < count; i++) {
+                List<Ticket> tickets = ticketsPerUser == 0 ? Collections.<Ticket>emptyList() : new ArrayList<>(ticketsPerUser);
+                for (int t = 0; t < ticketsPerUser; t++) {
+                    tickets.add(new Ticket("k" + i + "-" + t, "u" + i, station(random.nextInt(STATION_POOL)),
+                            station(random.nextInt(STATION_POOL)), LocalDate.of(2025, 1, 1).plusDays(random.nextInt(365)),
+                            "t" + random.nextInt(1_000), random.nextInt(8), random.nextInt(64)));
+                }
+                mapper.writeValue(generator, new User(userName(i), null, hashedPassword, tickets, "u" + i));
+            }
+            generator.writeEndArray();
+        }
+        return file;
+    }
+
+    public static Path tempDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("booking-bench");
+        directory.toFile().deleteOnExit();
+        return directory;
+    }
+
+    /**
+     * Deletes a benchmark's working files, journals included.
+     */
+    public static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ticket.booking.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ticket.booking.entities.Train;
+import ticket.booking.service.TrainService;
+import ticket.booking.util.JsonUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source/destination search against catalogs of increasing size, with the query cache sized to 0 so
+ * every call walks the station index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TrainSearchBenchmark {
+
+    private static final int QUERIES = 1_024;
+
+    @Param({"100", "1000", "10000"})
+    public int trains;
+
+    private Path directory;
+    private TrainService trainService;
+    private String[] sources;
+    private String[] destinations;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = SyntheticData.tempDirectory();
+        List<Train> catalog = SyntheticData.trains(trains, 4, 16, 42);
+        File file = SyntheticData.writeTrains(JsonUtil.newObjectMapper(), directory, catalog);
+        // The query cache would hold all QUERIES pairs after warmup, so size it to 0 to time the station index.
+        System.setProperty("booking.cache.maxEntries", "0");
+        trainService = new TrainService(JsonUtil.newObjectMapper(), file.getPath());
+
+        // Every query follows some train's direction of travel: searchTrains reports a miss as an IOException.
+        Random random = new Random(7);
+        sources = new String[QUERIES];
+        destinations = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            List<String> stops = catalog.get(random.nextInt(trains)).getStations();
+            int from = random.nextInt(stops.size() - 1);
+            sources[i] = stops.get(from);
+            destinations[i] = stops.get(from + 1 + random.nextInt(stops.size() - from - 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticData.delete(directory);
+    }
+
+    @Benchmark
+    public List<Train> search() throws IOException {
+        int query = ThreadLocalRandom.current().nextInt(QUERIES);
+        return trainService.searchTrains(sources[query], destinations[query]);
+    }
+}